@@ -0,0 +1,422 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+/**
+ * A monoid over the values of a {@link RangeQuerySkipList}, used to
+ * keep one aggregate per index span.
+ *
+ * {@link #combine} must be associative, with {@link #identity} as its
+ * neutral element; aggregates are always combined in key order, so
+ * order-sensitive aggregates such as {@link #last()} are supported.
+ * Aggregates are treated as immutable values: combine and inverse
+ * must return a new aggregate (or one of their arguments) rather than
+ * modify either argument.
+ *
+ * Two optional properties let the list update a span in O(1) instead
+ * of recomposing it from the level below: a commutative aggregator
+ * lets an inserted value be combined into the spans above its tower
+ * directly, and an invertible one (which must also be commutative)
+ * lets a deleted value, or a split-off span, be taken out with
+ * {@link #inverse}.  The inverse must be exact, so aggregates of
+ * floating-point sums, such as {@link #sum()} and {@link #moments()},
+ * are commutative only: subtracting from a sum loses the low-order
+ * bits that the deleted value cancelled, and a span adjusted by many
+ * deletes would drift from the sum of the values it holds.  Their
+ * spans are recomposed from the level below instead.
+ *
+ * @param <V> the type of values
+ * @param <A> the type of aggregates
+ */
+public interface Aggregator<V, A> {
+
+    /**
+     * Returns the aggregate of no values.
+     *
+     * @return the identity
+     */
+    A identity();
+
+    /**
+     * Returns the aggregate of a single value.
+     *
+     * @param value the value
+     * @return its aggregate
+     */
+    A lift(V value);
+
+    /**
+     * Returns the aggregate of the values of left followed by those of
+     * right.
+     *
+     * @param left the aggregate of the earlier values
+     * @param right the aggregate of the later values
+     * @return the combined aggregate
+     */
+    A combine(A left, A right);
+
+    /**
+     * Returns true if combine(a, b) equals combine(b, a) for all a, b.
+     *
+     * @return true if commutative
+     */
+    default boolean isCommutative() {
+        return false;
+    }
+
+    /**
+     * Returns true if {@link #inverse} is supported.  Only consulted
+     * when {@link #isCommutative()} is true.
+     *
+     * @return true if invertible
+     */
+    default boolean isInvertible() {
+        return false;
+    }
+
+    /**
+     * Returns the aggregate of the values of total without those of
+     * part, which must be a sub-multiset of them.
+     *
+     * @param total the aggregate to take from
+     * @param part the aggregate to take away
+     * @return the remaining aggregate
+     * @throws UnsupportedOperationException if not invertible
+     */
+    default A inverse(A total, A part) {
+        throw new UnsupportedOperationException();
+    }
+
+    /* ---------------- Common aggregators -------------- */
+
+    /**
+     * Returns an aggregator counting values.
+     *
+     * @param <V> the type of values
+     * @return the aggregator
+     */
+    static <V> Aggregator<V, Long> count() {
+        return new Group<V, Long>() {
+            public Long identity() { return 0L; }
+            public Long lift(V value) { return 1L; }
+            public Long combine(Long left, Long right) { return left + right; }
+            public Long inverse(Long total, Long part) { return total - part; }
+        };
+    }
+
+    /**
+     * Returns an aggregator summing values.  It is not invertible;
+     * see above.
+     *
+     * @return the aggregator
+     */
+    static OfDouble<Double> sum() {
+        return new OfDouble<Double>() {
+            public Double identity() { return 0.0; }
+            public Double lift(double value) { return value; }
+            public Double combine(Double left, Double right) { return left + right; }
+            public boolean isCommutative() { return true; }
+        };
+    }
+
+    /**
+     * Returns an aggregator keeping the least value, or
+     * Double.MAX_VALUE if there is none.
+     *
+     * @return the aggregator
+     */
+    static OfDouble<Double> min() {
+        return new OfDouble<Double>() {
+            public Double identity() { return Double.MAX_VALUE; }
+            public Double lift(double value) { return value; }
+            public Double combine(Double left, Double right) { return Math.min(left, right); }
+            public boolean isCommutative() { return true; }
+        };
+    }
+
+    /**
+     * Returns an aggregator keeping the greatest value, or
+     * -Double.MAX_VALUE if there is none.
+     *
+     * @return the aggregator
+     */
+    static OfDouble<Double> max() {
+        return new OfDouble<Double>() {
+            public Double identity() { return -Double.MAX_VALUE; }
+            public Double lift(double value) { return value; }
+            public Double combine(Double left, Double right) { return Math.max(left, right); }
+            public boolean isCommutative() { return true; }
+        };
+    }
+
+    /**
+     * Returns an aggregator keeping the value of the greatest key, or
+     * null if there is none.
+     *
+     * @param <V> the type of values
+     * @return the aggregator
+     */
+    static <V> Aggregator<V, V> last() {
+        return new Aggregator<V, V>() {
+            public V identity() { return null; }
+            public V lift(V value) { return value; }
+            public V combine(V left, V right) { return right != null ? right : left; }
+        };
+    }
+
+    /**
+     * Returns an aggregator keeping count, sum and sum of squares, from
+     * which mean and variance follow.  Like {@link #sum()}, it is not
+     * invertible.
+     *
+     * @return the aggregator
+     */
+    static OfDouble<Moments> moments() {
+        return new OfDouble<Moments>() {
+            public Moments identity() { return Moments.EMPTY; }
+            public Moments lift(double value) { return new Moments(1, value, value * value); }
+            public Moments combine(Moments left, Moments right) {
+                return new Moments(left.count + right.count, left.sum + right.sum,
+                                   left.sumOfSquares + right.sumOfSquares);
+            }
+            public boolean isCommutative() { return true; }
+        };
+    }
+
+    /**
+     * Returns an aggregator keeping the k greatest values, in
+     * descending order, equal values counted apart.  Each span holds
+     * an array of up to k values, and combining two takes time O(k).
+     *
+     * @param k the number of values to keep, at least 1
+     * @return the aggregator
+     * @throws IllegalArgumentException if k is less than 1
+     */
+    static OfDouble<double[]> topK(int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k < 1");
+        double[] empty = new double[0];
+        return new OfDouble<double[]>() {
+            public double[] identity() { return empty; }
+            public double[] lift(double value) { return new double[] { value }; }
+            public double[] combine(double[] left, double[] right) {
+                if (right.length == 0)
+                    return left;
+                if (left.length == 0)
+                    return right;
+                double[] top = new double[Math.min(k, left.length + right.length)];
+                for (int i = 0, l = 0, r = 0; i < top.length; ++i)
+                    top[i] = (r == right.length || (l < left.length && left[l] >= right[r]))
+                            ? left[l++] : right[r++];
+                return top;
+            }
+            public boolean isCommutative() { return true; }
+        };
+    }
+
+    /**
+     * Returns an aggregator estimating the number of distinct values
+     * with a HyperLogLog sketch of 2^precision one-byte registers,
+     * whose relative standard error is about 1.04 / sqrt(2^precision):
+     * 6.5% at precision 8, 1.6% at 12.  Each span holds its own
+     * sketch, so the precision sets the memory of every index.
+     *
+     * @param precision the base 2 logarithm of the number of registers,
+     *                  from 4 to 16
+     * @return the aggregator
+     * @throws IllegalArgumentException if precision is out of range
+     */
+    static OfDouble<DistinctCount> distinctCount(int precision) {
+        if (precision < 4 || precision > 16)
+            throw new IllegalArgumentException("precision out of range: " + precision);
+        DistinctCount empty = new DistinctCount(new byte[1 << precision]);
+        return new OfDouble<DistinctCount>() {
+            public DistinctCount identity() { return empty; }
+            public DistinctCount lift(double value) {
+                // +0.0 and -0.0 are equal values, so hash them alike
+                long h = DistinctCount.mix(Double.doubleToLongBits(value + 0.0));
+                byte[] registers = new byte[1 << precision];
+                registers[(int) (h >>> (64 - precision))] =
+                        (byte) (Long.numberOfLeadingZeros((h << precision) | (1L << (precision - 1))) + 1);
+                return new DistinctCount(registers);
+            }
+            public DistinctCount combine(DistinctCount left, DistinctCount right) {
+                if (right == empty)
+                    return left;
+                if (left == empty)
+                    return right;
+                byte[] registers = new byte[left.registers.length];
+                for (int i = 0; i < registers.length; ++i)
+                    registers[i] = (byte) Math.max(left.registers[i], right.registers[i]);
+                return new DistinctCount(registers);
+            }
+            public boolean isCommutative() { return true; }
+        };
+    }
+
+    /**
+     * Count, sum and sum of squares of a set of values.
+     */
+    final class Moments {
+        static final Moments EMPTY = new Moments(0, 0, 0);
+
+        final long count;
+        final double sum;
+        final double sumOfSquares;
+
+        Moments(long count, double sum, double sumOfSquares) {
+            this.count = count;
+            this.sum = sum;
+            this.sumOfSquares = sumOfSquares;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getSumOfSquares() {
+            return sumOfSquares;
+        }
+
+        /**
+         * @return the mean, or NaN if there are no values
+         */
+        public double mean() {
+            return sum / count;
+        }
+
+        /**
+         * @return the population variance, or NaN if there are no values
+         */
+        public double variance() {
+            double mean = mean();
+            return Math.max(0, sumOfSquares / count - mean * mean);
+        }
+
+        @Override
+        public String toString() {
+            return "Moments{" +
+                    "count=" + count +
+                    ", sum=" + sum +
+                    ", sumOfSquares=" + sumOfSquares +
+                    '}';
+        }
+    }
+
+    /**
+     * A HyperLogLog sketch of a set of values; see
+     * {@link #distinctCount}.
+     */
+    final class DistinctCount {
+        /** the registers, never modified once the sketch is built */
+        final byte[] registers;
+
+        DistinctCount(byte[] registers) {
+            this.registers = registers;
+        }
+
+        /**
+         * Returns the estimated number of distinct values, using
+         * linear counting while many registers are still empty.
+         *
+         * @return the estimate
+         */
+        public long estimate() {
+            int m = registers.length, zeros = 0;
+            double sum = 0;
+            for (byte r : registers) {
+                sum += 1.0 / (1L << r);
+                if (r == 0)
+                    ++zeros;
+            }
+            double alpha = (m == 16) ? 0.673 : (m == 32) ? 0.697 : (m == 64) ? 0.709 : 0.7213 / (1 + 1.079 / m);
+            double e = alpha * m * m / sum;
+            if (e <= 2.5 * m && zeros > 0)
+                e = m * Math.log((double) m / zeros);
+            return Math.round(e);
+        }
+
+        /**
+         * The finalizer of MurmurHash3, which spreads the bits of a
+         * value's representation over the whole hash.
+         */
+        static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            return "DistinctCount{" +
+                    "estimate=" + estimate() +
+                    '}';
+        }
+    }
+
+    /**
+     * An aggregator of double values that lifts them unboxed, for
+     * lists that keep their values in primitive fields.
+     *
+     * @param <A> the type of aggregates
+     */
+    interface OfDouble<A> extends Aggregator<Double, A> {
+
+        /**
+         * Returns the aggregate of a single value.
+         *
+         * @param value the value
+         * @return its aggregate
+         */
+        A lift(double value);
+
+        @Override
+        default A lift(Double value) {
+            return lift(value.doubleValue());
+        }
+
+        /**
+         * Returns the given aggregator if it lifts double values
+         * unboxed, or else one that boxes them and delegates to it.
+         *
+         * @param aggregator the aggregator
+         * @param <A> the type of aggregates
+         * @return the aggregator as an OfDouble
+         */
+        static <A> OfDouble<A> of(Aggregator<Double, A> aggregator) {
+            if (aggregator instanceof OfDouble)
+                return (OfDouble<A>) aggregator;
+            return new OfDouble<A>() {
+                public A identity() { return aggregator.identity(); }
+                public A lift(double value) { return aggregator.lift(value); }
+                public A combine(A left, A right) { return aggregator.combine(left, right); }
+                public boolean isCommutative() { return aggregator.isCommutative(); }
+                public boolean isInvertible() { return aggregator.isInvertible(); }
+                public A inverse(A total, A part) { return aggregator.inverse(total, part); }
+            };
+        }
+    }
+
+    /**
+     * A commutative, invertible aggregator.
+     */
+    abstract class Group<V, A> implements Aggregator<V, A> {
+        @Override
+        public final boolean isCommutative() {
+            return true;
+        }
+
+        @Override
+        public final boolean isInvertible() {
+            return true;
+        }
+
+        @Override
+        public abstract A inverse(A total, A part);
+    }
+}
@@ -0,0 +1,404 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.Arrays;
+
+/**
+ * A skip list of primitive long keys that stores each level as a list
+ * of blocks of sorted keys rather than of single-key nodes (a
+ * B-skiplist).
+ *
+ * A search in {@link SkipList} follows one pointer per key it passes,
+ * and each is usually a cache miss once the list outgrows the cache.
+ * Here a search visits one block per level and scans its keys, which
+ * lie next to each other in a long[], so the misses per search drop
+ * from O(log n) pointer hops to about one per level, and the levels
+ * themselves drop from log2(n) to log_B(n).
+ *
+ * Balancing is still probabilistic, at block granularity.  A key gets
+ * h index levels with probability (1/B)^h.  On each level below its
+ * top, the key starts a new block, splitting the block it lands in;
+ * on its top level it is an entry of the block it lands in, pointing
+ * down to the block it starts one level below.  So every block on a
+ * level other than the top, except the first, is headed by a key that
+ * is also an entry one level up, and blocks hold B keys on average.
+ *
+ * The first block of each level is headed by an entry that stands for
+ * minus infinity.  It is recognized by position and its key slot is
+ * never compared, so every long, Long.MIN_VALUE included, is a valid
+ * key.
+ *
+ * Equal keys are allowed; insert places a new key before existing
+ * equal ones, and delete removes the first.
+ *
+ * This class is not thread-safe.
+ */
+public class BlockedSkipList {
+
+    /**
+     * The expected number of keys per block, which is the inverse of
+     * the promotion probability of the default level generator.
+     */
+    public static final int BLOCK_SIZE = 32;
+
+    /**
+     * The least capacity of a block's arrays.
+     */
+    private static final int MIN_CAPACITY = 8;
+
+    /**
+     * The first block of the top level.
+     */
+    private transient Block head;
+
+    /**
+     * The number of index levels above the base level.
+     */
+    private int height;
+
+    /**
+     * The size of the List (the number of elements it contains).
+     */
+    private int size;
+
+    final LevelGenerator levelGenerator;
+
+    private void initialize() {
+        head = new Block(MIN_CAPACITY, false);
+        head.count = 1;
+        height = 0;
+    }
+
+    /* ---------------- Blocks -------------- */
+
+    /**
+     * Blocks hold sorted keys, and are singly linked in sorted order
+     * on each level.  On index levels, entry i also holds the block
+     * one level below that keys[i] heads.  Entry 0 of the first block
+     * of a level is the minus infinity entry, whose key is unused.
+     */
+    static final class Block {
+        long[] keys;
+        Block[] down;
+        int count;
+        Block next;
+
+        /**
+         * Creates an empty block, with down pointers if on an index
+         * level.
+         */
+        Block(int capacity, boolean index) {
+            keys = new long[capacity];
+            down = index ? new Block[capacity] : null;
+        }
+
+        private void ensureCapacity(int n) {
+            if (n > keys.length) {
+                int cap = Math.max(n, keys.length << 1);
+                keys = Arrays.copyOf(keys, cap);
+                if (down != null)
+                    down = Arrays.copyOf(down, cap);
+            }
+        }
+
+        /**
+         * Inserts an entry at position p.
+         */
+        void insert(int p, long key, Block d) {
+            ensureCapacity(count + 1);
+            System.arraycopy(keys, p, keys, p + 1, count - p);
+            keys[p] = key;
+            if (down != null) {
+                System.arraycopy(down, p, down, p + 1, count - p);
+                down[p] = d;
+            }
+            ++count;
+        }
+
+        /**
+         * Removes the entry at position p.
+         */
+        void remove(int p) {
+            int tail = count - p - 1;
+            System.arraycopy(keys, p + 1, keys, p, tail);
+            if (down != null) {
+                System.arraycopy(down, p + 1, down, p, tail);
+                down[count - 1] = null;
+            }
+            --count;
+        }
+
+        /**
+         * Moves the entries from position p on into a new block headed
+         * by key, linked in after this one.
+         *
+         * @return the new block
+         */
+        Block split(int p, long key, Block d) {
+            int tail = count - p;
+            Block b = new Block(Math.max(MIN_CAPACITY, 2 * (tail + 1)), down != null);
+            b.keys[0] = key;
+            System.arraycopy(keys, p, b.keys, 1, tail);
+            if (down != null) {
+                b.down[0] = d;
+                System.arraycopy(down, p, b.down, 1, tail);
+                Arrays.fill(down, p, count, null);
+            }
+            b.count = tail + 1;
+            count = p;
+            b.next = next;
+            next = b;
+            return b;
+        }
+
+        /**
+         * Appends the entries of the next block but its head, and
+         * unlinks it.
+         */
+        void absorbNext() {
+            Block b = next;
+            int tail = b.count - 1;
+            ensureCapacity(count + tail);
+            System.arraycopy(b.keys, 1, keys, count, tail);
+            if (down != null)
+                System.arraycopy(b.down, 1, down, count, tail);
+            count += tail;
+            next = b.next;
+        }
+    }
+
+    /* ---------------- Traversal -------------- */
+
+    /**
+     * Returns the position of the last entry of block b with key less
+     * than the given key, given that entry 0 is less (or is minus
+     * infinity): the number of entries after 0 that are less.  The
+     * keys are counted without an early exit, which leaves the loop
+     * free of unpredictable branches.
+     */
+    static int scan(Block b, long key) {
+        long[] ks = b.keys;
+        int i = 0;
+        for (int j = 1, n = b.count; j < n; ++j)
+            i += (ks[j] < key) ? 1 : 0;
+        return i;
+    }
+
+    /**
+     * Walks down to the base level, recording on each level the block
+     * and position of the last entry with key less than the given key.
+     * The first entry equal to key on a level, if any, is then the
+     * one after that position, or heads the next block.
+     *
+     * @param preds receives the block of each level
+     * @param pos receives the position on each level
+     */
+    private void findPredecessor(long key, Block[] preds, int[] pos) {
+        Block b = head;
+        for (int level = height; ; --level) {
+            int i;
+            for (Block f; ; b = f) {
+                i = scan(b, key);
+                if (i + 1 < b.count || (f = b.next) == null || f.keys[0] >= key)
+                    break;
+            }
+            preds[level] = b;
+            pos[level] = i;
+            if (level == 0)
+                return;
+            b = b.down[i];
+        }
+    }
+
+    /* ---------------- Queries -------------- */
+
+    /**
+     * Returns true if this list contains the given key.
+     * @param key the key
+     * @return true if present
+     */
+    public boolean contains(long key) {
+        Block b = head;
+        for (int level = height; ; --level) {
+            int i;
+            for (Block f; ; b = f) {
+                i = scan(b, key);
+                if (i + 1 < b.count || (f = b.next) == null || f.keys[0] >= key)
+                    break;
+            }
+            if (level == 0) {
+                if (i + 1 < b.count)
+                    return b.keys[i + 1] == key;
+                Block f = b.next;
+                return f != null && f.keys[0] == key;
+            }
+            b = b.down[i];
+        }
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    public int size() {
+        return size;
+    }
+
+    /* ---------------- Updates -------------- */
+
+    /**
+     * Main insertion method.  Adds element even if an equal one is
+     * present, before it.
+     *
+     * The predecessor block and position of each level are remembered
+     * on the way down.  The key is then added bottom up: on each level
+     * below its top it splits the predecessor block, heading the new
+     * block, and on its top level it is inserted as an entry pointing
+     * down to the block it heads one level below.  A key drawn taller
+     * than the list grows it by one level.
+     * @param key the key
+     */
+    public void insert(long key) {
+        int h = levelGenerator.nextLevel();
+        Block[] preds = new Block[height + 2];
+        int[] pos = new int[height + 2];
+        findPredecessor(key, preds, pos);
+        if (h > height) { // grow by one level
+            h = height + 1;
+            Block nh = new Block(MIN_CAPACITY, true);
+            nh.down[0] = head;
+            nh.count = 1;
+            head = nh;
+            height = h;
+            preds[h] = nh;
+        }
+        Block below = null;
+        for (int level = 0; level < h; ++level)
+            below = preds[level].split(pos[level] + 1, key, below);
+        preds[h].insert(pos[h] + 1, key, below);
+        size++;
+    }
+
+    /**
+     * Main deletion method.  Removes the first key equal to the given
+     * one.
+     *
+     * Levels are repaired bottom up.  While the key heads a block,
+     * that block is merged into its predecessor, and the key is looked
+     * for one level up; on the key's top level it is an entry, and is
+     * removed.  Empty top levels are then dropped.
+     *
+     * @param key the key
+     * @return true, or false if not found
+     */
+    public boolean delete(long key) {
+        Block[] preds = new Block[height + 1];
+        int[] pos = new int[height + 1];
+        findPredecessor(key, preds, pos);
+        for (int level = 0; ; ++level) {
+            Block b = preds[level];
+            int p = pos[level] + 1;
+            if (p < b.count) {
+                if (b.keys[p] != key)
+                    return false;
+                b.remove(p);
+                break;
+            }
+            Block f = b.next;
+            if (f == null || f.keys[0] != key)
+                return false;
+            b.absorbNext();
+        }
+        --size;
+        while (height > 0 && head.count == 1) {
+            head = head.down[0];
+            --height;
+        }
+        return true;
+    }
+
+    /* ---------------- Bulk loading -------------- */
+
+    /**
+     * Builds a list from keys in ascending order, in linear time, with
+     * the default level generator.
+     *
+     * @param sorted the keys, in ascending order
+     * @return the list
+     * @throws IllegalArgumentException if the keys are not in order
+     */
+    public static BlockedSkipList bulkLoad(long[] sorted) {
+        return bulkLoad(sorted, LevelGenerator.threadLocal(1.0 / BLOCK_SIZE));
+    }
+
+    /**
+     * Builds a list from keys in ascending order, in linear time.  The
+     * key at (1-based) position i gets levelGenerator.idealLevel(i)
+     * index levels (see {@link LevelGenerator#idealLevel}), so for
+     * promotion probability p every 1/p-th key of a level heads a
+     * block and is an entry of the level above.  Since the expected
+     * block size is 1/p, that is the ideal shape: every block on every
+     * level holds 1/p entries, rounded as idealLevel rounds, but the
+     * last ones.
+     *
+     * @param sorted the keys, in ascending order
+     * @param levelGenerator the level generator of the list
+     * @return the list
+     * @throws IllegalArgumentException if the keys are not in order
+     */
+    public static BlockedSkipList bulkLoad(long[] sorted, LevelGenerator levelGenerator) {
+        BlockedSkipList list = new BlockedSkipList(levelGenerator);
+        Block[] first = new Block[LevelGenerator.MAX_LEVEL + 1];
+        Block[] last = new Block[LevelGenerator.MAX_LEVEL + 1];
+        first[0] = last[0] = list.head;
+        int height = 0;
+        for (int i = 0; i < sorted.length; ++i) {
+            long key = sorted[i];
+            if (i > 0 && key < sorted[i - 1])
+                throw new IllegalArgumentException("keys not in ascending order");
+            int h = levelGenerator.idealLevel(i + 1);
+            while (height < h) {
+                Block nh = new Block(MIN_CAPACITY, true);
+                nh.down[0] = first[height];
+                nh.count = 1;
+                ++height;
+                first[height] = last[height] = nh;
+            }
+            Block below = null;
+            for (int level = 0; level < h; ++level) {
+                Block b = last[level];
+                below = b.split(b.count, key, below);
+                last[level] = below;
+            }
+            last[h].insert(last[h].count, key, below);
+        }
+        list.head = first[height];
+        list.height = height;
+        list.size = sorted.length;
+        return list;
+    }
+
+    /* ---------------- Constructors -------------- */
+
+    /**
+     * Constructs a new, empty list, promoting keys with probability
+     * 1/{@link #BLOCK_SIZE}.
+     */
+    public BlockedSkipList() {
+        this(LevelGenerator.threadLocal(1.0 / BLOCK_SIZE));
+    }
+
+    /**
+     * Constructs a new, empty list with the given level generator,
+     * whose promotion probability p sets the expected block size to
+     * 1/p.
+     *
+     * @param levelGenerator the level generator
+     */
+    public BlockedSkipList(LevelGenerator levelGenerator) {
+        if (levelGenerator == null)
+            throw new NullPointerException();
+        this.levelGenerator = levelGenerator;
+        initialize();
+    }
+}
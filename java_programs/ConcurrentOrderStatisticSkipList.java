@@ -0,0 +1,427 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * A thread-safe {@link OrderStatisticSkipList}.
+ *
+ * Writers are serialized by a {@link StampedLock}, so the
+ * non-atomic distance updates made by insert and delete are never
+ * interleaved.  Readers first run without any lock, under an
+ * optimistic stamp, and only retry under the read lock if a writer
+ * got in while they were traversing.  A traversal of the underlying
+ * list always terminates even while it is being modified (nodes and
+ * indexes are only ever spliced in front of or around existing
+ * ones, never into a cycle), so an optimistic read either validates
+ * and is exact, or is discarded.  An exception thrown by an
+ * optimistic read is discarded only if the read fails to validate,
+ * since it may then come from a torn state; otherwise it is thrown
+ * to the caller, as it would be under the read lock.
+ *
+ * Scope: writer concurrency is not implemented.  This class makes
+ * rank and select exact under concurrent writers, but it does not
+ * make the writers themselves concurrent.
+ * Every writer goes through the one write lock, so insert, delete,
+ * evictBefore, evictFirst and compact run one at a time however many
+ * threads call them: write throughput does not grow with the number
+ * of threads, and each write also invalidates every optimistic read
+ * in flight.  Neither per-level locks nor versioned spans (as in
+ * {@link VersionedRangeQuerySkipList}, whose writers are serialized
+ * too) are used.  With per-level locks, a writer would have to
+ * adjust the distances of the upper levels before the base level
+ * tells it whether its key is there to delete, and another writer
+ * may have split the span it adjusted by the time it knows.  This
+ * class therefore suits read-mostly workloads; where writes
+ * dominate, {@link SkipList} scales but does not keep ranks.
+ *
+ * ConcurrentOrderStatisticBench in the jmh module times insert,
+ * delete, rank and select for 1 to 64 threads, run through
+ * ThreadSweep; the numbers are only meaningful on a machine with at
+ * least as many cores as threads.
+ */
+public class ConcurrentOrderStatisticSkipList<V> {
+
+    private final OrderStatisticSkipList<V> list;
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * The number of writes made, under the write lock, by insert,
+     * delete, evictBefore and evictFirst; compact compares it to tell
+     * whether the list changed while it was building.
+     */
+    private long modCount;
+
+    public ConcurrentOrderStatisticSkipList() {
+        this.list = new OrderStatisticSkipList<>();
+    }
+
+    public ConcurrentOrderStatisticSkipList(Comparator<? super V> comparator) {
+        this.list = new OrderStatisticSkipList<>(comparator);
+    }
+
+    /**
+     * The generator is only called under the write lock, so a
+     * {@link LevelGenerator#seeded seeded} generator may be used.
+     */
+    public ConcurrentOrderStatisticSkipList(Comparator<? super V> comparator, LevelGenerator levelGenerator) {
+        this.list = new OrderStatisticSkipList<>(comparator, levelGenerator);
+    }
+
+    /**
+     * Same as above, counting duplicates if countDuplicates; see
+     * {@link OrderStatisticSkipList#OrderStatisticSkipList(Comparator, LevelGenerator, boolean)}.
+     */
+    public ConcurrentOrderStatisticSkipList(Comparator<? super V> comparator, LevelGenerator levelGenerator,
+                                            boolean countDuplicates) {
+        this.list = new OrderStatisticSkipList<>(comparator, levelGenerator, countDuplicates);
+    }
+
+    /**
+     * Adds element.
+     * @param value the value
+     */
+    public void insert(V value) {
+        if (value == null)
+            throw new NullPointerException();
+        long stamp = lock.writeLock();
+        try {
+            ++modCount;
+            list.insert(value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes one element equal to value.
+     * @param value the value
+     * @return true, or false if not found
+     */
+    public boolean delete(Object value) {
+        if (value == null)
+            throw new NullPointerException();
+        long stamp = lock.writeLock();
+        try {
+            ++modCount;
+            return list.delete(value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Determining the rank of an element
+     *
+     * @param value the value
+     * @return the rank of value, or -1 if not found
+     */
+    public int rank(Object value) {
+        if (value == null)
+            throw new NullPointerException(); // don't postpone errors
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                int rank = list.rank(value);
+                if (lock.validate(stamp))
+                    return rank;
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp))
+                    throw e;
+                // torn read, retry under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return list.rank(value);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the ranks of the first and the last element equal to
+     * value.
+     *
+     * @param value the value
+     * @return {first rank, last rank}, or null if not found
+     */
+    public int[] rankRange(Object value) {
+        if (value == null)
+            throw new NullPointerException(); // don't postpone errors
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                int[] range = list.rankRange(value);
+                if (lock.validate(stamp))
+                    return range;
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp))
+                    throw e;
+                // torn read, retry under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return list.rankRange(value);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Retrieving the element with a given rank
+     *
+     * @param rank the rank
+     * @return the element with the given rank, or null if the rank is out of upper bound
+     */
+    public V select(int rank) {
+        if (rank <= 0)
+            throw new IllegalArgumentException(); // don't postpone errors
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                V value = list.select(rank);
+                if (lock.validate(stamp))
+                    return value;
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp))
+                    throw e;
+                // torn read, retry under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return list.select(rank);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Same as {@link #select(int)}, using the recursive traversal.
+     *
+     * @param rank the rank
+     * @return the element with the given rank, or null if the rank is out of upper bound
+     */
+    public V selectRecursive(int rank) {
+        if (rank <= 0)
+            throw new IllegalArgumentException(); // don't postpone errors
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                V value = list.selectRecursive(rank);
+                if (lock.validate(stamp))
+                    return value;
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp))
+                    throw e;
+                // torn read, retry under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return list.selectRecursive(rank);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the elements at the given percentiles; see
+     * {@link OrderStatisticSkipList#percentiles}.
+     *
+     * @param percentiles the percentiles, each between 0 and 100
+     * @return the elements, in the order of the percentiles
+     */
+    public List<V> percentiles(double... percentiles) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                List<V> values = list.percentiles(percentiles);
+                if (lock.validate(stamp))
+                    return values;
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp))
+                    throw e;
+                // torn read, retry under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return list.percentiles(percentiles);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Performs the given action on each element with rank from fromRank
+     * to toRank inclusive; see {@link OrderStatisticSkipList#selectRange}.
+     * The elements are copied out under an optimistic stamp, or the
+     * read lock if that fails to validate, and the action runs on the
+     * copy once the lock is released, so it may itself read or write
+     * this list.  The elements are those of one point in time, which
+     * later writes do not change.
+     *
+     * @param fromRank the first rank, at least 1
+     * @param toRank the last rank, at least fromRank
+     * @param action the action
+     */
+    public void selectRange(int fromRank, int toRank, Consumer<? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        if (fromRank <= 0 || toRank < fromRank)
+            throw new IllegalArgumentException(); // don't postpone errors
+        List<V> values = null;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                List<V> copy = copyRange(fromRank, toRank);
+                if (lock.validate(stamp))
+                    values = copy;
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp))
+                    throw e;
+                // torn read, retry under the read lock
+            }
+        }
+        if (values == null) {
+            stamp = lock.readLock();
+            try {
+                values = copyRange(fromRank, toRank);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        values.forEach(action);
+    }
+
+    /**
+     * Returns the elements with rank from fromRank to toRank, as far
+     * as the size goes.
+     */
+    private List<V> copyRange(int fromRank, int toRank) {
+        int n = Math.max(0, Math.min(toRank, list.size()) - fromRank + 1);
+        List<V> values = new ArrayList<>(n);
+        list.selectRange(fromRank, toRank, values::add);
+        return values;
+    }
+
+    /**
+     * Removes every element less than value; see
+     * {@link OrderStatisticSkipList#evictBefore}.
+     *
+     * @param value the least value to keep
+     * @return the number of elements removed
+     */
+    public int evictBefore(Object value) {
+        if (value == null)
+            throw new NullPointerException();
+        long stamp = lock.writeLock();
+        try {
+            ++modCount;
+            return list.evictBefore(value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the first n elements; see
+     * {@link OrderStatisticSkipList#evictFirst}.
+     *
+     * @param n the number of elements to remove
+     * @return the number of elements removed
+     */
+    public int evictFirst(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException();
+        long stamp = lock.writeLock();
+        try {
+            ++modCount;
+            return list.evictFirst(n);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Rebuilds the index levels, as {@link OrderStatisticSkipList#compact}
+     * does, without blocking readers for the length of the rebuild.
+     *
+     * The new levels are built under the read lock, which keeps
+     * writers out but lets readers in, both optimistic and locked;
+     * only publishing them takes the write lock.  If no other reader
+     * holds the read lock, it is converted in place.  Otherwise it is
+     * released and the write lock taken, and the levels are published
+     * if no write got in between, as the modification count tells.
+     * Only if one did are they rebuilt under the write lock.
+     */
+    public void compact() {
+        long stamp = lock.readLock();
+        OrderStatisticSkipList.HeadIndex<V> h;
+        long built;
+        try {
+            h = list.buildIndex();
+            built = modCount;
+            long ws = lock.tryConvertToWriteLock(stamp);
+            if (ws != 0L) {
+                stamp = ws;
+                list.publishIndex(h);
+                return;
+            }
+        } finally {
+            lock.unlock(stamp);
+        }
+        stamp = lock.writeLock();
+        try {
+            if (modCount == built)
+                list.publishIndex(h);
+            else
+                list.compact();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int size = list.size();
+        if (lock.validate(stamp))
+            return size;
+        stamp = lock.readLock();
+        try {
+            return list.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the shape of this list and of the counters
+     * recorded for it, as {@link OrderStatisticSkipList#stats}.  The
+     * levels are walked under the read lock, so the snapshot is
+     * consistent.  The latency of a read that retried under the lock
+     * is recorded once per attempt.
+     *
+     * @return the snapshot
+     */
+    public SkipListStats stats() {
+        long stamp = lock.readLock();
+        try {
+            return list.stats();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -2,8 +2,12 @@ package com.spicdt.party.admin.biz.publish.service;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class IntervalSkipList {
 
@@ -17,6 +21,14 @@ public class IntervalSkipList {
      */
     private int size;
 
+    final LevelGenerator levelGenerator;
+
+    /**
+     * Traversal counters and latencies, or null unless
+     * SkipListMetrics.ENABLED.
+     */
+    private final SkipListMetrics metrics = SkipListMetrics.ENABLED ? new SkipListMetrics() : null;
+
     private void initialize() {
         head = new HeadIndex(new Node(null, null),
                                   null, null, 1);
@@ -28,14 +40,19 @@ public class IntervalSkipList {
 
     /* ---------------- Interval -------------- */
 
+    /**
+     * A closed interval [low, high].  The bounds are stored as
+     * primitives, so comparisons, overlap tests and max updates on the
+     * hot paths never unbox, and an interval costs a single object.
+     */
     public static class Interval implements Comparable<Interval> {
-        final Integer low;
-        final Integer high;
+        final int low;
+        final int high;
 
         /**
          * Creates a new regular interval.
          */
-        Interval(Integer low, Integer high) {
+        Interval(int low, int high) {
             if (low > high) {
                 throw new IllegalArgumentException("low must not be greater than high");
             }
@@ -119,38 +136,45 @@ public class IntervalSkipList {
          * Set newSucc as successor.
          * @param succ the expected current successor
          * @param newSucc the new successor
+         * @return the number of base nodes rescanned
          */
-        final void link(Index succ, Index newSucc) {
+        final int link(Index succ, Index newSucc) {
             newSucc.right = succ;
             updateRight(newSucc);
-            updateMax(this, newSucc);
+            int steps = updateMax(this, newSucc);
             if (succ != null && newSucc.max >= succ.max) {
-                updateMax(newSucc, succ);
+                steps = steps + updateMax(newSucc, succ);
             }
+            return steps;
         }
 
         /**
          * Tries to set right field to skip over apparent successor
          * succ.
          * @param succ the current successor
+         * @return the number of base nodes rescanned
          */
-        final void unlink(Index succ) {
+        final int unlink(Index succ) {
             updateRight(succ.right);
             if (succ.right != null && succ.max >= succ.right.max) {
-                updateMax(this, succ.right);
+                return updateMax(this, succ.right);
             }
+            return 0;
         }
 
-        static void updateMax(Index p, Index r) {
+        static int updateMax(Index p, Index r) {
+            int steps = 0;
             int max = Integer.MIN_VALUE;
             Node node = p.node;
             while (node != r.node) {
                 node = node.next;
+                steps++;
                 if (node.value.high > max) {
                     max = node.value.high;
                 }
             }
             r.max = max;
+            return steps;
         }
 
     }
@@ -179,16 +203,24 @@ public class IntervalSkipList {
     private Node findPredecessor(Interval value) {
         if (value == null)
             throw new NullPointerException(); // don't postpone errors
-        for (Index q = head, r = q.right, d; ; ) {
+        HeadIndex h = head;
+        int j = h.level, steps = 0;
+        for (Index q = h, r = q.right, d; ; ) {
             if (r != null) {
                 Node n = r.node;
                 Interval k = n.value;
                 if (value.compareTo(k) > 0) {
                     q = r;
                     r = r.right;
+                    if (SkipListMetrics.ENABLED)
+                        ++steps;
                     continue;
                 }
             }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(j--, steps);
+                steps = 0;
+            }
             if ((d = q.down) == null)
                 return q.node;
             q = d;
@@ -201,13 +233,25 @@ public class IntervalSkipList {
      * @param value the value
      */
     public void intervalInsert(Interval value) {
+        if (!SkipListMetrics.ENABLED) {
+            doInsert(value);
+            return;
+        }
+        long start = System.nanoTime();
+        doInsert(value);
+        metrics.latency(SkipListMetrics.Op.INSERT, System.nanoTime() - start);
+    }
+
+    private void doInsert(Interval value) {
         Node z;             // added node
         if (value == null)
             throw new NullPointerException();
 
         Node b;
         int currentMax = value.high;
-        for (Index q = head, r = q.right, d; ; ) {
+        HeadIndex top = head;
+        int l = top.level, steps = 0;
+        for (Index q = top, r = q.right, d; ; ) {
             if (r != null) {
                 Node n = r.node;
                 Interval k = n.value;
@@ -217,6 +261,8 @@ public class IntervalSkipList {
                     }
                     q = r;
                     r = r.right;
+                    if (SkipListMetrics.ENABLED)
+                        ++steps;
                     continue;
                 } else {
                     if (r.max < value.high) {
@@ -224,6 +270,10 @@ public class IntervalSkipList {
                     }
                 }
             }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(l--, steps);
+                steps = 0;
+            }
             if ((d = q.down) == null) {
                 b = q.node;
                 break;
@@ -240,23 +290,24 @@ public class IntervalSkipList {
                     }
                     b = n;
                     n = f;
+                    if (SkipListMetrics.ENABLED)
+                        ++steps;
                     continue;
                 }
                 // else c <= 0; fall through
             }
 
+            if (SkipListMetrics.ENABLED)
+                metrics.baseWalk(steps);
             z = new Node(value, n);
             b.updateNext(z);
             size++;
             break;
         }
 
-        int rnd = ThreadLocalRandom.current().nextInt();
-//        if ((rnd & 0x80000001) == 0) { // test highest and lowest bits
-        if ((rnd & 0x00000001) == 0) { // test highest and lowest bits
-            int level = 1, max;
-            while (((rnd >>>= 1) & 1) != 0)
-                ++level;
+        int level = levelGenerator.nextLevel();
+        if (level > 0) {
+            int max;
             Index idx = null;
             HeadIndex h = head;
             if (level <= (max = h.level)) {
@@ -292,7 +343,9 @@ public class IntervalSkipList {
                 }
 
                 if (j == insertionLevel) {
-                    q.link(r, t);
+                    int walked = q.link(r, t);
+                    if (SkipListMetrics.ENABLED)
+                        metrics.link(walked);
                     if (--insertionLevel == 0)
                         break;
                 }
@@ -313,15 +366,32 @@ public class IntervalSkipList {
      * @return interval that overlaps value, or null if not found
      */
     public Interval intervalSearch(Interval value) {
+        if (!SkipListMetrics.ENABLED)
+            return doSearch(value);
+        long start = System.nanoTime();
+        Interval found = doSearch(value);
+        metrics.latency(SkipListMetrics.Op.QUERY, System.nanoTime() - start);
+        return found;
+    }
+
+    private Interval doSearch(Interval value) {
         if (value == null)
             throw new NullPointerException();
         Node b, e = null;
-        for (Index q = head, r = q.right, d; ; ) {
+        HeadIndex h = head;
+        int j = h.level, steps = 0;
+        for (Index q = h, r = q.right, d; ; ) {
             if (r != null && r.max < value.low) {
                 q = r;
                 r = r.right;
+                if (SkipListMetrics.ENABLED)
+                    ++steps;
                 continue;
             }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(j--, steps);
+                steps = 0;
+            }
             if ((d = q.down) == null) {
                 b = q.node;
                 if (r != null) {
@@ -336,16 +406,120 @@ public class IntervalSkipList {
             if (n == null)
                 break;
             if (isOverlap(value, n.value)) {
+                if (SkipListMetrics.ENABLED)
+                    metrics.baseWalk(steps);
                 return n.value;
             } else if (n == e) {
                 break;
             } else {
                 n = n.next;
+                if (SkipListMetrics.ENABLED)
+                    ++steps;
             }
         }
+        if (SkipListMetrics.ENABLED)
+            metrics.baseWalk(steps);
         return null;
     }
 
+    /**
+     * Returns all intervals in the list that overlap value, in
+     * ascending order.
+     * @param value the value
+     * @return the overlapping intervals, possibly empty
+     */
+    public List<Interval> intervalSearchAll(Interval value) {
+        if (value == null)
+            throw new NullPointerException();
+        List<Interval> result = new ArrayList<>();
+        forEachOverlap(value.low, value.high, result::add);
+        return result;
+    }
+
+    /**
+     * Returns all intervals in the list that contain point, in
+     * ascending order.
+     * @param point the point
+     * @return the intervals containing point, possibly empty
+     */
+    public List<Interval> stab(int point) {
+        List<Interval> result = new ArrayList<>();
+        forEachOverlap(point, point, result::add);
+        return result;
+    }
+
+    /**
+     * Performs action for each interval in the list that overlaps
+     * value, in ascending order, without collecting them first.
+     *
+     * Spans whose max is below value.low hold no overlap and are
+     * skipped whole; any other span is descended into.  Since nodes
+     * are sorted by low end, the walk stops at the first node whose
+     * low end is above value.high.  The overlaps need not be
+     * adjacent, since a long interval may overlap value while the
+     * intervals after it do not, so the k reported intervals may each
+     * need a descent of their own.  Those descents share only the top
+     * of their paths, which gives expected O(log n + k log(n/k)), not
+     * O(log n + k); it is O(log n + k) when the overlaps are adjacent.
+     * @param value the value
+     * @param action the action to perform on each overlapping interval
+     */
+    public void forEachOverlap(Interval value, Consumer<? super Interval> action) {
+        if (value == null || action == null)
+            throw new NullPointerException();
+        forEachOverlap(value.low, value.high, action);
+    }
+
+    /**
+     * Implements the overlap queries, recording their latency.
+     */
+    private void forEachOverlap(int low, int high, Consumer<? super Interval> action) {
+        if (!SkipListMetrics.ENABLED) {
+            forEachOverlap(head, null, low, high, action);
+            return;
+        }
+        long start = System.nanoTime();
+        forEachOverlap(head, null, low, high, action);
+        metrics.latency(SkipListMetrics.Op.QUERY, System.nanoTime() - start);
+    }
+
+    /**
+     * Visits the spans of q's level, from q up to the index of node
+     * stop (or to the end of the level if stop is null), descending
+     * into each span that may hold an interval overlapping
+     * [low, high].
+     * @return false if a node starting after high was reached, so
+     * that callers stop as well
+     */
+    private boolean forEachOverlap(Index q, Node stop, int low, int high,
+                                   Consumer<? super Interval> action) {
+        for (Index r = q.right; ; q = r, r = r.right) {
+            Node n = q.node;
+            if (n.value != null && n.value.low > high)
+                return false;
+            if (r == null || r.max >= low) {
+                Node end = (r == null) ? null : r.node;
+                Index d;
+                if ((d = q.down) != null) {
+                    if (!forEachOverlap(d, end, low, high, action))
+                        return false;
+                } else {
+                    for (Node m = n.next; m != null; m = m.next) {
+                        Interval v = m.value;
+                        if (v.low > high)
+                            return false;
+                        if (v.high >= low)
+                            action.accept(v);
+                        if (m == end)
+                            break;
+                    }
+                }
+            }
+            if (r == null || r.node == stop)
+                return true;
+        }
+    }
+
     private boolean isOverlap(Interval i, Interval j) {
         return i.low <= j.high && j.low <= i.high;
     }
@@ -367,8 +541,18 @@ public class IntervalSkipList {
      * @return true, or false if not found
      */
     public boolean intervalDelete(Interval value) {
+        if (!SkipListMetrics.ENABLED)
+            return doDelete(value);
+        long start = System.nanoTime();
+        boolean deleted = doDelete(value);
+        metrics.latency(SkipListMetrics.Op.DELETE, System.nanoTime() - start);
+        return deleted;
+    }
+
+    private boolean doDelete(Interval value) {
         if (value == null)
             throw new NullPointerException();
+        int walk = 0;
         for (Node b = findPredecessor(value), n = b.next; ; ) {
             int c;
             if (n == null)
@@ -379,8 +563,12 @@ public class IntervalSkipList {
             if (c > 0) {
                 b = n;
                 n = f;
+                if (SkipListMetrics.ENABLED)
+                    ++walk;
                 continue;
             }
+            if (SkipListMetrics.ENABLED)
+                metrics.baseWalk(walk);
             n.setDeleted();
             b.updateNext(f);
             --size;
@@ -390,7 +578,9 @@ public class IntervalSkipList {
                     Node m = r.node;
                     Interval k = m.value;
                     if (m.deleted) {
-                        q.unlink(r);
+                        int walked = q.unlink(r);
+                        if (SkipListMetrics.ENABLED)
+                            metrics.link(walked);
                         r = q.right;         // reread r
                         continue;
                     }
@@ -400,7 +590,9 @@ public class IntervalSkipList {
                         continue;
                     } else {
                         if (value.high == r.max) {
-                            Index.updateMax(q, r);
+                            int walked = Index.updateMax(q, r);
+                            if (SkipListMetrics.ENABLED)
+                                metrics.link(walked);
                         }
                     }
                 }
@@ -414,6 +606,8 @@ public class IntervalSkipList {
                 tryReduceLevel();
             return true;
         }
+        if (SkipListMetrics.ENABLED)
+            metrics.baseWalk(walk);
         return false;
     }
 
@@ -444,7 +638,146 @@ public class IntervalSkipList {
             updateHead(d);
     }
 
+    /* ---------------- Statistics -------------- */
+
+    /**
+     * Returns a snapshot of the shape of this list and of the counters
+     * recorded for it (see {@link SkipListMetrics}).  Each index level
+     * is walked to count its indexes, so this takes time linear in the
+     * number of indexes.
+     *
+     * @return the snapshot
+     */
+    public SkipListStats stats() {
+        HeadIndex h = head;
+        long[] counts = new long[h.level + 1];
+        int j = h.level;
+        for (Index q = h; q != null; q = q.down, --j) {
+            long c = 0;
+            for (Index r = q.right; r != null; r = r.right)
+                ++c;
+            counts[j] = c;
+        }
+        return new SkipListStats(size, counts, metrics);
+    }
+
+    /* ---------------- Compaction -------------- */
+
+    /**
+     * Rebuilds the index levels over the current intervals in the
+     * ideal shape for the level generator of this list (see
+     * {@link LevelGenerator#idealLevel}), recomputing the max of every
+     * index, and drops the old levels.  Deleting many intervals leaves
+     * levels that are taller than needed, and maxes that only ever
+     * shrink when the index holding them is rebuilt; both are reset
+     * here.
+     *
+     * Nothing reachable from head is modified until the new levels
+     * are complete and installed with one write of head, so
+     * concurrent readers are never paused (writers must still be
+     * excluded, as this class is not thread-safe).
+     */
+    public void compact() {
+        Node base = head.node;
+        IndexBuilder builder = new IndexBuilder(base, levelGenerator);
+        for (Node n = base.next; n != null; n = n.next)
+            builder.add(n);
+        updateHead(builder.head());
+    }
+
+    /* ---------------- Bulk loading -------------- */
+
+    /**
+     * Creates a list holding the given intervals, which must be in
+     * ascending order, in a single O(n) pass instead of n insertions.
+     * The max of every index is computed as the levels are built.
+     *
+     * @param sorted the intervals in ascending order
+     * @return the new list
+     * @throws IllegalArgumentException if the intervals are out of order
+     */
+    public static IntervalSkipList bulkLoad(Iterator<Interval> sorted) {
+        IntervalSkipList list = new IntervalSkipList();
+        Node b = list.head.node;
+        IndexBuilder builder = new IndexBuilder(b, list.levelGenerator);
+        while (sorted.hasNext()) {
+            Interval value = sorted.next();
+            if (value == null)
+                throw new NullPointerException();
+            if (b.value != null && b.value.compareTo(value) > 0)
+                throw new IllegalArgumentException("intervals not in ascending order");
+            Node z = new Node(value, null);
+            b.next = z;
+            b = z;
+            builder.add(z);
+            list.size++;
+        }
+        list.head = builder.head();
+        return list;
+    }
+
+    /**
+     * Same as {@link #bulkLoad(Iterator)}, from an array.
+     *
+     * @param sorted the intervals in ascending order
+     * @return the new list
+     * @throws IllegalArgumentException if the intervals are out of order
+     */
+    public static IntervalSkipList bulkLoad(Interval[] sorted) {
+        return bulkLoad(Arrays.asList(sorted).iterator());
+    }
+
+    /**
+     * Builds the index levels over base nodes handed to it in order,
+     * bottom up, in a single pass.  The node at position i (counting
+     * from 1) gets {@link LevelGenerator#idealLevel} index levels.
+     * Each level tracks the highest high end seen since its last index; a
+     * new index takes it over as its max and passes it on to the
+     * level above.
+     */
+    static final class IndexBuilder {
+        private static final int LEVELS = LevelGenerator.MAX_LEVEL + 2;
+        private final LevelGenerator levelGenerator;
+        private HeadIndex head;
+        private final Index[] last = new Index[LEVELS];
+        private final int[] max = new int[LEVELS];
+        private int position;
+
+        IndexBuilder(Node base, LevelGenerator levelGenerator) {
+            this.levelGenerator = levelGenerator;
+            last[1] = head = new HeadIndex(base, null, null, 1);
+            Arrays.fill(max, Integer.MIN_VALUE);
+        }
+
+        void add(Node n) {
+            max[1] = Math.max(max[1], n.value.high);
+            int level = levelGenerator.idealLevel(++position);
+            Index idx = null;
+            for (int i = 1; i <= level; ++i) {
+                idx = new Index(n, idx, null);
+                idx.max = max[i];
+                max[i + 1] = Math.max(max[i + 1], max[i]);
+                max[i] = Integer.MIN_VALUE;
+                if (i > head.level)
+                    last[i] = head = new HeadIndex(head.node, head, null, i);
+                last[i].right = idx;
+                last[i] = idx;
+            }
+        }
+
+        HeadIndex head() {
+            return head;
+        }
+    }
+
     public IntervalSkipList() {
+        this(LevelGenerator.DEFAULT);
+    }
+
+    public IntervalSkipList(LevelGenerator levelGenerator) {
+        if (levelGenerator == null)
+            throw new NullPointerException();
+        this.levelGenerator = levelGenerator;
         initialize();
     }
 
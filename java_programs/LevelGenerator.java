@@ -0,0 +1,198 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Chooses the height of the index tower of a newly inserted node.
+ *
+ * A node gets at least i index levels with probability p^i, where p
+ * is the promotion probability.  p = 1/2 is the classic choice; a
+ * smaller p (1/4, 1/e) uses fewer index nodes per element at the cost
+ * of longer walks along each level.  Skip lists never grow by more
+ * than one level per insertion, so the result is only an upper bound
+ * on the height actually used.
+ */
+public interface LevelGenerator {
+
+    /**
+     * Upper bound on the value returned by {@link #nextLevel()}.
+     */
+    int MAX_LEVEL = 31;
+
+    /**
+     * Default generator: thread-local xorshift, promotion probability 1/2.
+     */
+    LevelGenerator DEFAULT = threadLocal(0.5);
+
+    /**
+     * Returns the number of index levels for a new node, or 0 if the
+     * node should not be indexed.
+     *
+     * @return the number of index levels, between 0 and MAX_LEVEL
+     */
+    int nextLevel();
+
+    /**
+     * Returns the promotion probability p of this generator.  The
+     * default is 1/2; generators that do not draw from a geometric
+     * distribution should return the p whose density they approximate.
+     *
+     * @return the promotion probability, in (0, 1)
+     */
+    default double probability() {
+        return 0.5;
+    }
+
+    /**
+     * Returns the number of index levels of the element at the given
+     * position in an ideal skip list with this generator's p, which
+     * is what compact and bulkLoad build.  Level i holds every
+     * (1/p)^i-th element, the density that nextLevel reaches only on
+     * average: the element at position k (counting from 1) gets level
+     * i if k is a multiple of (1/p)^i.  When 1/p is not an integer,
+     * the j-th element of level i - 1 gets level i if a multiple of
+     * 1/p falls in (j - 1, j], so that every level holds floor(p * m)
+     * of the m elements of the level below.  For p = 1/2 this is the
+     * number of trailing zero bits of k.
+     *
+     * @param position the position, at least 1
+     * @return the number of index levels, between 0 and MAX_LEVEL
+     */
+    default int idealLevel(long position) {
+        return Geometric.idealLevel(position, probability());
+    }
+
+    /**
+     * Returns a generator backed by a per-thread xorshift state.
+     * Safe for concurrent use.
+     *
+     * @param p the promotion probability, in (0, 1)
+     * @return the generator
+     */
+    static LevelGenerator threadLocal(double p) {
+        return new ThreadLocalXorShift(p);
+    }
+
+    /**
+     * Returns a generator backed by a single xorshift state started
+     * from the given seed, so that the same sequence of insertions
+     * always builds the same towers.  Not safe for concurrent use.
+     *
+     * @param seed the seed
+     * @param p    the promotion probability, in (0, 1)
+     * @return the generator
+     */
+    static LevelGenerator seeded(long seed, double p) {
+        return new Seeded(seed, p);
+    }
+
+    /**
+     * Maps uniformly distributed 64-bit values onto a geometric
+     * distribution of levels.  When p is a power of 1/2, 1/2^k, the
+     * level is the number of trailing zero bits divided by k;
+     * otherwise it is computed by inversion, floor(log(u) / log(p)).
+     */
+    abstract class Geometric implements LevelGenerator {
+        private final double p;
+        private final int shift;
+        private final double logP;
+
+        Geometric(double p) {
+            if (!(p > 0 && p < 1))
+                throw new IllegalArgumentException("p must be in (0, 1)");
+            int k = Math.getExponent(p);
+            this.p = p;
+            this.shift = (p == Math.scalb(1.0, k)) ? -k : 0;
+            this.logP = Math.log(p);
+        }
+
+        @Override
+        public final double probability() {
+            return p;
+        }
+
+        @Override
+        public final int idealLevel(long position) {
+            if (shift > 0)
+                return Math.min(Long.numberOfTrailingZeros(position) / shift, MAX_LEVEL);
+            return idealLevel(position, p);
+        }
+
+        /**
+         * Promotes position level by level while it is the first past
+         * a multiple of 1/p among the elements of its level.
+         */
+        static int idealLevel(long position, double p) {
+            int level = 0;
+            for (long j = position; level < MAX_LEVEL; ++level) {
+                long up = (long) (j * p);
+                if (up == (long) ((j - 1) * p))
+                    break;
+                j = up;
+            }
+            return level;
+        }
+
+        final int levelFor(long rnd) {
+            int level;
+            if (shift > 0) {
+                level = Long.numberOfTrailingZeros(rnd) / shift;
+            } else {
+                double u = (rnd >>> 11) * 0x1.0p-53;          // [0, 1)
+                level = (int) (Math.log1p(-u) / logP);        // log of (0, 1]
+            }
+            return Math.min(level, MAX_LEVEL);
+        }
+
+        static long xorShift(long x) {
+            x ^= x >>> 12;
+            x ^= x << 25;
+            x ^= x >>> 27;
+            return x;
+        }
+
+        static long scramble(long x) {
+            return x * 0x2545F4914F6CDD1DL;
+        }
+    }
+
+    /**
+     * xorshift64* generator with one state per thread.
+     */
+    final class ThreadLocalXorShift extends Geometric {
+        private static final class State {
+            long seed = ThreadLocalRandom.current().nextLong() | 1L;
+        }
+
+        private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+        ThreadLocalXorShift(double p) {
+            super(p);
+        }
+
+        @Override
+        public int nextLevel() {
+            State s = state.get();
+            long x = s.seed = xorShift(s.seed);
+            return levelFor(scramble(x));
+        }
+    }
+
+    /**
+     * xorshift64* generator with a single, seedable state.
+     */
+    final class Seeded extends Geometric {
+        private long seed;
+
+        Seeded(long seed, double p) {
+            super(p);
+            this.seed = (seed == 0) ? 0x9E3779B97F4A7C15L : seed;
+        }
+
+        @Override
+        public int nextLevel() {
+            long x = seed = xorShift(seed);
+            return levelFor(scramble(x));
+        }
+    }
+}
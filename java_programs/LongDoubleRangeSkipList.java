@@ -0,0 +1,619 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.Arrays;
+
+/**
+ * A {@link RangeQuerySkipList} specialized to primitive long keys and
+ * double values.
+ *
+ * Keys and values are stored inline in the nodes and compared with
+ * plain {@code <}, so no traversal step boxes a key or dispatches
+ * through a comparator.  Spans, insertion and deletion work exactly as
+ * in RangeQuerySkipList, and queries use the same iterative boundary
+ * walks.  Equal keys are allowed; insert places a new entry before
+ * existing equal ones, and delete removes the first.
+ *
+ * This class is not thread-safe.
+ */
+public class LongDoubleRangeSkipList {
+
+    /**
+     * The topmost head index of the skiplist.
+     */
+    private transient HeadIndex head;
+
+    /**
+     * The size of the List (the number of elements it contains).
+     */
+    private int size;
+
+    final LevelGenerator levelGenerator;
+
+    private void initialize() {
+        head = new HeadIndex(new Node(0, 0, null), null, null, 1);
+    }
+
+    /* ---------------- Nodes -------------- */
+
+    /**
+     * Nodes hold keys and values, and are singly linked in sorted
+     * order. The list is headed by a dummy node accessible as head.node,
+     * whose key is never compared.
+     */
+    static final class Node {
+        final long key;
+        final double value;
+        Node next;
+
+        /**
+         * Creates a new regular node.
+         */
+        Node(long key, double value, Node next) {
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /* ---------------- Indexing -------------- */
+
+    /**
+     * Index nodes represent the levels of the skip list.  The span of
+     * an index covers the base nodes after the node of its left
+     * neighbour on the same level, up to and including its own node.
+     */
+    static class Index {
+        final Node node;
+        final Index down;
+        Index right;
+        int spanCount;
+        double spanSum;
+        double spanMin;
+        double spanMax;
+
+        /**
+         * Creates index node with given values.
+         */
+        Index(Node node, Index down, Index right) {
+            this.node = node;
+            this.down = down;
+            this.right = right;
+        }
+
+        /**
+         * Set newSucc as successor.  The span of newSucc, and the
+         * remaining span of succ, are recomputed from the level below,
+         * which must already be linked.
+         *
+         * @param succ    the expected current successor
+         * @param newSucc the new successor
+         */
+        final void link(Index succ, Index newSucc) {
+            newSucc.right = succ;
+            this.right = newSucc;
+            newSucc.aggregate(this);
+            if (succ != null) {
+                if (succ.spanMin >= newSucc.spanMin || succ.spanMax <= newSucc.spanMax) {
+                    succ.aggregate(newSucc);
+                } else {
+                    succ.spanCount = succ.spanCount - newSucc.spanCount;
+                    succ.spanSum = succ.spanSum - newSucc.spanSum;
+                }
+            }
+        }
+
+        /**
+         * Set right field to skip over apparent successor
+         * succ.  The span of the new successor, which absorbs the
+         * span of succ, is recomputed from the level below.
+         *
+         * @param succ the current successor
+         */
+        final void unlink(Index succ) {
+            Index next = succ.right;
+            this.right = next;
+            if (next != null) {
+                next.aggregate(this);
+            }
+        }
+
+        /**
+         * Recomputes the span aggregates of this index, from the base
+         * nodes on the lowest index level, and from the spans of the
+         * level below above it.
+         *
+         * @param pred the index to the left of this one
+         */
+        final void aggregate(Index pred) {
+            int count = 0;
+            double sum = 0;
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            if (down == null) {
+                for (Node n = pred.node; n != node; ) {
+                    n = n.next;
+                    count++;
+                    sum = sum + n.value;
+                    min = Math.min(min, n.value);
+                    max = Math.max(max, n.value);
+                }
+            } else {
+                for (Index s = pred.down; s != down; ) {
+                    s = s.right;
+                    count = count + s.spanCount;
+                    sum = sum + s.spanSum;
+                    min = Math.min(min, s.spanMin);
+                    max = Math.max(max, s.spanMax);
+                }
+            }
+            spanCount = count;
+            spanSum = sum;
+            spanMin = min;
+            spanMax = max;
+        }
+    }
+
+    /* ---------------- Head nodes -------------- */
+
+    /**
+     * Nodes heading each level keep track of their level.
+     */
+    static final class HeadIndex extends Index {
+        final int level;
+
+        HeadIndex(Node node, Index down, Index right, int level) {
+            super(node, down, right);
+            this.level = level;
+        }
+    }
+
+    /* ---------------- Queries -------------- */
+
+    /**
+     * Returns true if this list contains the given key.
+     * @param key the key
+     * @return true if present
+     */
+    public boolean contains(long key) {
+        Index q = head;
+        for (;;) {
+            for (Index r; (r = q.right) != null && r.node.key < key; )
+                q = r;
+            if (q.down == null)
+                break;
+            q = q.down;
+        }
+        Node n = q.node.next;
+        while (n != null && n.key < key)
+            n = n.next;
+        return n != null && n.key == key;
+    }
+
+    /**
+     * Returns the rank of the first entry with the given key.
+     *
+     * @param key the key
+     * @return the rank, counting from 1, or -1 if not found
+     */
+    public int rank(long key) {
+        int rank = 0;
+        Index q = head;
+        for (;;) {
+            for (Index r; (r = q.right) != null && r.node.key < key; q = r)
+                rank = rank + r.spanCount;
+            if (q.down == null)
+                break;
+            q = q.down;
+        }
+        for (Node n = q.node.next; n != null && n.key <= key; n = n.next) {
+            rank++;
+            if (n.key == key)
+                return rank;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the key with the given rank.
+     *
+     * @param rank the rank, counting from 1
+     * @return the key
+     * @throws IllegalArgumentException if rank is not in [1, size]
+     */
+    public long select(int rank) {
+        if (rank <= 0 || rank > size)
+            throw new IllegalArgumentException("rank out of range: " + rank);
+        int remaining = rank;
+        Index q = head;
+        for (;;) {
+            for (Index r; (r = q.right) != null && r.spanCount <= remaining; q = r)
+                remaining = remaining - r.spanCount;
+            if (remaining == 0)
+                return q.node.key;
+            if (q.down == null)
+                break;
+            q = q.down;
+        }
+        Node n = q.node;
+        while (remaining-- > 0)
+            n = n.next;
+        return n.key;
+    }
+
+    /**
+     * Returns count, sum, min and max of the values of all keys in
+     * [start, end].
+     *
+     * @param start the lowest key, inclusive
+     * @param end the highest key, inclusive
+     * @return the aggregates
+     */
+    public RangeQuerySkipList.RangeQueryResult rangeQuery(long start, long end) {
+        return rangeQuery(start, end, new RangeQuerySkipList.RangeQueryResult(0, 0, Double.MAX_VALUE, -Double.MAX_VALUE));
+    }
+
+    /**
+     * Same as {@link #rangeQuery(long, long)}, writing the aggregates
+     * into the given result instead of a new one.  See
+     * {@link RangeQuerySkipList#rangeQuery(Object, Object, RangeQuerySkipList.RangeQueryResult)}
+     * for the traversal.
+     *
+     * @param start the lowest key, inclusive
+     * @param end the highest key, inclusive
+     * @param into the result to overwrite
+     * @return into
+     */
+    public RangeQuerySkipList.RangeQueryResult rangeQuery(long start, long end,
+                                                          RangeQuerySkipList.RangeQueryResult into) {
+        if (start > end)
+            throw new IllegalArgumentException("start > end"); // don't postpone errors
+        int count = 0;
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        Index q = head, r;
+        for (;;) {
+            while ((r = q.right) != null && r.node.key < start)
+                q = r;
+            if (r != null && r.node.key <= end)
+                break;
+            if (q.down == null) {
+                Node n = q.node.next;
+                while (n != null && n.key < start)
+                    n = n.next;
+                for (; n != null && n.key <= end; n = n.next) {
+                    count++;
+                    sum = sum + n.value;
+                    min = Math.min(min, n.value);
+                    max = Math.max(max, n.value);
+                }
+                return result(into, count, sum, min, max);
+            }
+            q = q.down;
+        }
+        // right of r: whole spans, then down the right boundary
+        for (Index f = r; ; f = f.down) {
+            for (Index s; (s = f.right) != null && s.node.key <= end; f = s) {
+                count = count + s.spanCount;
+                sum = sum + s.spanSum;
+                min = Math.min(min, s.spanMin);
+                max = Math.max(max, s.spanMax);
+            }
+            if (f.down == null) {
+                for (Node n = f.node.next; n != null && n.key <= end; n = n.next) {
+                    count++;
+                    sum = sum + n.value;
+                    min = Math.min(min, n.value);
+                    max = Math.max(max, n.value);
+                }
+                break;
+            }
+        }
+        // up to r: down the left boundary
+        Index limit = r;
+        while (q.down != null) {
+            q = q.down;
+            limit = limit.down;
+            Index s;
+            while ((s = q.right).node.key < start)
+                q = s;
+            for (Index f = s; f != limit; ) {
+                f = f.right;
+                count = count + f.spanCount;
+                sum = sum + f.spanSum;
+                min = Math.min(min, f.spanMin);
+                max = Math.max(max, f.spanMax);
+            }
+            limit = s;
+        }
+        Node b = q.node;
+        for (Node n; (n = b.next).key < start; )
+            b = n;
+        for (Node n = b, last = limit.node; n != last; ) {
+            n = n.next;
+            count++;
+            sum = sum + n.value;
+            min = Math.min(min, n.value);
+            max = Math.max(max, n.value);
+        }
+        return result(into, count, sum, min, max);
+    }
+
+    private static RangeQuerySkipList.RangeQueryResult result(RangeQuerySkipList.RangeQueryResult into,
+                                                              int count, double sum, double min, double max) {
+        into.setCount(count);
+        into.setSum(sum);
+        into.setMin(min);
+        into.setMax(max);
+        return into;
+    }
+
+    /* ---------------- Updates -------------- */
+
+    /**
+     * Main insertion method.
+     *
+     * The spans of the indexes along the search path are widened on
+     * the way down.  If the new node gets an index tower, the
+     * predecessor index of each level is remembered, and the tower is
+     * linked bottom up, so that each new span can be composed from
+     * the level below it.
+     * @param key the key
+     * @param value the value
+     */
+    public void insert(long key, double value) {
+        int level = levelGenerator.nextLevel();
+        HeadIndex h = head;
+        Index[] preds = level == 0 ? null : new Index[h.level + 1];
+        int rank = 0;
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        int j = h.level;
+        Index q = h;
+        for (;;) {
+            for (Index r; (r = q.right) != null; q = r) {
+                if (r.node.key >= key) {
+                    r.spanCount++;
+                    r.spanSum += value;
+                    r.spanMin = Math.min(r.spanMin, value);
+                    r.spanMax = Math.max(r.spanMax, value);
+                    break;
+                }
+                rank = rank + r.spanCount;
+                sum = sum + r.spanSum;
+                min = Math.min(min, r.spanMin);
+                max = Math.max(max, r.spanMax);
+            }
+            if (preds != null)
+                preds[j] = q;
+            if (q.down == null)
+                break;
+            q = q.down;
+            --j;
+        }
+        Node b = q.node;
+        for (Node n; (n = b.next) != null && n.key < key; b = n) {
+            rank++;
+            sum = sum + n.value;
+            min = Math.min(min, n.value);
+            max = Math.max(max, n.value);
+        }
+        Node z = new Node(key, value, b.next);
+        b.next = z;
+        size++;
+
+        if (level > 0) {
+            // link the tower bottom up
+            Index idx = null;
+            int maxLevel = h.level;
+            for (int i = 1; i <= level && i <= maxLevel; ++i) {
+                idx = new Index(z, idx, null);
+                preds[i].link(preds[i].right, idx);
+            }
+            if (level > maxLevel) { // grow by one level
+                idx = new Index(z, idx, null);
+                idx.spanCount = rank + 1;
+                idx.spanSum = sum + value;
+                idx.spanMin = Math.min(min, value);
+                idx.spanMax = Math.max(max, value);
+                head = new HeadIndex(h.node, h, idx, maxLevel + 1); // top level
+            }
+        }
+    }
+
+    /**
+     * Main deletion method. Locates node, unlinks predecessor, removes
+     * associated index nodes, and possibly reduces head index level.
+     *
+     * As in RangeQuerySkipList, the levels are repaired bottom up: the
+     * index to this node, if any, is unlinked, and the span that
+     * covered the node is shrunk, recomposing min and max from the
+     * level below when the node held either.
+     *
+     * @param key the key
+     * @return true, or false if not found
+     */
+    public boolean delete(long key) {
+        HeadIndex h = head;
+        Index[] preds = new Index[h.level + 1];
+        int j = h.level;
+        Index q = h;
+        for (;;) {
+            for (Index r; (r = q.right) != null && r.node.key < key; )
+                q = r;
+            preds[j] = q;
+            if (q.down == null)
+                break;
+            q = q.down;
+            --j;
+        }
+        Node b = q.node, n;
+        while ((n = b.next) != null && n.key < key)
+            b = n;
+        if (n == null || n.key != key)
+            return false;
+        b.next = n.next;
+        --size;
+        for (int i = 1; i < preds.length; ++i) {
+            Index p = preds[i], r = p.right;
+            if (r == null)
+                continue;
+            if (r.node == n) {
+                p.unlink(r);
+            } else {
+                r.spanCount--;
+                r.spanSum -= n.value;
+                if (r.spanMin == n.value || r.spanMax == n.value) {
+                    r.aggregate(p);
+                }
+            }
+        }
+        if (head.right == null)
+            tryReduceLevel();
+        return true;
+    }
+
+    /**
+     * Possibly reduce head level if it has no nodes.  The level is
+     * reduced by one only if the topmost three levels look empty, to
+     * reduce hysteresis.
+     */
+    private void tryReduceLevel() {
+        HeadIndex h = head;
+        HeadIndex d;
+        HeadIndex e;
+        if (h.level > 3 &&
+            (d = (HeadIndex) h.down) != null &&
+            (e = (HeadIndex) d.down) != null &&
+            e.right == null &&
+            d.right == null &&
+            h.right == null)
+            head = d;
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    public int size() {
+        return size;
+    }
+
+    /* ---------------- Compaction -------------- */
+
+    /**
+     * Same as {@link RangeQuerySkipList#compact}: rebuilds the index
+     * levels and their spans in the ideal shape for the level
+     * generator of this list, over the current
+     * entries, and replaces the old levels with them.  Unlike in
+     * RangeQuerySkipList, head is not volatile here, so no other
+     * thread may use the list while this runs.
+     */
+    public void compact() {
+        Node base = head.node;
+        IndexBuilder builder = new IndexBuilder(base, levelGenerator);
+        for (Node n = base.next; n != null; n = n.next)
+            builder.add(n);
+        head = builder.head();
+    }
+
+    /* ---------------- Bulk loading -------------- */
+
+    /**
+     * Creates a list holding the given entries, whose keys must be in
+     * ascending order (equal keys are allowed), in a single O(n) pass.
+     * See {@link RangeQuerySkipList#bulkLoad}.
+     *
+     * @param keys the keys in ascending order
+     * @param values the value of each key
+     * @return the new list
+     * @throws IllegalArgumentException if the keys are out of order, or
+     * the arrays differ in length
+     */
+    public static LongDoubleRangeSkipList bulkLoad(long[] keys, double[] values) {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("keys and values differ in length");
+        LongDoubleRangeSkipList list = new LongDoubleRangeSkipList();
+        Node b = list.head.node;
+        IndexBuilder builder = new IndexBuilder(b, list.levelGenerator);
+        for (int i = 0; i < keys.length; ++i) {
+            if (i > 0 && keys[i - 1] > keys[i])
+                throw new IllegalArgumentException("keys not in ascending order");
+            Node z = new Node(keys[i], values[i], null);
+            b.next = z;
+            b = z;
+            builder.add(z);
+        }
+        list.size = keys.length;
+        list.head = builder.head();
+        return list;
+    }
+
+    /**
+     * Builds the index levels over base nodes handed to it in order,
+     * as {@link RangeQuerySkipList.IndexBuilder} does.
+     */
+    static final class IndexBuilder {
+        private static final int LEVELS = LevelGenerator.MAX_LEVEL + 2;
+        private final LevelGenerator levelGenerator;
+        private HeadIndex head;
+        private final Index[] last = new Index[LEVELS];
+        private final int[] count = new int[LEVELS];
+        private final double[] sum = new double[LEVELS];
+        private final double[] min = new double[LEVELS];
+        private final double[] max = new double[LEVELS];
+        private int position;
+
+        IndexBuilder(Node base, LevelGenerator levelGenerator) {
+            this.levelGenerator = levelGenerator;
+            last[1] = head = new HeadIndex(base, null, null, 1);
+            Arrays.fill(min, Double.MAX_VALUE);
+            Arrays.fill(max, -Double.MAX_VALUE);
+        }
+
+        void add(Node n) {
+            count[1]++;
+            sum[1] = sum[1] + n.value;
+            min[1] = Math.min(min[1], n.value);
+            max[1] = Math.max(max[1], n.value);
+            int level = levelGenerator.idealLevel(++position);
+            Index idx = null;
+            for (int i = 1; i <= level; ++i) {
+                idx = new Index(n, idx, null);
+                idx.spanCount = count[i];
+                idx.spanSum = sum[i];
+                idx.spanMin = min[i];
+                idx.spanMax = max[i];
+                count[i + 1] = count[i + 1] + count[i];
+                sum[i + 1] = sum[i + 1] + sum[i];
+                min[i + 1] = Math.min(min[i + 1], min[i]);
+                max[i + 1] = Math.max(max[i + 1], max[i]);
+                count[i] = 0;
+                sum[i] = 0;
+                min[i] = Double.MAX_VALUE;
+                max[i] = -Double.MAX_VALUE;
+                if (i > head.level)
+                    last[i] = head = new HeadIndex(head.node, head, null, i);
+                last[i].right = idx;
+                last[i] = idx;
+            }
+        }
+
+        HeadIndex head() {
+            return head;
+        }
+    }
+
+    public LongDoubleRangeSkipList() {
+        this(LevelGenerator.DEFAULT);
+    }
+
+    public LongDoubleRangeSkipList(LevelGenerator levelGenerator) {
+        if (levelGenerator == null)
+            throw new NullPointerException();
+        this.levelGenerator = levelGenerator;
+        initialize();
+    }
+}
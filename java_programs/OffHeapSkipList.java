@@ -0,0 +1,316 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A skip list of primitive long keys whose nodes live off-heap.
+ *
+ * Nodes and their index towers are packed into records in direct
+ * ByteBuffer chunks and refer to each other by int address instead
+ * of by reference, so the whole list is a handful of heap objects
+ * however many keys it holds, and the garbage collector never has to
+ * trace it.  Semantics match {@link SkipList}: insert always adds
+ * (equal keys are kept, newest first), delete removes one copy.
+ *
+ * This class is not thread-safe.
+ */
+public class OffHeapSkipList {
+
+    /* ---------------- Records -------------- */
+
+    /*
+     * Memory is addressed in 4-byte words.  A record is laid out as
+     *
+     *   word 0-1   key
+     *   word 2     height h, the number of index levels
+     *   word 3..   next[0..h], the successor on each level, where
+     *              level 0 is the base list
+     *
+     * so a node without an index takes 16 bytes, and every index
+     * level adds 4.  A record never straddles two chunks.  Address 0
+     * is never allocated and stands for null.  Records freed by
+     * delete are kept on one free list per height, linked through
+     * next[0], and reused by later inserts of the same height.
+     */
+
+    private static final int NULL = 0;
+
+    private static final int KEY = 0;
+    private static final int HEIGHT = 2;
+    private static final int NEXT = 3;
+
+    private static final int MAX_LEVEL = LevelGenerator.MAX_LEVEL;
+
+    private static final int CHUNK_SHIFT = 20;
+    private static final int CHUNK_WORDS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_WORDS - 1;
+
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+
+    private int chunkCount;
+
+    /**
+     * The next unallocated word.
+     */
+    private int top = 1;
+
+    private final int[] freeLists = new int[MAX_LEVEL + 1];
+
+    /**
+     * Words held by live records, including the head.
+     */
+    private long usedWords;
+
+    /**
+     * The head record, with a pointer on every possible level.
+     */
+    private int head;
+
+    /**
+     * The number of index levels in use.
+     */
+    private int level;
+
+    /**
+     * The size of the List (the number of elements it contains).
+     */
+    private int size;
+
+    /**
+     * Predecessors on each level, reused across calls.
+     */
+    private final int[] update = new int[MAX_LEVEL + 1];
+
+    final LevelGenerator levelGenerator;
+
+    public OffHeapSkipList() {
+        this(LevelGenerator.DEFAULT);
+    }
+
+    public OffHeapSkipList(LevelGenerator levelGenerator) {
+        if (levelGenerator == null)
+            throw new NullPointerException();
+        this.levelGenerator = levelGenerator;
+        this.head = allocate(MAX_LEVEL);
+    }
+
+    /* ---------------- Arena -------------- */
+
+    private ByteBuffer chunk(int addr) {
+        return chunks[addr >>> CHUNK_SHIFT];
+    }
+
+    private static int offset(int addr) {
+        return (addr & CHUNK_MASK) << 2;
+    }
+
+    private long key(int node) {
+        return chunk(node).getLong(offset(node + KEY));
+    }
+
+    private int height(int node) {
+        return chunk(node).getInt(offset(node + HEIGHT));
+    }
+
+    private int next(int node, int i) {
+        return chunk(node).getInt(offset(node + NEXT + i));
+    }
+
+    private void setNext(int node, int i, int val) {
+        chunk(node).putInt(offset(node + NEXT + i), val);
+    }
+
+    /**
+     * Allocates a record with the given number of index levels, its
+     * key and pointers left for the caller to fill in.
+     */
+    private int allocate(int height) {
+        int words = NEXT + height + 1;
+        int addr = freeLists[height];
+        if (addr != NULL) {
+            freeLists[height] = next(addr, 0);
+        } else {
+            addr = top;
+            if ((addr & CHUNK_MASK) + words > CHUNK_WORDS)  // skip to next chunk
+                addr = ((addr >>> CHUNK_SHIFT) + 1) << CHUNK_SHIFT;
+            if (addr < 0 || addr + words < 0)
+                throw new IllegalStateException("arena exhausted");
+            int c = addr >>> CHUNK_SHIFT;
+            if (c >= chunkCount) {
+                if (c >= chunks.length) {
+                    ByteBuffer[] grown = new ByteBuffer[chunks.length << 1];
+                    System.arraycopy(chunks, 0, grown, 0, chunkCount);
+                    chunks = grown;
+                }
+                chunks[c] = ByteBuffer.allocateDirect(CHUNK_WORDS << 2).order(ByteOrder.nativeOrder());
+                chunkCount = c + 1;
+            }
+            top = addr + words;
+        }
+        chunk(addr).putInt(offset(addr + HEIGHT), height);
+        usedWords += words;
+        return addr;
+    }
+
+    private void free(int node) {
+        int height = height(node);
+        setNext(node, 0, freeLists[height]);
+        freeLists[height] = node;
+        usedWords -= NEXT + height + 1;
+    }
+
+    /* ---------------- Traversal -------------- */
+
+    /**
+     * Fills update with the last node with key strictly less than
+     * the given key on every level in use, and returns the one on
+     * the base level.
+     */
+    private int findPredecessors(long key) {
+        int x = head;
+        for (int i = level; i >= 0; --i) {
+            for (int n; (n = next(x, i)) != NULL && key(n) < key; )
+                x = n;
+            update[i] = x;
+        }
+        return x;
+    }
+
+    /**
+     * Returns true if this list contains the given key.
+     * @param key the key
+     * @return true if present
+     */
+    public boolean contains(long key) {
+        int x = head;
+        for (int i = level; i >= 0; --i) {
+            for (int n; (n = next(x, i)) != NULL && key(n) < key; )
+                x = n;
+        }
+        int n = next(x, 0);
+        return n != NULL && key(n) == key;
+    }
+
+    /**
+     * Main insertion method.
+     * @param key the key
+     */
+    public void insert(long key) {
+        findPredecessors(key);
+        int height = levelGenerator.nextLevel();
+        if (height > level) { // grow by one level
+            height = ++level;
+            update[height] = head;
+        }
+        int z = allocate(height);
+        chunk(z).putLong(offset(z + KEY), key);
+        for (int i = 0; i <= height; ++i) {
+            setNext(z, i, next(update[i], i));
+            setNext(update[i], i, z);
+        }
+        size++;
+    }
+
+    /**
+     * Main deletion method. Locates node, unlinks it from every level
+     * it is on, frees its record, and possibly reduces the level.
+     * @param key the key
+     * @return true, or false if not found
+     */
+    public boolean delete(long key) {
+        int n = next(findPredecessors(key), 0);
+        if (n == NULL || key(n) != key)
+            return false;
+        for (int i = height(n); i >= 0; --i)
+            setNext(update[i], i, next(n, i));
+        free(n);
+        size--;
+        while (level > 0 && next(head, level) == NULL)
+            --level;
+        return true;
+    }
+
+    /* ---------------- Compaction -------------- */
+
+    /**
+     * Copies the list into a fresh arena and releases the old one.
+     * The levels take the ideal shape for the level generator of this
+     * list (see {@link LevelGenerator#idealLevel}), and the records
+     * are laid out in key order.
+     *
+     * Delete keeps freed records on free lists for reuse and never
+     * gives chunks back, so after mass deletions the arena reserves
+     * far more than the remaining elements use; this brings
+     * bytesReserved back to about bytesUsed.  The new arena is built
+     * while the old one is still allocated, so both are held at the
+     * peak.  The copy is made in a single pass and no other thread
+     * may use the list meanwhile, as this class is not thread-safe.
+     */
+    public void compact() {
+        ByteBuffer[] old = chunks;
+        int oldHead = head;
+        chunks = new ByteBuffer[4];
+        chunkCount = 0;
+        top = 1;
+        usedWords = 0;
+        Arrays.fill(freeLists, NULL);
+        head = allocate(MAX_LEVEL);
+        int[] last = update;
+        Arrays.fill(last, head);
+        int height = 0;
+        int position = 0;
+        for (int n = old[oldHead >>> CHUNK_SHIFT].getInt(offset(oldHead + NEXT)); n != NULL;
+             n = old[n >>> CHUNK_SHIFT].getInt(offset(n + NEXT))) {
+            int h = levelGenerator.idealLevel(++position);
+            int z = allocate(h);
+            chunk(z).putLong(offset(z + KEY), old[n >>> CHUNK_SHIFT].getLong(offset(n + KEY)));
+            for (int i = 0; i <= h; ++i) {
+                setNext(last[i], i, z);
+                last[i] = z;
+            }
+            height = Math.max(height, h);
+        }
+        for (int i = 0; i <= MAX_LEVEL; ++i)
+            setNext(last[i], i, NULL);
+        level = height;
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of off-heap bytes held by live records,
+     * including the head record.
+     *
+     * @return the bytes in use
+     */
+    public long bytesUsed() {
+        return usedWords << 2;
+    }
+
+    /**
+     * Returns the number of off-heap bytes reserved by the arena.
+     *
+     * @return the bytes reserved
+     */
+    public long bytesReserved() {
+        return (long) chunkCount * (CHUNK_WORDS << 2);
+    }
+
+    /**
+     * Returns the average number of off-heap bytes per element.
+     *
+     * @return bytes per element, or 0 if the list is empty
+     */
+    public double bytesPerEntry() {
+        return size == 0 ? 0 : (double) bytesUsed() / size;
+    }
+}
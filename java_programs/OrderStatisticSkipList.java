@@ -1,7 +1,10 @@
 package com.spicdt.party.admin.biz.publish.service;
 
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class OrderStatisticSkipList<V> {
 
@@ -17,6 +20,20 @@ public class OrderStatisticSkipList<V> {
 
     final Comparator<? super V> comparator;
 
+    final LevelGenerator levelGenerator;
+
+    /**
+     * Whether equal values share one node holding their multiplicity
+     * (counted-duplicate mode), rather than each getting a node.
+     */
+    final boolean countDuplicates;
+
+    /**
+     * Traversal counters and latencies, or null unless
+     * SkipListMetrics.ENABLED.
+     */
+    private final SkipListMetrics metrics = SkipListMetrics.ENABLED ? new SkipListMetrics() : null;
+
     private void initialize() {
         head = new HeadIndex<V>(new Node<V>(null, null),
                 null, null, 1);
@@ -33,10 +50,14 @@ public class OrderStatisticSkipList<V> {
      * Nodes hold values , and are singly linked in sorted
      * order. The list is
      * headed by a dummy node accessible as head.node.
+     *
+     * A node stands for count equal elements: always 1, unless the
+     * list counts duplicates.  Distances and ranks add up counts, not
+     * nodes.  A count of 0 marks a deleted node.
      */
     static final class Node<V> {
         final V value;
-        volatile boolean deleted;
+        volatile int count = 1;
         volatile Node<V> next;
 
         /**
@@ -48,7 +69,7 @@ public class OrderStatisticSkipList<V> {
         }
 
         void setDeleted() {
-            this.deleted = true;
+            this.count = 0;
         }
 
         void updateNext(Node<V> val) {
@@ -94,20 +115,24 @@ public class OrderStatisticSkipList<V> {
          *
          * @param succ    the expected current successor
          * @param newSucc the new successor
+         * @return the number of base nodes walked to measure the
+         *         distance of newSucc
          */
-        final void link(Index<V> succ, Index<V> newSucc) {
+        final int link(Index<V> succ, Index<V> newSucc) {
             newSucc.right = succ;
             updateRight(newSucc);
-            int i = 0;
+            int i = 0, walked = 0;
             Node<V> node = this.node;
             while (node != newSucc.node) {
                 node = node.next;
-                i++;
+                i += node.count;
+                walked++;
             }
             newSucc.distance = i;
             if (succ != null) {
                 succ.distance = succ.distance - i;
             }
+            return walked;
         }
 
         /**
@@ -162,16 +187,24 @@ public class OrderStatisticSkipList<V> {
     private Node<V> findPredecessor(Object value, Comparator<? super V> cmp) {
         if (value == null)
             throw new NullPointerException(); // don't postpone errors
-        for (Index<V> q = head, r = q.right, d; ; ) {
+        HeadIndex<V> h = head;
+        int j = h.level, steps = 0;
+        for (Index<V> q = h, r = q.right, d; ; ) {
             if (r != null) {
                 Node<V> n = r.node;
                 V k = n.value;
                 if (cpr(cmp, value, k) > 0) {
                     q = r;
                     r = r.right;
+                    if (SkipListMetrics.ENABLED)
+                        ++steps;
                     continue;
                 }
             }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(j--, steps);
+                steps = 0;
+            }
             if ((d = q.down) == null)
                 return q.node;
             q = d;
@@ -186,13 +219,24 @@ public class OrderStatisticSkipList<V> {
      * @return
      */
     public int rank(Object value) {
+        if (!SkipListMetrics.ENABLED)
+            return doRank(value);
+        long start = System.nanoTime();
+        int rank = doRank(value);
+        metrics.latency(SkipListMetrics.Op.QUERY, System.nanoTime() - start);
+        return rank;
+    }
+
+    private int doRank(Object value) {
         if (value == null)
             throw new NullPointerException(); // don't postpone errors
         Comparator<? super V> cmp = comparator;
 
         Node<V> b;
         int rank = 0;
-        for (Index<V> q = head, r = q.right, d; ; ) {
+        HeadIndex<V> h = head;
+        int j = h.level, steps = 0;
+        for (Index<V> q = h, r = q.right, d; ; ) {
             if (r != null) {
                 Node<V> n = r.node;
                 V k = n.value;
@@ -200,9 +244,15 @@ public class OrderStatisticSkipList<V> {
                     rank = rank + r.distance;
                     q = r;
                     r = r.right;
+                    if (SkipListMetrics.ENABLED)
+                        ++steps;
                     continue;
                 }
             }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(j--, steps);
+                steps = 0;
+            }
             if ((d = q.down) == null) {
                 b = q.node;
                 break;
@@ -210,19 +260,27 @@ public class OrderStatisticSkipList<V> {
             q = d;
             r = d.right;
         }
+        int walk = 0;
         for (Node<V> n = b.next; ; ) {
             int c;
             if (n == null)
                 break;
             Node<V> f = n.next;
-            if ((c = cpr(cmp, value, n.value)) == 0)
+            if ((c = cpr(cmp, value, n.value)) == 0) {
+                if (SkipListMetrics.ENABLED)
+                    metrics.baseWalk(walk);
                 return ++rank;
+            }
             if (c < 0)
                 break;
+            rank += n.count;
             b = n;
             n = f;
-            rank++;
+            if (SkipListMetrics.ENABLED)
+                ++walk;
         }
+        if (SkipListMetrics.ENABLED)
+            metrics.baseWalk(walk);
         return -1;
     }
 
@@ -233,10 +291,21 @@ public class OrderStatisticSkipList<V> {
      * @return the element with the given rank, or null if the rank is out of upper bound
      */
     public V select(int rank) {
+        if (!SkipListMetrics.ENABLED)
+            return doSelect(rank);
+        long start = System.nanoTime();
+        V value = doSelect(rank);
+        metrics.latency(SkipListMetrics.Op.QUERY, System.nanoTime() - start);
+        return value;
+    }
+
+    private V doSelect(int rank) {
         if (rank <= 0)
             throw new IllegalArgumentException(); // don't postpone errors
         int i = rank;
-        for (Index<V> q = head, r = q.right, d; ; ) {
+        HeadIndex<V> h = head;
+        int j = h.level, steps = 0;
+        for (Index<V> q = h, r = q.right, d; ; ) {
             if (r != null) {
                 Node<V> n = r.node;
                 V k = n.value;
@@ -245,17 +314,30 @@ public class OrderStatisticSkipList<V> {
                     i = i - interval;
                     q = r;
                     r = r.right;
+                    if (SkipListMetrics.ENABLED)
+                        ++steps;
                     continue;
                 } else if (interval == i) {
+                    if (SkipListMetrics.ENABLED)
+                        metrics.steps(j, steps);
                     return k;
                 }
             }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(j--, steps);
+                steps = 0;
+            }
             if ((d = q.down) == null) {
-                Node<V> node = q.node;
-                while (i > 0 && node != null) {
-                    i--;
+                Node<V> node = q.node.next;
+                int walk = 0;
+                while (node != null && i > node.count) {
+                    i -= node.count;
                     node = node.next;
+                    if (SkipListMetrics.ENABLED)
+                        ++walk;
                 }
+                if (SkipListMetrics.ENABLED)
+                    metrics.baseWalk(walk);
                 return node == null ? null : node.value;
             }
             q = d;
@@ -283,28 +365,194 @@ public class OrderStatisticSkipList<V> {
         if (down != null) {
             return select(down, rank);
         } else {
-            Node<V> node = index.node;
+            Node<V> node = index.node.next;
             int i = rank;
-            while (node != null && i > 0) {
+            while (node != null && i > node.count) {
+                i -= node.count;
                 node = node.next;
-                i--;
             }
             return node == null ? null : node.value;
         }
     }
 
     /**
-     * Main insertion method.  Adds element if not present.
+     * The search path of the last rank searched by findNode: the
+     * predecessor index found on each level and the rank of its node,
+     * the head they were found under, and the base node found with its
+     * first rank.  Local to one percentiles or selectRange call.
+     */
+    static final class Finger<V> {
+        HeadIndex<V> head;
+        @SuppressWarnings("unchecked")
+        final Index<V>[] preds = (Index<V>[]) new Index<?>[LevelGenerator.MAX_LEVEL + 2];
+        final int[] ranks = new int[LevelGenerator.MAX_LEVEL + 2];
+        Node<V> node;
+        int nodeRank;
+    }
+
+    /**
+     * Returns the base node holding the element of the given rank, or
+     * null if the rank is beyond the size, recording the search path
+     * in f.  If f holds the path of a previous call for a rank no
+     * greater, the finger is climbed from the bottom until it reaches
+     * a level whose successor is not before rank, and the search
+     * descends from there; at the base level, it goes on from the node
+     * found last if that is past the level 1 predecessor.  Ascending
+     * ranks thus cost time logarithmic in the distance between them
+     * rather than in the size of the list.
+     *
+     * @param rank the rank, at least 1
+     * @param f the finger
+     * @return the node, whose first rank is left in f.nodeRank
+     */
+    private Node<V> findNode(int rank, Finger<V> f) {
+        HeadIndex<V> h = head;
+        Index<V> q = h;
+        int j = h.level, base = 0, steps = 0;
+        if (f.head == h) {
+            for (int i = 1; i <= j; ++i) {
+                Index<V> p = f.preds[i], r = p.right;
+                if (r == null || f.ranks[i] + r.distance >= rank) {
+                    q = p;
+                    base = f.ranks[i];
+                    j = i;
+                    break;
+                }
+            }
+        }
+        f.head = h;
+        for (Index<V> r = q.right, d; ; ) {
+            if (r != null && base + r.distance < rank) {
+                base = base + r.distance;
+                q = r;
+                r = r.right;
+                if (SkipListMetrics.ENABLED)
+                    ++steps;
+                continue;
+            }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(j, steps);
+                steps = 0;
+            }
+            f.preds[j] = q;
+            f.ranks[j] = base;
+            if ((d = q.down) == null)
+                break;
+            q = d;
+            r = d.right;
+            --j;
+        }
+        Node<V> n;
+        int start;
+        if (f.node != null && f.nodeRank > base && f.nodeRank <= rank) {
+            n = f.node;
+            start = f.nodeRank;
+        } else {
+            n = q.node.next;
+            start = base + 1;
+        }
+        while (n != null && start + n.count <= rank) {
+            start += n.count;
+            n = n.next;
+            if (SkipListMetrics.ENABLED)
+                ++steps;
+        }
+        if (SkipListMetrics.ENABLED)
+            metrics.baseWalk(steps);
+        f.node = n;
+        f.nodeRank = start;
+        return n;
+    }
+
+    /**
+     * Returns the elements at the given percentiles, by the nearest
+     * rank method: the element of rank ceil(p / 100 * size), or the
+     * first for p = 0.  The ranks are searched in ascending order
+     * along one {@link Finger}, so after the first descent each one
+     * only climbs as far up the path as the distance from the last
+     * needs, instead of descending from the head.
+     *
+     * @param percentiles the percentiles, each between 0 and 100, in
+     *        any order
+     * @return the elements, in the order of the percentiles, all null
+     *         if the list is empty
+     * @throws IllegalArgumentException if a percentile is out of range
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> percentiles(double... percentiles) {
+        int n = percentiles.length, size = this.size;
+        long[] order = new long[n];
+        for (int i = 0; i < n; ++i) {
+            double p = percentiles[i];
+            if (!(p >= 0 && p <= 100))
+                throw new IllegalArgumentException("percentile " + p);
+            long rank = Math.min(size, Math.max(1, (long) Math.ceil(p * size / 100)));
+            order[i] = rank << 32 | i;
+        }
+        Arrays.sort(order);
+        Object[] values = new Object[n];
+        if (size > 0) {
+            Finger<V> f = new Finger<>();
+            for (long o : order) {
+                Node<V> node = findNode((int) (o >>> 32), f);
+                values[(int) o] = (node == null) ? null : node.value;
+            }
+        }
+        return (List<V>) Arrays.asList(values);
+    }
+
+    /**
+     * Performs the given action on each element with rank from fromRank
+     * to toRank inclusive, in order.  One descent finds fromRank; the
+     * rest are streamed from the base level, so this takes O(log n +
+     * toRank - fromRank).  Ranks beyond the size are skipped.
+     *
+     * @param fromRank the first rank, at least 1
+     * @param toRank the last rank, at least fromRank
+     * @param action the action
+     * @throws IllegalArgumentException if the ranks are out of range
+     */
+    public void selectRange(int fromRank, int toRank, Consumer<? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        if (fromRank <= 0 || toRank < fromRank)
+            throw new IllegalArgumentException(); // don't postpone errors
+        Finger<V> f = new Finger<>();
+        Node<V> n = findNode(fromRank, f);
+        int i = fromRank;
+        for (int last = f.nodeRank - 1; n != null && i <= toRank; n = n.next) {
+            last += n.count;
+            for (; i <= last && i <= toRank; ++i)
+                action.accept(n.value);
+        }
+    }
+
+    /**
+     * Main insertion method.  Adds element even if an equal one is
+     * present: before it, as a node of its own, or, if the list counts
+     * duplicates, by incrementing the count of its node.
      * @param value the value
      */
     public void insert(V value) {
+        if (!SkipListMetrics.ENABLED) {
+            doInsert(value);
+            return;
+        }
+        long start = System.nanoTime();
+        doInsert(value);
+        metrics.latency(SkipListMetrics.Op.INSERT, System.nanoTime() - start);
+    }
+
+    private void doInsert(V value) {
         Node<V> z;             // added node
         if (value == null)
             throw new NullPointerException();
         Comparator<? super V> cmp = comparator;
         Node<V> b;
         int rank = 0;
-        for (Index<V> q = head, r = q.right, d; ; ) {
+        HeadIndex<V> top = head;
+        int l = top.level, steps = 0;
+        for (Index<V> q = top, r = q.right, d; ; ) {
             if (r != null) {
                 Node<V> n = r.node;
                 V k = n.value;
@@ -312,11 +560,17 @@ public class OrderStatisticSkipList<V> {
                     rank = rank + r.distance;
                     q = r;
                     r = r.right;
+                    if (SkipListMetrics.ENABLED)
+                        ++steps;
                     continue;
                 } else {
                     r.distance++;
                 }
             }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(l--, steps);
+                steps = 0;
+            }
             if ((d = q.down) == null) {
                 b = q.node;
                 break;
@@ -324,18 +578,32 @@ public class OrderStatisticSkipList<V> {
             q = d;
             r = d.right;
         }
+        int walk = 0;
         for (Node<V> n = b.next; ; ) {
             if (n != null) {
                 Node<V> f = n.next;
-                if (cpr(cmp, value, n.value) > 0) {
+                int c = cpr(cmp, value, n.value);
+                if (c > 0) {
+                    rank += n.count;
                     b = n;
                     n = f;
-                    rank++;
+                    if (SkipListMetrics.ENABLED)
+                        ++walk;
                     continue;
                 }
+                if (c == 0 && countDuplicates) {
+                    // the spans over n were incremented on the way down
+                    if (SkipListMetrics.ENABLED)
+                        metrics.baseWalk(walk);
+                    n.count++;
+                    size++;
+                    return;
+                }
                 // else c <= 0; fall through
             }
 
+            if (SkipListMetrics.ENABLED)
+                metrics.baseWalk(walk);
             z = new Node<>(value, n);
             b.updateNext(z);
             size++;
@@ -343,12 +611,9 @@ public class OrderStatisticSkipList<V> {
             break;
         }
 
-        int rnd = ThreadLocalRandom.current().nextInt();
-//        if ((rnd & 0x80000001) == 0) { // test highest and lowest bits
-        if ((rnd & 0x00000001) == 0) { // test highest and lowest bits
-            int level = 1, max;
-            while (((rnd >>>= 1) & 1) != 0)
-                ++level;
+        int level = levelGenerator.nextLevel();
+        if (level > 0) {
+            int max;
             Index<V> idx = null;
             HeadIndex<V> h = head;
             if (level <= (max = h.level)) {
@@ -385,7 +650,9 @@ public class OrderStatisticSkipList<V> {
                 }
 
                 if (j == insertionLevel) {
-                    q.link(r, t);
+                    int walked = q.link(r, t);
+                    if (SkipListMetrics.ENABLED)
+                        metrics.link(walked);
                     if (--insertionLevel == 0)
                         break;
                 }
@@ -400,7 +667,9 @@ public class OrderStatisticSkipList<V> {
 
     /**
      * Main deletion method. Locates node, unlinks predecessor, removes associated index
-     * nodes, and possibly reduces head index level.
+     * nodes, and possibly reduces head index level.  If the list
+     * counts duplicates and the node stands for more than one element,
+     * its count is decremented instead, and it stays linked.
      *
      * Index nodes are cleared out.
      * which unlinks indexes to deleted nodes found along path to value,
@@ -415,9 +684,19 @@ public class OrderStatisticSkipList<V> {
      * @return true, or false if not found
      */
     public final boolean delete(Object value) {
+        if (!SkipListMetrics.ENABLED)
+            return doDelete(value);
+        long start = System.nanoTime();
+        boolean deleted = doDelete(value);
+        metrics.latency(SkipListMetrics.Op.DELETE, System.nanoTime() - start);
+        return deleted;
+    }
+
+    private boolean doDelete(Object value) {
         if (value == null)
             throw new NullPointerException();
         Comparator<? super V> cmp = comparator;
+        int walk = 0;
         for (Node<V> b = findPredecessor(value, cmp), n = b.next; ; ) {
             int c;
             if (n == null)
@@ -428,16 +707,25 @@ public class OrderStatisticSkipList<V> {
             if (c > 0) {
                 b = n;
                 n = f;
+                if (SkipListMetrics.ENABLED)
+                    ++walk;
                 continue;
             }
-            n.setDeleted();
-            b.updateNext(f);
+            if (SkipListMetrics.ENABLED)
+                metrics.baseWalk(walk);
+            int count = n.count;
+            if (count > 1) {
+                n.count = count - 1;
+            } else {
+                n.setDeleted();
+                b.updateNext(f);
+            }
             --size;
             for (Index<V> q = head, r = q.right, d; ; ) {
                 if (r != null) {
                     Node<V> m = r.node;
                     V k = m.value;
-                    if (m.deleted) {
+                    if (m.count == 0) {
                         q.unlink(r);
                         r = q.right;         // reread r
                         continue;
@@ -459,6 +747,8 @@ public class OrderStatisticSkipList<V> {
                 tryReduceLevel();
             return true;
         }
+        if (SkipListMetrics.ENABLED)
+            metrics.baseWalk(walk);
         return false;
     }
 
@@ -489,6 +779,53 @@ public class OrderStatisticSkipList<V> {
             updateHead(d);
     }
 
+    /**
+     * Returns the ranks of the first and the last element equal to the
+     * given value, in O(log n) however many there are.  Each bound
+     * takes one descent: the elements less than value, and those no
+     * greater, are counted by adding up distances, so a run of equal
+     * elements is never walked past but at the base level, where it
+     * is one node if the list counts duplicates.
+     *
+     * @param value the value
+     * @return {first rank, last rank}, or null if not found
+     */
+    public int[] rankRange(Object value) {
+        if (value == null)
+            throw new NullPointerException(); // don't postpone errors
+        int below = countBelow(value, false);
+        int last = countBelow(value, true);
+        return (last > below) ? new int[] {below + 1, last} : null;
+    }
+
+    /**
+     * Returns the number of elements less than the given value, or no
+     * greater than it if inclusive.
+     */
+    private int countBelow(Object value, boolean inclusive) {
+        Comparator<? super V> cmp = comparator;
+        int bound = inclusive ? 0 : 1;  // least cpr(value, k) that passes k
+        int rank = 0;
+        Node<V> b;
+        for (Index<V> q = head, r = q.right, d; ; ) {
+            if (r != null && cpr(cmp, value, r.node.value) >= bound) {
+                rank = rank + r.distance;
+                q = r;
+                r = r.right;
+                continue;
+            }
+            if ((d = q.down) == null) {
+                b = q.node;
+                break;
+            }
+            q = d;
+            r = d.right;
+        }
+        for (Node<V> n = b.next; n != null && cpr(cmp, value, n.value) >= bound; n = n.next)
+            rank += n.count;
+        return rank;
+    }
+
     /**
      * Returns the number of elements in this list.
      *
@@ -498,13 +835,297 @@ public class OrderStatisticSkipList<V> {
         return size;
     }
 
+    /* ---------------- Eviction -------------- */
+
+    /**
+     * Removes every element less than the given value, as when the
+     * oldest entries of a time window expire.  Counts them with one
+     * descent, then cuts them off as {@link #evictFirst} does.
+     *
+     * @param value the least value to keep
+     * @return the number of elements removed
+     */
+    public int evictBefore(Object value) {
+        if (value == null)
+            throw new NullPointerException();
+        int n = countBelow(value, false);
+        if (n > 0)
+            evict(n);
+        return n;
+    }
+
+    /**
+     * Removes the first n elements, or all of them if there are fewer,
+     * in O(log n + levels) rather than one delete each.  The prefix is
+     * cut off rather than unlinked node by node: a single descent
+     * finds the first index past it on each level, which becomes the
+     * successor of the head on that level, its distance reduced by n.
+     * The base level is cut the same way; if the list counts
+     * duplicates, the count of a node straddling the cut is reduced.
+     * Top levels left empty are then dropped.  The nodes and indexes
+     * cut off are left to the collector.
+     *
+     * @param n the number of elements to remove
+     * @return the number of elements removed
+     * @throws IllegalArgumentException if n is negative
+     */
+    public int evictFirst(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException();
+        n = Math.min(n, size);
+        if (n > 0)
+            evict(n);
+        return n;
+    }
+
+    private void evict(int n) {
+        HeadIndex<V> h = head;
+        Index<V> q = h, hj = h;
+        int j = h.level, base = 0, steps = 0;
+        for (Index<V> r = q.right, d; ; ) {
+            while (r != null && base + r.distance <= n) {
+                base = base + r.distance;
+                q = r;
+                r = r.right;
+                if (SkipListMetrics.ENABLED)
+                    ++steps;
+            }
+            hj.updateRight(r);
+            if (r != null)
+                r.distance = base + r.distance - n;
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(j--, steps);
+                steps = 0;
+            }
+            if ((d = q.down) == null)
+                break;
+            q = d;
+            r = d.right;
+            hj = hj.down;
+        }
+        Node<V> f = q.node.next;
+        while (f != null && base + f.count <= n) {
+            base += f.count;
+            f = f.next;
+            if (SkipListMetrics.ENABLED)
+                ++steps;
+        }
+        if (SkipListMetrics.ENABLED)
+            metrics.baseWalk(steps);
+        if (f != null && base < n)
+            f.count = f.count - (n - base);
+        h.node.updateNext(f);
+        size -= n;
+        while (h.level > 1 && h.right == null)
+            h = (HeadIndex<V>) h.down;
+        updateHead(h);
+    }
+
+    /* ---------------- Statistics -------------- */
+
+    /**
+     * Returns a snapshot of the shape of this list and of the counters
+     * recorded for it (see {@link SkipListMetrics}).  Each index level
+     * is walked to count its indexes, so this takes time linear in the
+     * number of indexes, or, if the list counts duplicates, in the
+     * number of nodes, which are counted too.
+     *
+     * @return the snapshot
+     */
+    public SkipListStats stats() {
+        HeadIndex<V> h = head;
+        long[] counts = new long[h.level + 1];
+        int j = h.level;
+        for (Index<V> q = h; q != null; q = q.down, --j) {
+            long c = 0;
+            for (Index<V> r = q.right; r != null; r = r.right)
+                ++c;
+            counts[j] = c;
+        }
+        if (!countDuplicates)
+            return new SkipListStats(size, counts, metrics);
+        long nodes = 0;
+        for (Node<V> n = h.node.next; n != null; n = n.next)
+            ++nodes;
+        return new SkipListStats(size, nodes, counts, metrics);
+    }
+
+    /* ---------------- Compaction -------------- */
+
+    /**
+     * Rebuilds the index levels over the current values in the ideal
+     * shape for the level generator of this list (see
+     * {@link LevelGenerator#idealLevel}), with distances recomputed from
+     * positions, and drops the old ones.  Use after mass deletions,
+     * which leave more levels and sparser towers than the remaining
+     * values need.
+     *
+     * The new levels are built aside and published with a single
+     * write of head, so a reader running concurrently (with no
+     * writer, as this class is not thread-safe) sees either the old
+     * levels or the new ones, never a mix.
+     */
+    public void compact() {
+        updateHead(buildIndex());
+    }
+
+    /**
+     * Builds index levels over the current base nodes, leaving the
+     * published ones untouched.
+     */
+    HeadIndex<V> buildIndex() {
+        Node<V> base = head.node;
+        IndexBuilder<V> builder = new IndexBuilder<>(base, levelGenerator);
+        for (Node<V> n = base.next; n != null; n = n.next)
+            builder.add(n);
+        return builder.head();
+    }
+
+    /**
+     * Publishes levels returned by buildIndex.  The caller must make
+     * sure the list has not been modified since they were built.
+     */
+    void publishIndex(HeadIndex<V> h) {
+        updateHead(h);
+    }
+
+    /* ---------------- Bulk loading -------------- */
+
+    /**
+     * Creates a list holding the given values, which must be in
+     * ascending order (equal values are allowed), in a single O(n)
+     * pass instead of n insertions.
+     *
+     * @param sorted the values in ascending order
+     * @param <V> the type of values
+     * @return the new list
+     * @throws IllegalArgumentException if the values are out of order
+     */
+    public static <V> OrderStatisticSkipList<V> bulkLoad(Iterator<? extends V> sorted) {
+        return bulkLoad(sorted, null);
+    }
+
+    /**
+     * Same as {@link #bulkLoad(Iterator)}, ordering the values with
+     * the given comparator.
+     *
+     * @param sorted the values in ascending order
+     * @param comparator the comparator, or null for natural ordering
+     * @param <V> the type of values
+     * @return the new list
+     * @throws IllegalArgumentException if the values are out of order
+     */
+    public static <V> OrderStatisticSkipList<V> bulkLoad(Iterator<? extends V> sorted,
+                                                         Comparator<? super V> comparator) {
+        OrderStatisticSkipList<V> list = new OrderStatisticSkipList<>(comparator);
+        Node<V> b = list.head.node;
+        IndexBuilder<V> builder = new IndexBuilder<>(b, list.levelGenerator);
+        while (sorted.hasNext()) {
+            V value = sorted.next();
+            if (value == null)
+                throw new NullPointerException();
+            if (b.value != null && cpr(comparator, b.value, value) > 0)
+                throw new IllegalArgumentException("values not in ascending order");
+            Node<V> z = new Node<>(value, null);
+            b.next = z;
+            b = z;
+            builder.add(z);
+            list.size++;
+        }
+        list.head = builder.head();
+        return list;
+    }
+
+    /**
+     * Same as {@link #bulkLoad(Iterator, Comparator)}, from an array.
+     *
+     * @param sorted the values in ascending order
+     * @param comparator the comparator, or null for natural ordering
+     * @param <V> the type of values
+     * @return the new list
+     * @throws IllegalArgumentException if the values are out of order
+     */
+    public static <V> OrderStatisticSkipList<V> bulkLoad(V[] sorted, Comparator<? super V> comparator) {
+        return bulkLoad(Arrays.asList(sorted).iterator(), comparator);
+    }
+
+    /**
+     * Builds the index levels over base nodes handed to it in order,
+     * bottom up, in a single pass.  The node at position i (counting
+     * from 1) gets {@link LevelGenerator#idealLevel} index levels.  Each
+     * index is appended after the last index built on its level, and
+     * its distance is the difference of their ranks, which are the
+     * positions unless nodes count duplicates.
+     */
+    static final class IndexBuilder<V> {
+        private final LevelGenerator levelGenerator;
+        private HeadIndex<V> head;
+        @SuppressWarnings("unchecked")
+        private final Index<V>[] last = (Index<V>[]) new Index<?>[LevelGenerator.MAX_LEVEL + 1];
+        private final int[] lastRank = new int[LevelGenerator.MAX_LEVEL + 1];
+        private int count;
+        private int rank;
+
+        IndexBuilder(Node<V> base, LevelGenerator levelGenerator) {
+            this.levelGenerator = levelGenerator;
+            last[1] = head = new HeadIndex<>(base, null, null, 1);
+        }
+
+        void add(Node<V> n) {
+            int level = levelGenerator.idealLevel(++count);
+            rank += n.count;
+            Index<V> idx = null;
+            for (int i = 1; i <= level; ++i) {
+                idx = new Index<>(n, idx, null);
+                idx.distance = rank - lastRank[i];
+                if (i > head.level)
+                    last[i] = head = new HeadIndex<>(head.node, head, null, i);
+                last[i].right = idx;
+                last[i] = idx;
+                lastRank[i] = rank;
+            }
+        }
+
+        HeadIndex<V> head() {
+            return head;
+        }
+    }
+
     public OrderStatisticSkipList() {
-        this.comparator = null;
-        initialize();
+        this(null, LevelGenerator.DEFAULT);
     }
 
     public OrderStatisticSkipList(Comparator<? super V> comparator) {
+        this(comparator, LevelGenerator.DEFAULT);
+    }
+
+    public OrderStatisticSkipList(LevelGenerator levelGenerator) {
+        this(null, levelGenerator);
+    }
+
+    public OrderStatisticSkipList(Comparator<? super V> comparator, LevelGenerator levelGenerator) {
+        this(comparator, levelGenerator, false);
+    }
+
+    /**
+     * Constructs a new, empty list that, if countDuplicates, keeps one
+     * node per distinct value holding the number of equal elements
+     * inserted.  Ranks, select and rankRange are the same as without;
+     * only the nodes, and the base-level walks over runs of equal
+     * elements, go.  rank returns the first rank of a run, and delete
+     * removes one element of it.
+     *
+     * @param comparator the comparator, or null for natural ordering
+     * @param levelGenerator the level generator
+     * @param countDuplicates whether equal values share a node
+     */
+    public OrderStatisticSkipList(Comparator<? super V> comparator, LevelGenerator levelGenerator,
+                                  boolean countDuplicates) {
+        if (levelGenerator == null)
+            throw new NullPointerException();
         this.comparator = comparator;
+        this.levelGenerator = levelGenerator;
+        this.countDuplicates = countDuplicates;
         initialize();
     }
 }
@@ -0,0 +1,805 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link RangeQuerySkipList} of long keys and double values kept
+ * in a memory-mapped file, so that reopening it after a restart maps
+ * the file and is queryable at once instead of rebuilding the list.
+ *
+ * The directory holds two files:
+ *
+ *   data  a checkpoint image: header, base nodes, index towers and
+ *         their spanCount/spanSum/spanMin/spanMax, laid out exactly
+ *         as they are used in memory.
+ *   wal   a redo log of the insertions and deletions made since that
+ *         checkpoint.
+ *
+ * The image is mapped copy-on-write (MapMode.PRIVATE), so changes are
+ * made in memory only and the data file on disk is never torn.  Each
+ * change is also appended to the log; it is durable once
+ * {@link #sync()} returns.  {@link #checkpoint()} writes the current
+ * image to a temporary file and atomically renames it over the data
+ * file, then empties the log.  Opening maps the data file and replays
+ * the log records newer than the image, stopping at the first torn
+ * or corrupt record.  The image grows by being rewritten into a
+ * larger file; a single image is limited to 2GB.
+ *
+ * This class is not thread-safe.
+ */
+public class PersistentRangeQuerySkipList implements Closeable {
+
+    /* ---------------- Image layout -------------- */
+
+    /*
+     * Header:
+     *   0   magic (long)        8   version (int)   12  level (int)
+     *   16  size (int)          20  top (int)       24  seq (long)
+     *   32  free list heads, one int per height
+     *
+     * Records, at byte offsets (0 stands for null):
+     *   0   key (long)          8   value (double)
+     *   16  height h (int)      20  next on the base level (int)
+     *   24  h index levels of 32 bytes each:
+     *       0 right (int)  4 spanCount (int)  8 spanSum  16 spanMin
+     *       24 spanMax (doubles)
+     *
+     * Spans mean the same as in RangeQuerySkipList: the index of node
+     * r on level i summarizes the nodes after its predecessor on that
+     * level, up to and including r.
+     */
+
+    private static final long MAGIC = 0x52515350534b4950L;
+    private static final int VERSION = 1;
+
+    private static final int MAGIC_OFF = 0;
+    private static final int VERSION_OFF = 8;
+    private static final int LEVEL_OFF = 12;
+    private static final int SIZE_OFF = 16;
+    private static final int TOP_OFF = 20;
+    private static final int SEQ_OFF = 24;
+    private static final int FREE_OFF = 32;
+    private static final int HEADER_SIZE = 256;
+
+    private static final int NULL = 0;
+
+    private static final int KEY = 0;
+    private static final int VALUE = 8;
+    private static final int HEIGHT = 16;
+    private static final int NEXT = 20;
+    private static final int LEVELS = 24;
+    private static final int LEVEL_SIZE = 32;
+
+    private static final int RIGHT = 0;
+    private static final int COUNT = 4;
+    private static final int SUM = 8;
+    private static final int MIN = 16;
+    private static final int MAX = 24;
+
+    private static final int MAX_LEVEL = LevelGenerator.MAX_LEVEL;
+
+    private static final int INITIAL_CAPACITY = 1 << 20;
+
+    /* ---------------- Log layout -------------- */
+
+    /*
+     * Each log record is op (byte), seq (long), key (long),
+     * value (double), followed by the CRC32 of those 25 bytes.
+     */
+
+    private static final byte OP_INSERT = 1;
+    private static final byte OP_DELETE = 2;
+    private static final int LOG_RECORD = 29;
+
+    private final Path dir;
+    private final Path dataFile;
+    private final Path walFile;
+
+    private FileChannel wal;
+    private final ByteBuffer walBuffer =
+            ByteBuffer.allocateDirect(LOG_RECORD << 11).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+
+    private MappedByteBuffer image;
+
+    private int capacity;
+
+    private final int head = HEADER_SIZE;
+
+    private int level;
+
+    private int size;
+
+    private int top;
+
+    /**
+     * Sequence number of the last change applied.
+     */
+    private long seq;
+
+    private final int[] freeLists = new int[MAX_LEVEL + 1];
+
+    /**
+     * Predecessors on each level, reused across calls.
+     */
+    private final int[] update = new int[MAX_LEVEL + 1];
+
+    final LevelGenerator levelGenerator;
+
+    /**
+     * Opens the list stored in dir, creating it if dir holds none.
+     *
+     * @param dir the directory
+     * @throws IOException if an I/O error occurs or the image is not valid
+     */
+    public PersistentRangeQuerySkipList(Path dir) throws IOException {
+        this(dir, LevelGenerator.DEFAULT);
+    }
+
+    public PersistentRangeQuerySkipList(Path dir, LevelGenerator levelGenerator) throws IOException {
+        if (levelGenerator == null)
+            throw new NullPointerException();
+        this.levelGenerator = levelGenerator;
+        this.dir = Files.createDirectories(dir);
+        this.dataFile = dir.resolve("data");
+        this.walFile = dir.resolve("wal");
+        if (Files.exists(dataFile)) {
+            map(Files.size(dataFile));
+            if (image.getLong(MAGIC_OFF) != MAGIC || image.getInt(VERSION_OFF) != VERSION)
+                throw new IOException("not a range query skip list image: " + dataFile);
+            level = image.getInt(LEVEL_OFF);
+            size = image.getInt(SIZE_OFF);
+            top = image.getInt(TOP_OFF);
+            seq = image.getLong(SEQ_OFF);
+            for (int i = 0; i <= MAX_LEVEL; ++i)
+                freeLists[i] = image.getInt(FREE_OFF + (i << 2));
+        } else {
+            writeImage(INITIAL_CAPACITY, true);
+        }
+        this.wal = FileChannel.open(walFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay();
+    }
+
+    /* ---------------- Image -------------- */
+
+    private void map(long length) throws IOException {
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("image too large: " + length);
+        // a private mapping needs a writable channel, though the file is never written through it
+        try (FileChannel ch = FileChannel.open(dataFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            image = ch.map(FileChannel.MapMode.PRIVATE, 0, length);
+        }
+        image.order(ByteOrder.LITTLE_ENDIAN);
+        capacity = (int) length;
+    }
+
+    /**
+     * Writes the current state as a new image of the given capacity,
+     * atomically replaces the data file with it, and maps it.  If
+     * fresh, the image is initialized to an empty list first.
+     */
+    private void writeImage(int newCapacity, boolean fresh) throws IOException {
+        Path tmp = dir.resolve("data.tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer src;
+            if (fresh) {
+                src = ByteBuffer.allocate(HEADER_SIZE + LEVELS + MAX_LEVEL * LEVEL_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                src.putLong(MAGIC_OFF, MAGIC);
+                src.putInt(VERSION_OFF, VERSION);
+                src.putInt(head + HEIGHT, MAX_LEVEL);
+                top = src.capacity();
+                src.putInt(TOP_OFF, top);
+            } else {
+                writeHeader();
+                src = image.duplicate();
+                src.limit(top);
+            }
+            src.position(0);
+            while (src.hasRemaining())
+                ch.write(src);
+            if (ch.size() < newCapacity) {
+                ch.write(ByteBuffer.allocate(1), newCapacity - 1);
+            }
+            ch.force(true);
+        }
+        install(tmp, newCapacity);
+    }
+
+    /**
+     * Atomically replaces the data file with tmp, which must already
+     * be forced to disk, and maps it.
+     */
+    private void install(Path tmp, int newCapacity) throws IOException {
+        Files.move(tmp, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+            d.force(true);                  // make the rename durable
+        } catch (IOException ignored) {
+            // directories cannot be opened on this platform
+        }
+        map(newCapacity);
+    }
+
+    private void writeHeader() {
+        image.putInt(LEVEL_OFF, level);
+        image.putInt(SIZE_OFF, size);
+        image.putInt(TOP_OFF, top);
+        image.putLong(SEQ_OFF, seq);
+        for (int i = 0; i <= MAX_LEVEL; ++i)
+            image.putInt(FREE_OFF + (i << 2), freeLists[i]);
+    }
+
+    /**
+     * Writes a checkpoint image of the list and empties the log.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void checkpoint() throws IOException {
+        flushLog();
+        writeImage(capacity, false);
+        wal.truncate(0);
+        wal.force(true);
+    }
+
+    /**
+     * Writes a checkpoint image in which the records are rebuilt in
+     * key order, in the ideal shape for the level generator of this
+     * list (see {@link LevelGenerator#idealLevel}), with every span
+     * computed in one left-to-right pass; then empties the log.
+     *
+     * Delete keeps freed records on free lists and the image never
+     * shrinks, so after mass deletions the image is mostly holes, and
+     * the levels are taller than the remaining elements need.  The
+     * compacted image holds no free records, and its capacity is
+     * twice what the records take (at least the initial capacity), so
+     * the data file shrinks with it.  Like checkpoint, the new image
+     * is written to a temporary file and renamed over the data file,
+     * so a crash leaves either image intact.
+     *
+     * @throws IOException if an I/O error occurs, or the compacted
+     *         image would exceed 2GB
+     */
+    public void compact() throws IOException {
+        flushLog();
+        long bytes = HEADER_SIZE + LEVELS + MAX_LEVEL * LEVEL_SIZE;
+        for (int i = 1; i <= size; ++i)
+            bytes += LEVELS + levelGenerator.idealLevel(i) * LEVEL_SIZE;
+        if (bytes > Integer.MAX_VALUE)
+            throw new IOException("image too large: " + bytes);
+        int newCapacity = (int) Math.min(Integer.MAX_VALUE, Math.max(INITIAL_CAPACITY, bytes << 1));
+        Path tmp = dir.resolve("data.tmp");
+        MappedByteBuffer dst;
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            dst = ch.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+        }
+        dst.order(ByteOrder.LITTLE_ENDIAN);
+        // a new file reads as zeros, so every pointer starts out null
+        // and every free list empty
+        int h = head;
+        dst.putInt(h + HEIGHT, MAX_LEVEL);
+        int newTop = h + LEVELS + MAX_LEVEL * LEVEL_SIZE;
+        int[] last = update;
+        Arrays.fill(last, h);
+        int[] count = new int[MAX_LEVEL + 2];
+        double[] sum = new double[MAX_LEVEL + 2];
+        double[] min = new double[MAX_LEVEL + 2];
+        double[] max = new double[MAX_LEVEL + 2];
+        Arrays.fill(min, Double.MAX_VALUE);
+        Arrays.fill(max, -Double.MAX_VALUE);
+        int height = 0;
+        int position = 0;
+        for (int n = next(head); n != NULL; n = next(n)) {
+            double v = value(n);
+            int z = newTop, zh = levelGenerator.idealLevel(++position);
+            newTop += LEVELS + zh * LEVEL_SIZE;
+            dst.putLong(z + KEY, key(n));
+            dst.putDouble(z + VALUE, v);
+            dst.putInt(z + HEIGHT, zh);
+            dst.putInt(last[0] + NEXT, z);
+            last[0] = z;
+            count[1]++;
+            sum[1] = sum[1] + v;
+            min[1] = Math.min(min[1], v);
+            max[1] = Math.max(max[1], v);
+            for (int i = 1; i <= zh; ++i) {
+                int a = at(z, i);
+                dst.putInt(a + COUNT, count[i]);
+                dst.putDouble(a + SUM, sum[i]);
+                dst.putDouble(a + MIN, min[i]);
+                dst.putDouble(a + MAX, max[i]);
+                count[i + 1] = count[i + 1] + count[i];
+                sum[i + 1] = sum[i + 1] + sum[i];
+                min[i + 1] = Math.min(min[i + 1], min[i]);
+                max[i + 1] = Math.max(max[i + 1], max[i]);
+                count[i] = 0;
+                sum[i] = 0;
+                min[i] = Double.MAX_VALUE;
+                max[i] = -Double.MAX_VALUE;
+                dst.putInt(at(last[i], i) + RIGHT, z);
+                last[i] = z;
+            }
+            height = Math.max(height, zh);
+        }
+        dst.putLong(MAGIC_OFF, MAGIC);
+        dst.putInt(VERSION_OFF, VERSION);
+        dst.putInt(LEVEL_OFF, height);
+        dst.putInt(SIZE_OFF, size);
+        dst.putInt(TOP_OFF, newTop);
+        dst.putLong(SEQ_OFF, seq);
+        dst.force();
+        install(tmp, newCapacity);
+        level = height;
+        top = newTop;
+        Arrays.fill(freeLists, NULL);
+        wal.truncate(0);
+        wal.force(true);
+    }
+
+    /**
+     * Makes sure there is room for a record of the tallest possible
+     * height, writing the image into a larger file if needed.  The
+     * log is left alone: the image records the sequence number it
+     * includes, so replay skips the records it already holds.
+     */
+    private void ensureCapacity() throws IOException {
+        int need = LEVELS + MAX_LEVEL * LEVEL_SIZE;
+        if (top <= capacity - need)
+            return;
+        if (capacity == Integer.MAX_VALUE)
+            throw new IOException("image full");
+        int newCapacity = (int) Math.min(Integer.MAX_VALUE, (long) capacity << 1);
+        writeImage(newCapacity, false);
+    }
+
+    private int allocate(int height) {
+        int addr = freeLists[height];
+        if (addr != NULL) {
+            freeLists[height] = image.getInt(addr + NEXT);
+        } else {
+            addr = top;
+            top += LEVELS + height * LEVEL_SIZE;
+        }
+        image.putInt(addr + HEIGHT, height);
+        return addr;
+    }
+
+    private void free(int node) {
+        int height = image.getInt(node + HEIGHT);
+        image.putInt(node + NEXT, freeLists[height]);
+        freeLists[height] = node;
+    }
+
+    /* ---------------- Log -------------- */
+
+    private void log(byte op, long key, double value) throws IOException {
+        if (walBuffer.remaining() < LOG_RECORD)
+            flushLog();
+        int start = walBuffer.position();
+        walBuffer.put(op).putLong(seq + 1).putLong(key).putDouble(value);
+        crc.reset();
+        ByteBuffer rec = walBuffer.duplicate();
+        rec.position(start).limit(start + LOG_RECORD - 4);
+        crc.update(rec);
+        walBuffer.putInt((int) crc.getValue());
+    }
+
+    private void flushLog() throws IOException {
+        walBuffer.flip();
+        while (walBuffer.hasRemaining())
+            wal.write(walBuffer, wal.size());
+        walBuffer.clear();
+    }
+
+    /**
+     * Forces all changes made so far to the log on disk.  Changes
+     * are durable once this returns.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void sync() throws IOException {
+        flushLog();
+        wal.force(false);
+    }
+
+    /**
+     * Applies the log records that are newer than the image, and
+     * drops a torn or corrupt tail.
+     */
+    private void replay() throws IOException {
+        ByteBuffer rec = ByteBuffer.allocate(LOG_RECORD).order(ByteOrder.LITTLE_ENDIAN);
+        long pos = 0;
+        for (long end = wal.size(); pos + LOG_RECORD <= end; pos += LOG_RECORD) {
+            rec.clear();
+            while (rec.hasRemaining() && wal.read(rec, pos + rec.position()) > 0) {
+                // fill
+            }
+            crc.reset();
+            crc.update(rec.array(), 0, LOG_RECORD - 4);
+            if (rec.position() < LOG_RECORD || rec.getInt(LOG_RECORD - 4) != (int) crc.getValue())
+                break;
+            byte op = rec.get(0);
+            long s = rec.getLong(1);
+            long key = rec.getLong(9);
+            double value = rec.getDouble(17);
+            if (s <= seq)
+                continue;
+            ensureCapacity();
+            if (op == OP_INSERT)
+                doInsert(key, value);
+            else if (op == OP_DELETE)
+                doDelete(key);
+            else
+                break;
+            seq = s;
+        }
+        wal.truncate(pos);
+    }
+
+    /**
+     * Checkpoints and releases the files.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        checkpoint();
+        wal.close();
+        image = null;
+    }
+
+    /* ---------------- Field access -------------- */
+
+    private long key(int node) {
+        return image.getLong(node + KEY);
+    }
+
+    private double value(int node) {
+        return image.getDouble(node + VALUE);
+    }
+
+    private int next(int node) {
+        return image.getInt(node + NEXT);
+    }
+
+    private static int at(int node, int i) {
+        return node + LEVELS + (i - 1) * LEVEL_SIZE;
+    }
+
+    private int right(int node, int i) {
+        return image.getInt(at(node, i) + RIGHT);
+    }
+
+    private void setRight(int node, int i, int val) {
+        image.putInt(at(node, i) + RIGHT, val);
+    }
+
+    private int spanCount(int node, int i) {
+        return image.getInt(at(node, i) + COUNT);
+    }
+
+    private double spanSum(int node, int i) {
+        return image.getDouble(at(node, i) + SUM);
+    }
+
+    private double spanMin(int node, int i) {
+        return image.getDouble(at(node, i) + MIN);
+    }
+
+    private double spanMax(int node, int i) {
+        return image.getDouble(at(node, i) + MAX);
+    }
+
+    private void setSpan(int node, int i, int count, double sum, double min, double max) {
+        int a = at(node, i);
+        image.putInt(a + COUNT, count);
+        image.putDouble(a + SUM, sum);
+        image.putDouble(a + MIN, min);
+        image.putDouble(a + MAX, max);
+    }
+
+    /**
+     * Recomputes the span of node on level i, whose predecessor on
+     * that level is pred, from the level below.
+     */
+    private void aggregate(int pred, int node, int i) {
+        int count = 0;
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        if (i == 1) {
+            for (int n = pred; n != node; ) {
+                n = next(n);
+                double v = value(n);
+                count++;
+                sum = sum + v;
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+        } else {
+            for (int s = pred; s != node; ) {
+                s = right(s, i - 1);
+                count = count + spanCount(s, i - 1);
+                sum = sum + spanSum(s, i - 1);
+                min = Math.min(min, spanMin(s, i - 1));
+                max = Math.max(max, spanMax(s, i - 1));
+            }
+        }
+        setSpan(node, i, count, sum, min, max);
+    }
+
+    /* ---------------- Operations -------------- */
+
+    /**
+     * Main insertion method.
+     * @param key the key
+     * @param value the value
+     * @throws IOException if the change cannot be logged
+     */
+    public void insert(long key, double value) throws IOException {
+        ensureCapacity();
+        log(OP_INSERT, key, value);
+        doInsert(key, value);
+        ++seq;
+    }
+
+    private void doInsert(long key, double value) {
+        int rank = 0;
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        int x = head;
+        for (int i = level; i >= 1; --i) {
+            int r;
+            while ((r = right(x, i)) != NULL && key(r) < key) {
+                rank = rank + spanCount(r, i);
+                sum = sum + spanSum(r, i);
+                min = Math.min(min, spanMin(r, i));
+                max = Math.max(max, spanMax(r, i));
+                x = r;
+            }
+            if (r != NULL) {
+                setSpan(r, i, spanCount(r, i) + 1, spanSum(r, i) + value,
+                        Math.min(spanMin(r, i), value), Math.max(spanMax(r, i), value));
+            }
+            update[i] = x;
+        }
+        for (int n; (n = next(x)) != NULL && key(n) < key; ) {
+            double v = value(n);
+            rank++;
+            sum = sum + v;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+            x = n;
+        }
+
+        int height = Math.min(levelGenerator.nextLevel(), level + 1);
+        int z = allocate(height);
+        image.putLong(z + KEY, key);
+        image.putDouble(z + VALUE, value);
+        image.putInt(z + NEXT, next(x));
+        image.putInt(x + NEXT, z);
+        size++;
+
+        // link the tower bottom up
+        for (int i = 1; i <= height && i <= level; ++i) {
+            int q = update[i];
+            int succ = right(q, i);
+            setRight(z, i, succ);
+            setRight(q, i, z);
+            aggregate(q, z, i);
+            if (succ != NULL) {
+                if (spanMin(succ, i) >= spanMin(z, i) || spanMax(succ, i) <= spanMax(z, i)) {
+                    aggregate(z, succ, i);
+                } else {
+                    setSpan(succ, i, spanCount(succ, i) - spanCount(z, i), spanSum(succ, i) - spanSum(z, i),
+                            spanMin(succ, i), spanMax(succ, i));
+                }
+            }
+        }
+        if (height > level) { // grow by one level
+            level = height;
+            setRight(z, height, NULL);
+            setRight(head, height, z);
+            setSpan(z, height, rank + 1, sum + value, Math.min(min, value), Math.max(max, value));
+        }
+    }
+
+    /**
+     * Main deletion method.  As insert does, logs the change before
+     * making it: the node is found first, and only unlinked once the
+     * log has taken the record, so a failure to log leaves the list
+     * unchanged.
+     * @param key the key
+     * @return true, or false if not found
+     * @throws IOException if the change cannot be logged
+     */
+    public boolean delete(long key) throws IOException {
+        int b = findPredecessors(key);
+        int n = next(b);
+        if (n == NULL || key(n) != key)
+            return false;
+        log(OP_DELETE, key, 0);
+        unlink(b, n);
+        ++seq;
+        return true;
+    }
+
+    private boolean doDelete(long key) {
+        int b = findPredecessors(key);
+        int n = next(b);
+        if (n == NULL || key(n) != key)
+            return false;
+        unlink(b, n);
+        return true;
+    }
+
+    /**
+     * Returns the base-level predecessor of key, recording the
+     * predecessor on each index level in update.
+     */
+    private int findPredecessors(long key) {
+        int x = head;
+        for (int i = level; i >= 1; --i) {
+            for (int r; (r = right(x, i)) != NULL && key(r) < key; )
+                x = r;
+            update[i] = x;
+        }
+        for (int n; (n = next(x)) != NULL && key(n) < key; )
+            x = n;
+        return x;
+    }
+
+    /**
+     * Unlinks node n, whose base-level predecessor is x, and its
+     * tower, using the predecessors left in update by
+     * findPredecessors.
+     */
+    private void unlink(int x, int n) {
+        image.putInt(x + NEXT, next(n));
+        size--;
+        double v = value(n);
+        for (int i = 1; i <= level; ++i) {
+            int q = update[i], r = right(q, i);
+            if (r == NULL)
+                continue;
+            if (r == n) {
+                int s = right(n, i);
+                setRight(q, i, s);
+                if (s != NULL)
+                    aggregate(q, s, i);
+            } else if (spanMin(r, i) == v || spanMax(r, i) == v) {
+                aggregate(q, r, i);
+            } else {
+                setSpan(r, i, spanCount(r, i) - 1, spanSum(r, i) - v, spanMin(r, i), spanMax(r, i));
+            }
+        }
+        free(n);
+        while (level > 0 && right(head, level) == NULL)
+            --level;
+    }
+
+    /**
+     * Returns true if this list contains the given key.
+     * @param key the key
+     * @return true if present
+     */
+    public boolean contains(long key) {
+        int x = head;
+        for (int i = level; i >= 1; --i) {
+            for (int r; (r = right(x, i)) != NULL && key(r) < key; )
+                x = r;
+        }
+        for (int n; (n = next(x)) != NULL && key(n) < key; )
+            x = n;
+        int n = next(x);
+        return n != NULL && key(n) == key;
+    }
+
+    /**
+     * Returns count, sum, min and max of the values of all keys in
+     * [start, end].
+     *
+     * The query finds the highest level on which some index falls in
+     * the range, adds up the whole spans on that level and on the
+     * way down the right boundary, then adds up the spans on the way
+     * down the left boundary up to that first index.
+     *
+     * @param start the lowest key, inclusive
+     * @param end the highest key, inclusive
+     * @return the aggregates
+     */
+    public RangeQuerySkipList.RangeQueryResult rangeQuery(long start, long end) {
+        if (start > end)
+            throw new IllegalArgumentException("start > end"); // don't postpone errors
+        int count = 0;
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        int x = head, r = NULL, i;
+        for (i = level; i >= 1; --i) {
+            while ((r = right(x, i)) != NULL && key(r) < start)
+                x = r;
+            if (r != NULL && key(r) <= end)
+                break;
+        }
+        if (i == 0) {
+            int n = next(x);
+            while (n != NULL && key(n) < start)
+                n = next(n);
+            for (; n != NULL && key(n) <= end; n = next(n)) {
+                double v = value(n);
+                count++;
+                sum = sum + v;
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+            return new RangeQuerySkipList.RangeQueryResult(count, sum, min, max);
+        }
+        // right of r: whole spans, then down the right boundary
+        int f = r;
+        for (int j = i; j >= 1; --j) {
+            for (int s; (s = right(f, j)) != NULL && key(s) <= end; f = s) {
+                count = count + spanCount(s, j);
+                sum = sum + spanSum(s, j);
+                min = Math.min(min, spanMin(s, j));
+                max = Math.max(max, spanMax(s, j));
+            }
+        }
+        for (int n = next(f); n != NULL && key(n) <= end; n = next(n)) {
+            double v = value(n);
+            count++;
+            sum = sum + v;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        // up to r: down the left boundary
+        int limit = r;
+        for (int j = i - 1; j >= 1; --j) {
+            int s;
+            while (key(s = right(x, j)) < start)
+                x = s;
+            for (f = s; f != limit; ) {
+                f = right(f, j);
+                count = count + spanCount(f, j);
+                sum = sum + spanSum(f, j);
+                min = Math.min(min, spanMin(f, j));
+                max = Math.max(max, spanMax(f, j));
+            }
+            limit = s;
+        }
+        for (int n; key(n = next(x)) < start; )
+            x = n;
+        for (int n = x; n != limit; ) {
+            n = next(n);
+            double v = value(n);
+            count++;
+            sum = sum + v;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        return new RangeQuerySkipList.RangeQueryResult(count, sum, min, max);
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    public int size() {
+        return size;
+    }
+}
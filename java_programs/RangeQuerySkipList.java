@@ -1,7 +1,6 @@
 package com.spicdt.party.admin.biz.publish.service;
 
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
 
 public class RangeQuerySkipList<K> {
 
@@ -17,6 +16,26 @@ public class RangeQuerySkipList<K> {
 
     final Comparator<? super K> comparator;
 
+    final LevelGenerator levelGenerator;
+
+    /**
+     * The aggregator whose aggregate every span keeps besides its
+     * count: {@link #summary()} by default, or null if there is none.
+     */
+    final Aggregator<Double, ?> aggregator;
+
+    /**
+     * The aggregator as the indexes maintain their spans with it, or
+     * null if they are not AggregateIndexes; see spanAggregator.
+     */
+    private final Aggregator.OfDouble<Object> spanAggregator;
+
+    /**
+     * Traversal counters and latencies, or null unless
+     * SkipListMetrics.ENABLED.
+     */
+    private final SkipListMetrics metrics = SkipListMetrics.ENABLED ? new SkipListMetrics() : null;
+
     private void initialize() {
         head = new HeadIndex<K>(new Node<K>(null, 0, null),
                 null, null, 1);
@@ -68,15 +87,25 @@ public class RangeQuerySkipList<K> {
      * fields, they have different types and are handled in different
      * ways, that can't nicely be captured by placing field in a
      * shared abstract class.
+     *
+     * Every index counts the base nodes of its span, which rank,
+     * select and eviction need whatever the list aggregates.  The
+     * aggregate of the list's aggregator, if it has one, is kept by a
+     * subclass (see newIndex), so a list pays only for the aggregate
+     * it is configured with.  The methods maintaining a span take the
+     * list's aggregator as an argument rather than each index holding
+     * a reference to it; it is null unless the indexes are
+     * AggregateIndexes.
      */
     static class Index<K> {
         final Node<K> node;
         final Index<K> down;
         volatile Index<K> right;
-        private int spanCount;
-        private double spanSum;
-        private double spanMin;
-        private double spanMax;
+        int spanCount;
+        /**
+         * Set while a batch update has left the span stale.
+         */
+        boolean dirty;
 
         /**
          * Creates index node with given values.
@@ -88,68 +117,317 @@ public class RangeQuerySkipList<K> {
         }
 
         /**
-         * Set newSucc as successor.
+         * Set newSucc as successor.  The span of newSucc, and the
+         * remaining span of succ, are recomputed from the level below,
+         * which must already be linked.
          *
          * @param succ    the expected current successor
          * @param newSucc the new successor
+         * @param agg     the aggregator of the list's AggregateIndexes
+         * @return the number of nodes or indexes rescanned
          */
-        final void link(Index<K> succ, Index<K> newSucc) {
+        final int link(Index<K> succ, Index<K> newSucc, Aggregator.OfDouble<Object> agg) {
             newSucc.right = succ;
             this.right = newSucc;
-            int i = 0;
-            double sum = 0;
-            double min = newSucc.node.value;
-            double max = newSucc.node.value;
-            Node<K> node = this.node;
-            while (node != newSucc.node) {
-                node = node.next;
-                i++;
-                sum = sum + node.value;
-                min = Math.min(min, node.value);
-                max = Math.max(max, node.value);
-            }
-            newSucc.spanCount = i;
-            newSucc.spanSum = sum;
-            newSucc.spanMin = min;
-            newSucc.spanMax = max;
-            if (succ != null) {
-                succ.spanCount = succ.spanCount - i;
-                succ.spanSum = succ.spanSum - sum;
-                if (succ.spanMin >= min || succ.spanMax <= max) {
-                    Node<K> succNode = newSucc.node;
-                    double succMin = succ.node.value;
-                    double succMax = succ.node.value;
-                    while (succNode != succ.node) {
-                        succNode = succNode.next;
-                        succMin = Math.min(succMin, succNode.value);
-                        succMax = Math.max(succMax, succNode.value);
-                    }
-                    succ.spanMin = succMin;
-                    succ.spanMax = succMax;
-                }
-            }
+            int steps = newSucc.aggregate(this, agg);
+            if (succ != null && !succ.split(newSucc, agg))
+                steps = steps + succ.aggregate(newSucc, agg);
+            return steps;
         }
 
         /**
          * Set right field to skip over apparent successor
-         * succ.
+         * succ.  The span of the new successor, which absorbs the
+         * span of succ, is recomputed from the level below.
          *
          * @param succ the current successor
+         * @param agg  the aggregator of the list's AggregateIndexes
+         * @return the number of nodes or indexes rescanned
+         */
+        final int unlink(Index<K> succ, Aggregator.OfDouble<Object> agg) {
+            Index<K> next = succ.right;
+            this.right = next;
+            return (next != null) ? next.aggregate(this, agg) : 0;
+        }
+
+        /**
+         * Recomputes the span of this index, covering the nodes after
+         * pred.node up to and including this.node, where pred is the
+         * index to the left of this one on the same level.  On the
+         * lowest index level the span is counted over base nodes;
+         * above it, the spans of the level below are combined, so the
+         * cost is the number of lower-level indexes under this span
+         * (expected constant) rather than its width.
+         *
+         * @param pred the index to the left of this one
+         * @param agg the aggregator of the list's AggregateIndexes
+         * @return the number of nodes or indexes combined
+         */
+        int aggregate(Index<K> pred, Aggregator.OfDouble<Object> agg) {
+            int steps = 0;
+            int count = 0;
+            if (down == null) {
+                for (Node<K> n = pred.node; n != node; n = n.next) {
+                    steps++;
+                    count++;
+                }
+            } else {
+                for (Index<K> s = pred.down; s != down; ) {
+                    s = s.right;
+                    steps++;
+                    count = count + s.spanCount;
+                }
+            }
+            spanCount = count;
+            return steps;
+        }
+
+        /**
+         * Takes out of this span the part now covered by the new index
+         * to its left.
+         *
+         * @param part the index split off from this one
+         * @param agg the aggregator of the list's AggregateIndexes
+         * @return true, or false if the span must be recomputed
+         */
+        boolean split(Index<K> part, Aggregator.OfDouble<Object> agg) {
+            spanCount = spanCount - part.spanCount;
+            return true;
+        }
+
+        /**
+         * Adds a value inserted into this span.
+         *
+         * @param value the value
+         * @param agg the aggregator of the list's AggregateIndexes
+         * @return true, or false if the span must be recomputed once
+         * the node is linked
+         */
+        boolean widen(double value, Aggregator.OfDouble<Object> agg) {
+            spanCount++;
+            return true;
+        }
+
+        /**
+         * Takes out a value deleted from this span.
+         *
+         * @param value the value
+         * @param agg the aggregator of the list's AggregateIndexes
+         * @return false, or true if the span must be recomputed
+         */
+        boolean narrow(double value, Aggregator.OfDouble<Object> agg) {
+            spanCount--;
+            return false;
+        }
+
+        /**
+         * Takes over the span of the index to its left, unlinked with
+         * its node, whose value goes with it.
+         *
+         * @param gone the unlinked index
+         * @param value the value of its node
+         * @param agg the aggregator of the list's AggregateIndexes
+         * @return false, or true if the span must be recomputed
          */
-        final void unlink(Index<K> succ) {
-            this.right = succ.right;
-            if (succ.right != null) {
-                succ.right.spanCount = succ.right.spanCount + succ.spanCount;
-                succ.right.spanSum = succ.right.spanSum + succ.spanSum;
-                if (succ.spanMin < succ.right.spanMin) {
-                    succ.right.spanMin = succ.spanMin;
+        boolean absorb(Index<K> gone, double value, Aggregator.OfDouble<Object> agg) {
+            spanCount = spanCount + gone.spanCount - 1;
+            return false;
+        }
+    }
+
+    /**
+     * An index of a list configured with {@link #summary()}, keeping
+     * sum, min and max of its span in primitive fields besides the
+     * count.  Count and sum are adjusted in place; min and max cannot
+     * be taken out, so a span that may have lost either is recomputed.
+     */
+    static final class SummaryIndex<K> extends Index<K> {
+        double spanSum;
+        double spanMin;
+        double spanMax;
+
+        SummaryIndex(Node<K> node, Index<K> down, Index<K> right) {
+            super(node, down, right);
+        }
+
+        @Override
+        int aggregate(Index<K> pred, Aggregator.OfDouble<Object> agg) {
+            int steps = 0;
+            int count = 0;
+            double sum = 0;
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            if (down == null) {
+                for (Node<K> n = pred.node; n != node; ) {
+                    n = n.next;
+                    steps++;
+                    count++;
+                    sum = sum + n.value;
+                    min = Math.min(min, n.value);
+                    max = Math.max(max, n.value);
+                }
+            } else {
+                for (Index<K> s = pred.down; s != down; ) {
+                    SummaryIndex<K> t = (SummaryIndex<K>) (s = s.right);
+                    steps++;
+                    count = count + t.spanCount;
+                    sum = sum + t.spanSum;
+                    min = Math.min(min, t.spanMin);
+                    max = Math.max(max, t.spanMax);
+                }
+            }
+            spanCount = count;
+            spanSum = sum;
+            spanMin = min;
+            spanMax = max;
+            return steps;
+        }
+
+        @Override
+        boolean split(Index<K> part, Aggregator.OfDouble<Object> agg) {
+            SummaryIndex<K> p = (SummaryIndex<K>) part;
+            if (spanMin >= p.spanMin || spanMax <= p.spanMax)
+                return false;
+            spanCount = spanCount - p.spanCount;
+            spanSum = spanSum - p.spanSum;
+            return true;
+        }
+
+        @Override
+        boolean widen(double value, Aggregator.OfDouble<Object> agg) {
+            spanCount++;
+            spanSum += value;
+            if (value < spanMin)
+                spanMin = value;
+            if (value > spanMax)
+                spanMax = value;
+            return true;
+        }
+
+        @Override
+        boolean narrow(double value, Aggregator.OfDouble<Object> agg) {
+            spanCount--;
+            spanSum -= value;
+            return spanMin == value || spanMax == value;
+        }
+
+        @Override
+        boolean absorb(Index<K> gone, double value, Aggregator.OfDouble<Object> agg) {
+            SummaryIndex<K> g = (SummaryIndex<K>) gone;
+            spanCount = spanCount + g.spanCount - 1;
+            spanSum = spanSum + g.spanSum - value;
+            if (g.spanMin == value || g.spanMax == value)
+                return true;
+            spanMin = Math.min(spanMin, g.spanMin);
+            spanMax = Math.max(spanMax, g.spanMax);
+            return false;
+        }
+    }
+
+    /**
+     * An index of a list configured with any other aggregator,
+     * keeping the aggregate of its span besides the count.  The
+     * aggregate is combined into in place when the aggregator is
+     * commutative, taken from with {@link Aggregator#inverse} when it
+     * is invertible, and recomposed from the level below otherwise.
+     */
+    static final class AggregateIndex<K> extends Index<K> {
+        Object span;
+
+        AggregateIndex(Node<K> node, Index<K> down, Index<K> right) {
+            super(node, down, right);
+        }
+
+        @Override
+        int aggregate(Index<K> pred, Aggregator.OfDouble<Object> agg) {
+            int steps = 0;
+            int count = 0;
+            Object a = agg.identity();
+            if (down == null) {
+                for (Node<K> n = pred.node; n != node; ) {
+                    n = n.next;
+                    steps++;
+                    count++;
+                    a = agg.combine(a, agg.lift(n.value));
                 }
-                if (succ.spanMax > succ.right.spanMax) {
-                    succ.right.spanMax = succ.spanMax;
+            } else {
+                for (Index<K> s = pred.down; s != down; ) {
+                    AggregateIndex<K> t = (AggregateIndex<K>) (s = s.right);
+                    steps++;
+                    count = count + t.spanCount;
+                    a = agg.combine(a, t.span);
                 }
             }
+            spanCount = count;
+            span = a;
+            return steps;
+        }
+
+        @Override
+        boolean split(Index<K> part, Aggregator.OfDouble<Object> agg) {
+            if (!invertible(agg))
+                return false;
+            spanCount = spanCount - part.spanCount;
+            span = agg.inverse(span, ((AggregateIndex<K>) part).span);
+            return true;
+        }
+
+        @Override
+        boolean widen(double value, Aggregator.OfDouble<Object> agg) {
+            spanCount++;
+            if (!agg.isCommutative())
+                return false;
+            span = agg.combine(span, agg.lift(value));
+            return true;
+        }
+
+        @Override
+        boolean narrow(double value, Aggregator.OfDouble<Object> agg) {
+            spanCount--;
+            if (!invertible(agg))
+                return true;
+            span = agg.inverse(span, agg.lift(value));
+            return false;
+        }
+
+        @Override
+        boolean absorb(Index<K> gone, double value, Aggregator.OfDouble<Object> agg) {
+            spanCount = spanCount + gone.spanCount - 1;
+            if (!invertible(agg))
+                return true;
+            span = agg.inverse(agg.combine(((AggregateIndex<K>) gone).span, span), agg.lift(value));
+            return false;
+        }
+
+        private static boolean invertible(Aggregator<?, ?> agg) {
+            return agg.isCommutative() && agg.isInvertible();
         }
+    }
+
+    /**
+     * Creates an index of the kind that keeps the aggregate of the
+     * given aggregator: a SummaryIndex for {@link #summary()}, an
+     * AggregateIndex for any other, and a plain, counting Index for
+     * none.
+     */
+    static <K> Index<K> newIndex(Node<K> node, Index<K> down, Index<K> right, Aggregator<Double, ?> aggregator) {
+        if (aggregator == null)
+            return new Index<>(node, down, right);
+        if (aggregator == SUMMARY)
+            return new SummaryIndex<>(node, down, right);
+        return new AggregateIndex<>(node, down, right);
+    }
 
+    /**
+     * Returns the aggregator that AggregateIndexes of lists configured
+     * with the given one maintain their spans with, or null if the
+     * indexes of such lists are not AggregateIndexes.
+     */
+    @SuppressWarnings("unchecked")
+    static Aggregator.OfDouble<Object> spanAggregator(Aggregator<Double, ?> aggregator) {
+        if (aggregator == null || aggregator == SUMMARY)
+            return null;
+        return Aggregator.OfDouble.of((Aggregator<Double, Object>) aggregator);
     }
 
     /* ---------------- Head nodes -------------- */
@@ -242,7 +520,7 @@ public class RangeQuerySkipList<K> {
             if (n == null)
                 break;
             Node<K> f = n.next;
-            if ((c = cpr(cmp, key, n.value)) == 0)
+            if ((c = cpr(cmp, key, n.key)) == 0)
                 return ++rank;
             if (c < 0)
                 break;
@@ -252,9 +530,419 @@ public class RangeQuerySkipList<K> {
         return -1;
     }
 
+    /**
+     * Returns count, sum, min and max of the values of all keys less
+     * than or equal to the given key.
+     *
+     * @param key the highest key, inclusive
+     * @return the aggregates
+     */
+    public RangeQueryResult prefixAggregate(K key) {
+        return prefixAggregate(key, new RangeQueryResult(0, 0, Double.MAX_VALUE, -Double.MAX_VALUE));
+    }
+
+    /**
+     * Same as {@link #prefixAggregate(Object)}, writing the aggregates
+     * into the given result instead of a new one.
+     *
+     * The spans of the indexes passed over on the way down partition
+     * the prefix, so they are simply added up, along with the base
+     * nodes after the last of them.  A list not configured with
+     * {@link #summary()} adds up the values of the prefix one by one.
+     *
+     * @param key the highest key, inclusive
+     * @param into the result to overwrite
+     * @return into
+     */
+    public RangeQueryResult prefixAggregate(K key, RangeQueryResult into) {
+        if (key == null || into == null)
+            throw new NullPointerException();
+        if (aggregator != SUMMARY)
+            return scan(head.node.next, key, into);
+        Comparator<? super K> cmp = comparator;
+        int count = 0;
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        Index<K> q = head;
+        for (;;) {
+            for (Index<K> r; (r = q.right) != null && cpr(cmp, r.node.key, key) <= 0; q = r) {
+                SummaryIndex<K> t = (SummaryIndex<K>) r;
+                count = count + t.spanCount;
+                sum = sum + t.spanSum;
+                min = Math.min(min, t.spanMin);
+                max = Math.max(max, t.spanMax);
+            }
+            if (q.down == null)
+                break;
+            q = q.down;
+        }
+        for (Node<K> n = q.node.next; n != null && cpr(cmp, n.key, key) <= 0; n = n.next) {
+            count++;
+            sum = sum + n.value;
+            min = Math.min(min, n.value);
+            max = Math.max(max, n.value);
+        }
+        into.count = count;
+        into.sum = sum;
+        into.min = min;
+        into.max = max;
+        return into;
+    }
+
+    /**
+     * Returns the first key at which the running sum of values, in
+     * key order, reaches the target; that is, the key of the first
+     * entry whose value brings the sum of it and all entries before it
+     * to at least target.  With non-negative values, the running sum
+     * is monotone, so a target drawn uniformly from [0, total sum)
+     * picks an entry with probability proportional to its value.
+     *
+     * Each index is skipped over as long as the sum of its span still
+     * falls short of the target, so the key is found in O(log n), or
+     * in O(n) on a list not configured with {@link #summary()}.  Values
+     * must not be negative.
+     *
+     * @param target the sum to reach
+     * @return the key, or null if the sum of all values is less than
+     * target
+     */
+    public K findByPrefixSum(double target) {
+        double sum = 0;
+        Index<K> q = head;
+        for (; aggregator == SUMMARY; q = q.down) {
+            for (Index<K> r; (r = q.right) != null && sum + ((SummaryIndex<K>) r).spanSum < target; q = r)
+                sum = sum + ((SummaryIndex<K>) r).spanSum;
+            if (q.down == null)
+                break;
+        }
+        for (Node<K> n = q.node.next; n != null; n = n.next) {
+            sum = sum + n.value;
+            if (sum >= target)
+                return n.key;
+        }
+        return null;
+    }
+
+    /**
+     * Returns count, sum, min and max of the values of all keys in
+     * [start, end].
+     *
+     * @param start the lowest key, inclusive
+     * @param end the highest key, inclusive
+     * @return the aggregates
+     */
+    public RangeQueryResult rangeQuery(K start, K end) {
+        return rangeQuery(start, end, new RangeQueryResult(0, 0, Double.MAX_VALUE, -Double.MAX_VALUE));
+    }
+
+    /**
+     * Same as {@link #rangeQuery(Object, Object)}, writing the
+     * aggregates into the given result instead of a new one, so that
+     * a caller that reuses its result allocates nothing per query.
+     *
+     * The query finds the highest level on which some index falls in
+     * the range, adds up the whole spans on that level and on the
+     * way down the right boundary, then adds up the spans on the way
+     * down the left boundary up to that first index.  Each boundary is
+     * walked once, and the aggregates are kept in locals until the
+     * end.  A list not configured with {@link #summary()} adds up the
+     * values of the range one by one.
+     *
+     * @param start the lowest key, inclusive
+     * @param end the highest key, inclusive
+     * @param into the result to overwrite
+     * @return into
+     */
+    public RangeQueryResult rangeQuery(K start, K end, RangeQueryResult into) {
+        if (!SkipListMetrics.ENABLED)
+            return doRangeQuery(start, end, into);
+        long t = System.nanoTime();
+        doRangeQuery(start, end, into);
+        metrics.latency(SkipListMetrics.Op.QUERY, System.nanoTime() - t);
+        return into;
+    }
+
+    private RangeQueryResult doRangeQuery(K start, K end, RangeQueryResult into) {
+        if (start == null || end == null || into == null)
+            throw new NullPointerException();
+        Comparator<? super K> cmp = comparator;
+        if (cpr(cmp, start, end) > 0)
+            throw new IllegalArgumentException("start > end"); // don't postpone errors
+        if (aggregator != SUMMARY)
+            return scan(findFirst(head, start, false), end, into);
+        int count = 0;
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        HeadIndex<K> h = head;
+        Index<K> q = h, r;
+        int j = h.level, steps = 0;
+        for (;;) {
+            while ((r = q.right) != null && cpr(cmp, r.node.key, start) < 0) {
+                q = r;
+                if (SkipListMetrics.ENABLED)
+                    ++steps;
+            }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(j, steps);
+                steps = 0;
+            }
+            if (r != null && cpr(cmp, r.node.key, end) <= 0)
+                break;
+            if (q.down == null) {
+                Node<K> n = q.node.next;
+                while (n != null && cpr(cmp, n.key, start) < 0) {
+                    n = n.next;
+                    if (SkipListMetrics.ENABLED)
+                        ++steps;
+                }
+                for (; n != null && cpr(cmp, n.key, end) <= 0; n = n.next) {
+                    count++;
+                    sum = sum + n.value;
+                    min = Math.min(min, n.value);
+                    max = Math.max(max, n.value);
+                }
+                if (SkipListMetrics.ENABLED)
+                    metrics.baseWalk(steps + count);
+                into.count = count;
+                into.sum = sum;
+                into.min = min;
+                into.max = max;
+                return into;
+            }
+            q = q.down;
+            --j;
+        }
+        // right of r: whole spans, then down the right boundary
+        int i = j;
+        for (Index<K> f = r; ; f = f.down, --i) {
+            for (Index<K> s; (s = f.right) != null && cpr(cmp, s.node.key, end) <= 0; f = s) {
+                SummaryIndex<K> t = (SummaryIndex<K>) s;
+                count = count + t.spanCount;
+                sum = sum + t.spanSum;
+                min = Math.min(min, t.spanMin);
+                max = Math.max(max, t.spanMax);
+                if (SkipListMetrics.ENABLED)
+                    ++steps;
+            }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(i, steps);
+                steps = 0;
+            }
+            if (f.down == null) {
+                for (Node<K> n = f.node.next; n != null && cpr(cmp, n.key, end) <= 0; n = n.next) {
+                    count++;
+                    sum = sum + n.value;
+                    min = Math.min(min, n.value);
+                    max = Math.max(max, n.value);
+                    if (SkipListMetrics.ENABLED)
+                        ++steps;
+                }
+                break;
+            }
+        }
+        // up to r: down the left boundary
+        Index<K> limit = r;
+        int walk = steps;
+        steps = 0;
+        while (q.down != null) {
+            q = q.down;
+            limit = limit.down;
+            Index<K> s;
+            while (cpr(cmp, (s = q.right).node.key, start) < 0) {
+                q = s;
+                if (SkipListMetrics.ENABLED)
+                    ++steps;
+            }
+            for (Index<K> f = s; f != limit; ) {
+                SummaryIndex<K> t = (SummaryIndex<K>) (f = f.right);
+                count = count + t.spanCount;
+                sum = sum + t.spanSum;
+                min = Math.min(min, t.spanMin);
+                max = Math.max(max, t.spanMax);
+                if (SkipListMetrics.ENABLED)
+                    ++steps;
+            }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(--j, steps);
+                steps = 0;
+            }
+            limit = s;
+        }
+        Node<K> b = q.node;
+        for (Node<K> n; cpr(cmp, (n = b.next).key, start) < 0; ) {
+            b = n;
+            if (SkipListMetrics.ENABLED)
+                ++walk;
+        }
+        for (Node<K> n = b, last = limit.node; n != last; ) {
+            n = n.next;
+            count++;
+            sum = sum + n.value;
+            min = Math.min(min, n.value);
+            max = Math.max(max, n.value);
+            if (SkipListMetrics.ENABLED)
+                ++walk;
+        }
+        if (SkipListMetrics.ENABLED)
+            metrics.baseWalk(walk);
+        into.count = count;
+        into.sum = sum;
+        into.min = min;
+        into.max = max;
+        return into;
+    }
+
+    /**
+     * Returns the first base node with key at or after key, or
+     * strictly after it if strict, descending from index q, whose
+     * node must be before it.
+     */
+    private Node<K> findFirst(Index<K> q, K key, boolean strict) {
+        Comparator<? super K> cmp = comparator;
+        int bound = strict ? 0 : -1;
+        for (;;) {
+            Index<K> r;
+            while ((r = q.right) != null && cpr(cmp, r.node.key, key) <= bound)
+                q = r;
+            if (q.down == null)
+                break;
+            q = q.down;
+        }
+        Node<K> n = q.node.next;
+        while (n != null && cpr(cmp, n.key, key) <= bound)
+            n = n.next;
+        return n;
+    }
+
+    /**
+     * Writes count, sum, min and max of the values of n and the nodes
+     * after it up to key end, inclusive, into into, for lists whose
+     * spans do not keep them.
+     */
+    private RangeQueryResult scan(Node<K> n, K end, RangeQueryResult into) {
+        Comparator<? super K> cmp = comparator;
+        int count = 0;
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (; n != null && cpr(cmp, n.key, end) <= 0; n = n.next) {
+            count++;
+            sum = sum + n.value;
+            min = Math.min(min, n.value);
+            max = Math.max(max, n.value);
+        }
+        into.count = count;
+        into.sum = sum;
+        into.min = min;
+        into.max = max;
+        return into;
+    }
+
+    /**
+     * Returns the aggregate of the values of all keys in [start, end],
+     * combined in key order.
+     *
+     * If aggregator is the one this list was created with, the
+     * aggregate is read from the spans, along the same boundaries as
+     * {@link #rangeQuery(Object, Object, RangeQueryResult)}, in
+     * O(log n).  Any other aggregator is answered by combining the
+     * values of the range one by one, in time linear in its width.
+     *
+     * @param start the lowest key, inclusive
+     * @param end the highest key, inclusive
+     * @param aggregator the aggregator
+     * @param <A> the type of aggregates
+     * @return the aggregate, or aggregator.identity() if there are no
+     * such keys
+     */
+    @SuppressWarnings("unchecked")
+    public <A> A rangeQuery(K start, K end, Aggregator<Double, A> aggregator) {
+        if (start == null || end == null || aggregator == null)
+            throw new NullPointerException();
+        Comparator<? super K> cmp = comparator;
+        if (cpr(cmp, start, end) > 0)
+            throw new IllegalArgumentException("start > end"); // don't postpone errors
+        if (aggregator == this.aggregator)
+            return (A) (aggregator == SUMMARY ? rangeQuery(start, end) : spanQuery(start, end));
+        Aggregator.OfDouble<A> agg = Aggregator.OfDouble.of(aggregator);
+        A a = agg.identity();
+        for (Node<K> n = findFirst(head, start, false); n != null && cpr(cmp, n.key, end) <= 0; n = n.next)
+            a = agg.combine(a, agg.lift(n.value));
+        return a;
+    }
+
+    /**
+     * The boundary walk of doRangeQuery over the aggregates of the
+     * aggregator.  Since the left boundary yields its spans right to
+     * left, each is combined in front of those already found, so
+     * non-commutative aggregators are supported.
+     */
+    private Object spanQuery(K start, K end) {
+        Comparator<? super K> cmp = comparator;
+        Aggregator.OfDouble<Object> agg = spanAggregator;
+        Index<K> q = head, r;
+        for (;;) {
+            while ((r = q.right) != null && cpr(cmp, r.node.key, start) < 0)
+                q = r;
+            if (r != null && cpr(cmp, r.node.key, end) <= 0)
+                break;
+            if (q.down == null) {
+                Object a = agg.identity();
+                Node<K> n = q.node.next;
+                while (n != null && cpr(cmp, n.key, start) < 0)
+                    n = n.next;
+                for (; n != null && cpr(cmp, n.key, end) <= 0; n = n.next)
+                    a = agg.combine(a, agg.lift(n.value));
+                return a;
+            }
+            q = q.down;
+        }
+        // right of r: whole spans, then down the right boundary
+        Object right = agg.identity();
+        for (Index<K> f = r; ; f = f.down) {
+            for (Index<K> s; (s = f.right) != null && cpr(cmp, s.node.key, end) <= 0; f = s)
+                right = agg.combine(right, ((AggregateIndex<K>) s).span);
+            if (f.down == null) {
+                for (Node<K> n = f.node.next; n != null && cpr(cmp, n.key, end) <= 0; n = n.next)
+                    right = agg.combine(right, agg.lift(n.value));
+                break;
+            }
+        }
+        // up to r: down the left boundary
+        Object left = agg.identity();
+        Index<K> limit = r;
+        while (q.down != null) {
+            q = q.down;
+            limit = limit.down;
+            Index<K> s;
+            while (cpr(cmp, (s = q.right).node.key, start) < 0)
+                q = s;
+            Object a = agg.identity();
+            for (Index<K> f = s; f != limit; ) {
+                f = f.right;
+                a = agg.combine(a, ((AggregateIndex<K>) f).span);
+            }
+            left = agg.combine(a, left);
+            limit = s;
+        }
+        Node<K> b = q.node;
+        for (Node<K> n; cpr(cmp, (n = b.next).key, start) < 0; )
+            b = n;
+        Object a = agg.identity();
+        for (Node<K> n = b, last = limit.node; n != last; ) {
+            n = n.next;
+            a = agg.combine(a, agg.lift(n.value));
+        }
+        return agg.combine(agg.combine(a, left), right);
+    }
+
     public RangeQueryResult rangeQueryRecursive(K start, K end) {
         if (cpr(this.comparator, start, end) > 0)
             throw new IllegalArgumentException("start > end"); // don't postpone errors
+        if (aggregator != SUMMARY)
+            return rangeQuery(start, end);
         return rangeQuery(head, start, end);
     }
 
@@ -286,10 +974,11 @@ public class RangeQuerySkipList<K> {
                 RangeQueryResult leftResult = processLeft(q, start);
                 RangeQueryResult result = new RangeQueryResult(0, 0, Double.MAX_VALUE, -Double.MAX_VALUE);
                 while (r.right != null && cpr(cmp, r.right.node.key, end) <= 0) {
-                    result.count = result.count + r.right.spanCount;
-                    result.sum = result.sum + r.right.spanSum;
-                    result.min = Math.min(result.min, r.right.spanMin);
-                    result.max = Math.max(result.max, r.right.spanMax);
+                    SummaryIndex<K> s = (SummaryIndex<K>) r.right;
+                    result.count = result.count + s.spanCount;
+                    result.sum = result.sum + s.spanSum;
+                    result.min = Math.min(result.min, s.spanMin);
+                    result.max = Math.max(result.max, s.spanMax);
                     r = r.right;
                 }
                 RangeQueryResult rightResult = processRight(r, end);
@@ -308,7 +997,8 @@ public class RangeQuerySkipList<K> {
         K k = n.key;
         RangeQueryResult leftResult;
         if (q.node != null && q.node.key != null && cpr(comparator, start, q.node.key) == 0) {
-            leftResult = new RangeQueryResult(r.spanCount, r.spanSum, r.spanMin, r.spanMax);
+            SummaryIndex<K> s = (SummaryIndex<K>) r;
+            leftResult = new RangeQueryResult(s.spanCount, s.spanSum, s.spanMin, s.spanMax);
         } else if (cpr(comparator, start, k) == 0) {
             leftResult = new RangeQueryResult(1, n.value, n.value, n.value);
         } else if ((d = q.down) == null) {
@@ -403,129 +1093,113 @@ public class RangeQuerySkipList<K> {
 
     /**
      * Main insertion method.  Adds element if not present.
+     *
+     * The spans of the indexes along the search path are widened on
+     * the way down.  If the new node gets an index tower, the
+     * predecessor index of each level is remembered, and the tower is
+     * linked bottom up, so that each new span can be composed from
+     * the level below it.  The aggregate of a non-commutative
+     * aggregator cannot be widened before the node is in place, so
+     * with one the spans above the tower are recomposed bottom up too.
      * @param key the key
      * @param value the value
      */
     public void insert(K key, double value) {
+        if (!SkipListMetrics.ENABLED) {
+            doInsert(key, value);
+            return;
+        }
+        long start = System.nanoTime();
+        doInsert(key, value);
+        metrics.latency(SkipListMetrics.Op.INSERT, System.nanoTime() - start);
+    }
+
+    private void doInsert(K key, double value) {
         Node<K> z;             // added node
         if (key == null)
             throw new NullPointerException();
         Comparator<? super K> cmp = comparator;
+        int level = levelGenerator.nextLevel();
+        HeadIndex<K> h = head;
+        Aggregator.OfDouble<Object> agg = spanAggregator;
+        @SuppressWarnings("unchecked") Index<K>[] preds =
+                level == 0 && (agg == null || agg.isCommutative()) ? null : (Index<K>[]) new Index<?>[h.level + 1];
+        boolean recompose = false;
         Node<K> b;
-        int rank = 0;
-        double sum = 0;
-        double min = Double.MAX_VALUE;
-        double max = -Double.MAX_VALUE;
-        for (Index<K> q = head, r = q.right, d; ; ) {
+        int j = h.level, steps = 0;
+        for (Index<K> q = h, r = q.right, d; ; ) {
             if (r != null) {
                 Node<K> n = r.node;
                 K k = n.key;
                 if (cpr(cmp, key, k) > 0) {
-                    rank = rank + r.spanCount;
-                    sum = sum + r.spanSum;
-                    min = Math.min(min, r.spanMin);
-                    max = Math.max(max, r.spanMax);
                     q = r;
                     r = r.right;
+                    if (SkipListMetrics.ENABLED)
+                        ++steps;
                     continue;
-                } else {
-                    r.spanCount++;
-                    r.spanSum += value;
-                    if (value < r.spanMin) {
-                        r.spanMin = value;
-                    }
-                    if (value > r.spanMax) {
-                        r.spanMax = value;
-                    }
+                } else if (!r.widen(value, agg)) {
+                    recompose = true;
                 }
             }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(j, steps);
+                steps = 0;
+            }
+            if (preds != null)
+                preds[j] = q;
             if ((d = q.down) == null) {
                 b = q.node;
                 break;
             }
             q = d;
             r = d.right;
+            --j;
         }
         for (Node<K> n = b.next; ; ) {
             if (n != null) {
                 Node<K> f = n.next;
                 if (cpr(cmp, key, n.key) > 0) {
-                    rank++;
-                    sum = sum + n.value;
-                    min = Math.min(min, n.value);
-                    max = Math.max(max, n.value);
                     b = n;
                     n = f;
+                    if (SkipListMetrics.ENABLED)
+                        ++steps;
                     continue;
                 }
                 // else c <= 0; fall through
             }
 
+            if (SkipListMetrics.ENABLED)
+                metrics.baseWalk(steps);
             z = new Node<>(key, value, n);
             b.updateNext(z);
             size++;
-            rank++;
-            sum = sum + value;
-            min = Math.min(min, value);
-            max = Math.max(max, value);
             break;
         }
 
-        int rnd = ThreadLocalRandom.current().nextInt();
-        rnd = getRandom();
-//        if ((rnd & 0x80000001) == 0) { // test highest and lowest bits
-        if ((rnd & 0x00000001) == 0) { // test lowest bits
-            int level = 1, maxLevel;
-            while (((rnd >>>= 1) & 1) != 0)
-                ++level;
+        if (level > 0 || recompose) {
+            // link the tower bottom up, then recompose the spans
+            // above it that could not be widened in place
             Index<K> idx = null;
-            HeadIndex<K> h = head;
-            if (level <= (maxLevel = h.level)) {
-                for (int i = 1; i <= level; ++i) {
-                    idx = new Index<>(z, idx, null);
-                }
-            } else { // try to grow by one level
-                level = maxLevel + 1; // hold in array and later pick the one to use
-                @SuppressWarnings("unchecked") Index<K>[] idxs = (Index<K>[]) new Index<?>[level + 1];
-                for (int i = 1; i <= level; ++i)
-                    idxs[i] = idx = new Index<>(z, idx, null);
-                idxs[level].spanCount = rank;
-                idxs[level].spanSum = sum;
-                idxs[level].spanMin = min;
-                idxs[level].spanMax = max;
-                int oldLevel = h.level;
-                Node<K> oldbase = h.node;
-                HeadIndex<K> newh = new HeadIndex<>(oldbase, h, idxs[level], level); // top level
-                updateHead(newh);
-                h = newh;
-                idx = idxs[level = oldLevel];
-            }
-            // find insertion points and splice in
-            int insertionLevel = level;
-            int j = h.level;
-            for (Index<K> q = h, r = q.right, t = idx; ; ) {
-                if (t == null)
-                    break;
-                if (r != null) {
-                    Node<K> n = r.node;
-                    int c = cpr(cmp, key, n.key);
-                    if (c > 0) {
-                        q = r;
-                        r = r.right;
-                        continue;
-                    }
-                }
-
-                if (j == insertionLevel) {
-                    q.link(r, t);
-                    if (--insertionLevel == 0)
-                        break;
+            int maxLevel = h.level;
+            for (int i = 1; i <= maxLevel; ++i) {
+                Index<K> q = preds[i];
+                int walked;
+                if (i <= level) {
+                    idx = newIndex(z, idx, null, aggregator);
+                    walked = q.link(q.right, idx, agg);
+                } else if (recompose && q.right != null) {
+                    walked = q.right.aggregate(q, agg);
+                } else {
+                    continue;
                 }
-
-                if (--j >= insertionLevel && j < level)
-                    t = t.down;
-                q = q.down;
-                r = q.right;
+                if (SkipListMetrics.ENABLED)
+                    metrics.link(walked);
+            }
+            if (level > maxLevel) { // grow by one level
+                idx = newIndex(z, idx, null, aggregator);
+                HeadIndex<K> nh = new HeadIndex<>(h.node, h, idx, maxLevel + 1);
+                idx.aggregate(nh, agg);
+                updateHead(nh); // top level
             }
         }
     }
@@ -534,83 +1208,89 @@ public class RangeQuerySkipList<K> {
      * Main deletion method. Locates node, unlinks predecessor, removes associated index
      * nodes, and possibly reduces head index level.
      *
-     * Index nodes are cleared out.
-     * which unlinks indexes to deleted nodes found along path to value,
-     * which will include the indexes to this node.  This is done
-     * unconditionally. We can't check beforehand whether there are
-     * index nodes because it might be the case that some or all
-     * indexes hadn't been inserted yet for this node during initial
-     * search for it, and we'd like to ensure lack of garbage
-     * retention, so must call to be sure.
+     * The predecessor index of each level is remembered on the way
+     * down.  Once the node is unlinked, the levels are repaired bottom
+     * up: the index to this node, if any, is unlinked, and the span
+     * that covered the node is shrunk, recomposing min and max from
+     * the (already repaired) level below when the node held either.
      *
      * @param key the value
      * @return true, or false if not found
      */
     public final boolean delete(Object key) {
+        if (!SkipListMetrics.ENABLED)
+            return doDelete(key);
+        long start = System.nanoTime();
+        boolean deleted = doDelete(key);
+        metrics.latency(SkipListMetrics.Op.DELETE, System.nanoTime() - start);
+        return deleted;
+    }
+
+    private boolean doDelete(Object key) {
         if (key == null)
             throw new NullPointerException();
         Comparator<? super K> cmp = comparator;
-        for (Node<K> b = findPredecessor(key, cmp), n = b.next; ; ) {
-            int c;
-            if (n == null)
+        HeadIndex<K> h = head;
+        @SuppressWarnings("unchecked") Index<K>[] preds = (Index<K>[]) new Index<?>[h.level + 1];
+        Node<K> b;
+        int j = h.level, steps = 0;
+        for (Index<K> q = h, r = q.right, d; ; ) {
+            if (r != null && cpr(cmp, key, r.node.key) > 0) {
+                q = r;
+                r = r.right;
+                if (SkipListMetrics.ENABLED)
+                    ++steps;
+                continue;
+            }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(j, steps);
+                steps = 0;
+            }
+            preds[j] = q;
+            if ((d = q.down) == null) {
+                b = q.node;
                 break;
-            Node<K> f = n.next;
-            if ((c = cpr(cmp, key, n.key)) < 0)
+            }
+            q = d;
+            r = d.right;
+            --j;
+        }
+        Node<K> n = b.next;
+        for (int c; ; ) {
+            if (n == null || (c = cpr(cmp, key, n.key)) < 0) {
+                if (SkipListMetrics.ENABLED)
+                    metrics.baseWalk(steps);
+                return false;
+            }
+            if (c == 0)
                 break;
-            if (c > 0) {
-                b = n;
-                n = f;
+            b = n;
+            n = n.next;
+            if (SkipListMetrics.ENABLED)
+                ++steps;
+        }
+        if (SkipListMetrics.ENABLED)
+            metrics.baseWalk(steps);
+        n.setDeleted();
+        b.updateNext(n.next);
+        --size;
+        for (int i = 1; i < preds.length; ++i) {
+            Index<K> q = preds[i], r = q.right;
+            if (r == null)
                 continue;
+            if (r.node == n) {
+                int walked = q.unlink(r, spanAggregator);
+                if (SkipListMetrics.ENABLED)
+                    metrics.link(walked);
+            } else if (r.narrow(n.value, spanAggregator)) {
+                int walked = r.aggregate(q, spanAggregator);
+                if (SkipListMetrics.ENABLED)
+                    metrics.link(walked);
             }
-            n.setDeleted();
-            b.updateNext(f);
-            --size;
-            for (Index<K> q = head, r = q.right, d; ; ) {
-                if (r != null) {
-                    Node<K> m = r.node;
-                    K k = m.key;
-                    if (m.deleted) {
-                        q.unlink(r);
-                        r = q.right;         // reread r
-                        continue;
-                    }
-                    if (cpr(cmp, key, k) > 0) {
-                        q = r;
-                        r = r.right;
-                        continue;
-                    } else {
-                        r.spanCount--;
-                        r.spanSum -= n.value;
-                        if (r.spanMin == n.value) {
-                            Node<K> node = q.node;
-                            double min = r.node.value;
-                            while (node != r.node) {
-                                node = node.next;
-                                min = Math.min(min, node.value);
-                            }
-                            r.spanMin = min;
-                        }
-                        if (r.spanMax == n.value) {
-                            Node<K> node = q.node;
-                            double max = r.node.value;
-                            while (node != r.node) {
-                                node = node.next;
-                                max = Math.max(max, node.value);
-                            }
-                            r.spanMax = max;
-                        }
-                    }
-                }
-                if ((d = q.down) == null)
-                    break;
-                q = d;
-                r = d.right;
-            }
-            if (head.right == null)
-                tryReduceLevel();
-            return true;
         }
-        return false;
+        if (head.right == null)
+            tryReduceLevel();
+        return true;
     }
 
     /**
@@ -649,16 +1329,617 @@ public class RangeQuerySkipList<K> {
         return size;
     }
 
+    /* ---------------- Eviction -------------- */
+
+    /**
+     * Removes every entry with key less than the given key, as when
+     * the oldest entries of a time window expire, in O(log n + levels)
+     * rather than one delete each; see {@link #evictFirst}.
+     *
+     * @param key the least key to keep
+     * @return the number of entries removed
+     */
+    public int evictBefore(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        return evict(key, 0);
+    }
+
+    /**
+     * Removes the first n entries, or all of them if there are fewer,
+     * in O(log n + levels) rather than one delete each.  The prefix is
+     * cut off rather than unlinked node by node: a single descent
+     * finds the first index past it on each level, counting the
+     * entries passed by their span counts, and each becomes the
+     * successor of the head on its level.  The spans of those first
+     * indexes, which reached back into the prefix, are then
+     * recomputed bottom up as in link, each from the level below, so
+     * the repair costs the number of indexes under them rather than
+     * the width of the prefix.  Top levels left empty are dropped.
+     * The nodes and indexes cut off are left to the collector.
+     *
+     * @param n the number of entries to remove
+     * @return the number of entries removed
+     * @throws IllegalArgumentException if n is negative
+     */
+    public int evictFirst(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException();
+        return evict(null, n);
+    }
+
+    /**
+     * Cuts off the entries with keys less than key or, if key is
+     * null, the first n entries.
+     */
+    private int evict(Object key, int n) {
+        Comparator<? super K> cmp = comparator;
+        HeadIndex<K> h = head;
+        @SuppressWarnings("unchecked") Index<K>[] heads = (Index<K>[]) new Index<?>[h.level + 1];
+        @SuppressWarnings("unchecked") Index<K>[] firsts = (Index<K>[]) new Index<?>[h.level + 1];
+        Index<K> q = h, hj = h;
+        int j = h.level, base = 0, steps = 0;
+        for (Index<K> r = q.right, d; ; ) {
+            while (r != null &&
+                   (key != null ? cpr(cmp, key, r.node.key) > 0 : base + r.spanCount <= n)) {
+                base = base + r.spanCount;
+                q = r;
+                r = r.right;
+                if (SkipListMetrics.ENABLED)
+                    ++steps;
+            }
+            if (SkipListMetrics.ENABLED) {
+                metrics.steps(j, steps);
+                steps = 0;
+            }
+            heads[j] = hj;
+            firsts[j] = r;
+            if ((d = q.down) == null)
+                break;
+            q = d;
+            r = d.right;
+            hj = hj.down;
+            --j;
+        }
+        Node<K> f = q.node.next;
+        while (f != null && (key != null ? cpr(cmp, key, f.key) > 0 : base < n)) {
+            ++base;
+            f = f.next;
+            if (SkipListMetrics.ENABLED)
+                ++steps;
+        }
+        if (SkipListMetrics.ENABLED)
+            metrics.baseWalk(steps);
+        if (base == 0)
+            return 0;
+        h.node.updateNext(f);
+        for (j = 1; j <= h.level; ++j) {
+            Index<K> r = firsts[j];
+            heads[j].right = r;
+            if (r != null) {
+                int walked = r.aggregate(heads[j], spanAggregator);
+                if (SkipListMetrics.ENABLED)
+                    metrics.link(walked);
+            }
+        }
+        size -= base;
+        while (h.level > 1 && h.right == null)
+            h = (HeadIndex<K>) h.down;
+        updateHead(h);
+        return base;
+    }
+
+    /* ---------------- Batch updates -------------- */
+
+    /**
+     * The search path of a batch update, and the spans it has left
+     * stale.  preds[i] is the predecessor index found on level i for
+     * the last key of the batch; base is the base-level predecessor.
+     * Every stale index is recorded once, with an index known to lie
+     * to its left on the same level, from which its current
+     * predecessor is found again when the spans are repaired.
+     */
+    static final class Batch<K> {
+        final Index<K>[] preds;
+        int top;
+        Node<K> base;
+        final List<List<Index<K>>> stale = new ArrayList<>();
+        private final Aggregator.OfDouble<Object> agg;
+
+        @SuppressWarnings("unchecked")
+        Batch(HeadIndex<K> h, Aggregator.OfDouble<Object> agg) {
+            this.agg = agg;
+            preds = (Index<K>[]) new Index<?>[LevelGenerator.MAX_LEVEL + 2];
+            top = h.level;
+            Index<K> q = h;
+            for (int i = top; i >= 1; --i, q = q.down)
+                preds[i] = q;
+            base = h.node;
+        }
+
+        /**
+         * Moves the path to the given key, which is not less than the
+         * key of the previous call.  The path is climbed from the bottom
+         * to the first level whose successor is not less than key, and
+         * descended from there, so the cost depends on the distance
+         * from the previous key rather than on the size of the list.
+         * The path has then left behind every span below the level
+         * climbed to, so no later key of the batch falls in a stale
+         * one of them, and they are repaired there and then, while
+         * still likely to be in cache.
+         */
+        void seek(K key, Comparator<? super K> cmp) {
+            int i = 1;
+            for (Index<K> r; i < top && (r = preds[i].right) != null && cpr(cmp, r.node.key, key) < 0; )
+                ++i;
+            repair(i - 1);
+            Index<K> q = preds[i];
+            for (;;) {
+                for (Index<K> r; (r = q.right) != null && cpr(cmp, r.node.key, key) < 0; )
+                    q = r;
+                if (q != preds[i]) {
+                    preds[i] = q;
+                    base = q.node;
+                }
+                if (--i == 0)
+                    break;
+                q = q.down;
+                preds[i] = q;
+            }
+            for (Node<K> n; (n = base.next) != null && cpr(cmp, n.key, key) < 0; )
+                base = n;
+        }
+
+        /**
+         * Records that the span of idx, on the given level, is stale,
+         * pred being an index to its left.
+         */
+        void markStale(int level, Index<K> pred, Index<K> idx) {
+            if (idx.dirty)
+                return;
+            idx.dirty = true;
+            while (stale.size() < level)
+                stale.add(new ArrayList<>());
+            List<Index<K>> list = stale.get(level - 1);
+            list.add(pred);
+            list.add(idx);
+        }
+
+        /**
+         * Recomputes the stale spans on the lowest given number of
+         * levels, level by level from the bottom, so that each is
+         * composed from a level already repaired.
+         */
+        void repair(int levels) {
+            for (int i = 0, n = Math.min(levels, stale.size()); i < n; ++i) {
+                List<Index<K>> list = stale.get(i);
+                for (int k = 0; k < list.size(); k += 2) {
+                    Index<K> p = list.get(k), idx = list.get(k + 1);
+                    if (!idx.dirty)
+                        continue;              // unlinked since
+                    while (p.right != idx)
+                        p = p.right;
+                    idx.aggregate(p, agg);
+                    idx.dirty = false;
+                }
+                list.clear();
+            }
+        }
+    }
+
+    /**
+     * Inserts all the given entries, whose keys must be in ascending
+     * order (equal keys are allowed).
+     *
+     * The search for each key starts from the path of the previous
+     * one.  The spans covering a new node from above its tower are
+     * widened in place, as in insert, unless the aggregator is not
+     * commutative; the spans of the new indexes, and of the indexes
+     * they split, are left stale, and each is recomputed once, at the
+     * end of the batch, however many of the new entries it covers.
+     *
+     * Entries end up in the order that inserting them one by one would
+     * give them: each before the entries already present with an equal
+     * key, so that a run of equal keys in the batch is stored last
+     * first.
+     *
+     * @param keys the keys in ascending order
+     * @param values the value of each key
+     * @throws IllegalArgumentException if the keys are out of order, or
+     * the arrays differ in length, in which case the list is unchanged
+     */
+    public void insertAll(K[] keys, double[] values) {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("keys and values differ in length");
+        Comparator<? super K> cmp = comparator;
+        checkAscending(keys, cmp);
+        if (keys.length == 0)
+            return;
+        Batch<K> batch = new Batch<>(head, spanAggregator);
+        for (int k = 0, j; k < keys.length; k = j + 1) {
+            // a run of equal keys is inserted last first, each after
+            // the one before, so that it ends up in the order that
+            // inserting its entries one by one would give
+            for (j = k; j + 1 < keys.length && cpr(cmp, keys[j + 1], keys[k]) == 0; )
+                ++j;
+            for (int m = j; m >= k; --m)
+                insertAfterPath(batch, keys[m], values[m], cmp);
+        }
+        batch.repair(batch.top);
+    }
+
+    /**
+     * Inserts one entry of insertAll, after the last node of the path
+     * with a key not greater than key.
+     */
+    private void insertAfterPath(Batch<K> batch, K key, double value, Comparator<? super K> cmp) {
+        batch.seek(key, cmp);
+        Node<K> b = batch.base;
+        Node<K> z = new Node<>(key, value, b.next);
+        b.updateNext(z);
+        batch.base = z;
+        size++;
+        int level = levelGenerator.nextLevel();
+        Index<K> idx = null;
+        for (int i = 1; i <= batch.top; ++i) {
+            Index<K> q = batch.preds[i], r = q.right;
+            if (i <= level) {
+                idx = newIndex(z, idx, r, aggregator);
+                q.right = idx;
+                batch.markStale(i, q, idx);
+                if (r != null)
+                    batch.markStale(i, idx, r);
+                batch.preds[i] = idx;
+            } else if (r != null && !r.dirty && !r.widen(value, spanAggregator)) { // widen in place
+                batch.markStale(i, q, r);
+            }
+        }
+        if (level > batch.top) { // grow by one level
+            HeadIndex<K> h = head;
+            idx = newIndex(z, idx, null, aggregator);
+            HeadIndex<K> nh = new HeadIndex<>(h.node, h, idx, h.level + 1);
+            updateHead(nh);
+            batch.top = nh.level;
+            batch.preds[nh.level] = idx;
+            batch.markStale(nh.level, nh, idx);
+        }
+    }
+
+    /**
+     * Removes one entry with each of the given keys, which must be in
+     * ascending order.
+     *
+     * The search for each key starts from the path of the previous
+     * one.  Counts and sums are adjusted in place as entries go; a
+     * span whose min or max may have gone with a removed entry, or
+     * whose aggregate cannot be inverted, is recomputed once, at the
+     * end of the batch.
+     *
+     * @param keys the keys in ascending order
+     * @return the number of entries removed
+     * @throws IllegalArgumentException if the keys are out of order, in
+     * which case the list is unchanged
+     */
+    public int deleteAll(K[] keys) {
+        Comparator<? super K> cmp = comparator;
+        checkAscending(keys, cmp);
+        if (keys.length == 0)
+            return 0;
+        Batch<K> batch = new Batch<>(head, spanAggregator);
+        int removed = 0;
+        for (K key : keys) {
+            batch.seek(key, cmp);
+            Node<K> b = batch.base, n = b.next;
+            if (n == null || cpr(cmp, key, n.key) != 0)
+                continue;
+            n.setDeleted();
+            b.updateNext(n.next);
+            --size;
+            ++removed;
+            double v = n.value;
+            for (int i = 1; i <= batch.top; ++i) {
+                Index<K> q = batch.preds[i], r = q.right;
+                if (r == null)
+                    continue;
+                if (r.node == n) {
+                    Index<K> s = r.right;
+                    q.right = s;
+                    boolean stale = r.dirty;
+                    r.dirty = false;
+                    if (s != null && (stale || s.dirty || s.absorb(r, v, spanAggregator)))
+                        batch.markStale(i, q, s);
+                } else if (!r.dirty && r.narrow(v, spanAggregator)) {
+                    batch.markStale(i, q, r);
+                }
+            }
+        }
+        batch.repair(batch.top);
+        if (head.right == null)
+            tryReduceLevel();
+        return removed;
+    }
+
+    private static <K> void checkAscending(K[] keys, Comparator<? super K> cmp) {
+        for (int k = 0; k < keys.length; ++k) {
+            if (keys[k] == null)
+                throw new NullPointerException();
+            if (k > 0 && cpr(cmp, keys[k - 1], keys[k]) > 0)
+                throw new IllegalArgumentException("keys not in ascending order");
+        }
+    }
+
+    /* ---------------- Statistics -------------- */
+
+    /**
+     * Returns a snapshot of the shape of this list and of the counters
+     * recorded for it (see {@link SkipListMetrics}).  Each index level
+     * is walked to count its indexes, so this takes time linear in the
+     * number of indexes.
+     *
+     * @return the snapshot
+     */
+    public SkipListStats stats() {
+        HeadIndex<K> h = head;
+        long[] counts = new long[h.level + 1];
+        int j = h.level;
+        for (Index<K> q = h; q != null; q = q.down, --j) {
+            long c = 0;
+            for (Index<K> r = q.right; r != null; r = r.right)
+                ++c;
+            counts[j] = c;
+        }
+        return new SkipListStats(size, counts, metrics);
+    }
+
+    /* ---------------- Compaction -------------- */
+
+    /**
+     * Rebuilds the index levels over the current entries in the ideal
+     * shape for the level generator of this list (see
+     * {@link LevelGenerator#idealLevel}), with every span aggregated
+     * afresh, and drops the old levels.  After mass deletions this
+     * restores the height to log base 1/p of the size, and the spans to ones computed in
+     * a single left-to-right pass.
+     *
+     * The old levels stay in place, and queries running concurrently
+     * keep using them, until the new ones are installed with a single
+     * write of head.  Updates must not run concurrently, as this
+     * class is not thread-safe.
+     */
+    public void compact() {
+        Node<K> base = head.node;
+        IndexBuilder<K> builder = new IndexBuilder<>(base, aggregator, levelGenerator);
+        for (Node<K> n = base.next; n != null; n = n.next)
+            builder.add(n);
+        updateHead(builder.head());
+    }
+
+    /* ---------------- Bulk loading -------------- */
+
+    /**
+     * Creates a list holding the given entries, whose keys must be in
+     * ascending order (equal keys are allowed), in a single O(n) pass
+     * instead of n insertions.  The spans are computed as the levels
+     * are built, so no node is visited twice.
+     *
+     * @param keys the keys in ascending order
+     * @param values the value of each key
+     * @param comparator the comparator, or null for natural ordering
+     * @param <K> the type of keys
+     * @return the new list
+     * @throws IllegalArgumentException if the keys are out of order, or
+     * the arrays differ in length
+     */
+    public static <K> RangeQuerySkipList<K> bulkLoad(K[] keys, double[] values, Comparator<? super K> comparator) {
+        return bulkLoad(keys, values, comparator, SUMMARY);
+    }
+
+    /**
+     * Same as {@link #bulkLoad(Object[], double[], Comparator)}, for a
+     * list whose spans keep the aggregate of the given aggregator, as
+     * with {@link #RangeQuerySkipList(Comparator, Aggregator, LevelGenerator)}.
+     *
+     * @param keys the keys in ascending order
+     * @param values the value of each key
+     * @param comparator the comparator, or null for natural ordering
+     * @param aggregator the aggregator, or null for none
+     * @param <K> the type of keys
+     * @return the new list
+     * @throws IllegalArgumentException if the keys are out of order, or
+     * the arrays differ in length
+     */
+    public static <K> RangeQuerySkipList<K> bulkLoad(K[] keys, double[] values, Comparator<? super K> comparator,
+                                                     Aggregator<Double, ?> aggregator) {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("keys and values differ in length");
+        RangeQuerySkipList<K> list = new RangeQuerySkipList<>(comparator, aggregator, LevelGenerator.DEFAULT);
+        Node<K> b = list.head.node;
+        IndexBuilder<K> builder = new IndexBuilder<>(b, list.aggregator, list.levelGenerator);
+        for (int i = 0; i < keys.length; ++i) {
+            K key = keys[i];
+            if (key == null)
+                throw new NullPointerException();
+            if (b.key != null && cpr(comparator, b.key, key) > 0)
+                throw new IllegalArgumentException("keys not in ascending order");
+            Node<K> z = new Node<>(key, values[i], null);
+            b.next = z;
+            b = z;
+            builder.add(z);
+        }
+        list.size = keys.length;
+        list.head = builder.head();
+        return list;
+    }
+
+    /**
+     * Builds the index levels over base nodes handed to it in order,
+     * bottom up, in a single pass.  The node at position i (counting
+     * from 1) gets {@link LevelGenerator#idealLevel} index levels.
+     * Each level accumulates the count and aggregate of the nodes (on
+     * the lowest index level) or spans (above it) seen since its last
+     * index; a new index takes over that accumulation as its span and
+     * passes it on to the level above.  Only the aggregates the list
+     * is configured with are accumulated: sum, min and max for
+     * {@link #summary()}, or the aggregate of any other aggregator.
+     */
+    static final class IndexBuilder<K> {
+        private static final int LEVELS = LevelGenerator.MAX_LEVEL + 2;
+        private final Aggregator<Double, ?> aggregator;
+        private final Aggregator.OfDouble<Object> agg;
+        private final LevelGenerator levelGenerator;
+        private HeadIndex<K> head;
+        @SuppressWarnings("unchecked")
+        private final Index<K>[] last = (Index<K>[]) new Index<?>[LEVELS];
+        private final int[] count = new int[LEVELS];
+        private final double[] sum;
+        private final double[] min;
+        private final double[] max;
+        private final Object[] spans;
+        private int position;
+
+        IndexBuilder(Node<K> base, Aggregator<Double, ?> aggregator, LevelGenerator levelGenerator) {
+            this.aggregator = aggregator;
+            this.agg = spanAggregator(aggregator);
+            this.levelGenerator = levelGenerator;
+            last[1] = head = new HeadIndex<>(base, null, null, 1);
+            if (aggregator == SUMMARY) {
+                sum = new double[LEVELS];
+                min = new double[LEVELS];
+                max = new double[LEVELS];
+                Arrays.fill(min, Double.MAX_VALUE);
+                Arrays.fill(max, -Double.MAX_VALUE);
+            } else {
+                sum = min = max = null;
+            }
+            if (agg == null) {
+                spans = null;
+            } else {
+                spans = new Object[LEVELS];
+                Arrays.fill(spans, agg.identity());
+            }
+        }
+
+        void add(Node<K> n) {
+            count[1]++;
+            if (sum != null) {
+                sum[1] = sum[1] + n.value;
+                min[1] = Math.min(min[1], n.value);
+                max[1] = Math.max(max[1], n.value);
+            } else if (spans != null) {
+                spans[1] = agg.combine(spans[1], agg.lift(n.value));
+            }
+            int level = levelGenerator.idealLevel(++position);
+            Index<K> idx = null;
+            for (int i = 1; i <= level; ++i) {
+                idx = newIndex(n, idx, null, aggregator);
+                idx.spanCount = count[i];
+                count[i + 1] = count[i + 1] + count[i];
+                count[i] = 0;
+                if (sum != null) {
+                    SummaryIndex<K> t = (SummaryIndex<K>) idx;
+                    t.spanSum = sum[i];
+                    t.spanMin = min[i];
+                    t.spanMax = max[i];
+                    sum[i + 1] = sum[i + 1] + sum[i];
+                    min[i + 1] = Math.min(min[i + 1], min[i]);
+                    max[i + 1] = Math.max(max[i + 1], max[i]);
+                    sum[i] = 0;
+                    min[i] = Double.MAX_VALUE;
+                    max[i] = -Double.MAX_VALUE;
+                } else if (spans != null) {
+                    ((AggregateIndex<K>) idx).span = spans[i];
+                    spans[i + 1] = agg.combine(spans[i + 1], spans[i]);
+                    spans[i] = agg.identity();
+                }
+                if (i > head.level)
+                    last[i] = head = new HeadIndex<>(head.node, head, null, i);
+                last[i].right = idx;
+                last[i] = idx;
+            }
+        }
+
+        HeadIndex<K> head() {
+            return head;
+        }
+    }
+
     public RangeQuerySkipList() {
-        this.comparator = null;
-        initialize();
+        this(null, LevelGenerator.DEFAULT);
     }
 
     public RangeQuerySkipList(Comparator<? super K> comparator) {
+        this(comparator, LevelGenerator.DEFAULT);
+    }
+
+    public RangeQuerySkipList(LevelGenerator levelGenerator) {
+        this(null, levelGenerator);
+    }
+
+    public RangeQuerySkipList(Comparator<? super K> comparator, LevelGenerator levelGenerator) {
+        this(comparator, SUMMARY, levelGenerator);
+    }
+
+    /**
+     * Creates a list whose spans keep, besides the count of their
+     * nodes, the aggregate of the given aggregator, which
+     * {@link #rangeQuery(Object, Object, Aggregator)} then finds for
+     * any key range in O(log n).  The other constructors use
+     * {@link #summary()}, the aggregator that the methods returning a
+     * {@link RangeQueryResult}, and {@link #findByPrefixSum}, read
+     * from the spans; on a list configured with any other, or with
+     * none, those methods combine the values one by one instead.
+     *
+     * @param comparator the comparator, or null for natural ordering
+     * @param aggregator the aggregator, or null for none
+     * @param levelGenerator the level generator
+     */
+    public RangeQuerySkipList(Comparator<? super K> comparator, Aggregator<Double, ?> aggregator,
+                              LevelGenerator levelGenerator) {
+        if (levelGenerator == null)
+            throw new NullPointerException();
         this.comparator = comparator;
+        this.aggregator = aggregator;
+        this.spanAggregator = spanAggregator(aggregator);
+        this.levelGenerator = levelGenerator;
         initialize();
     }
 
+    /**
+     * The aggregator keeping count, sum, min and max; see summary().
+     */
+    private static final Aggregator.OfDouble<RangeQueryResult> SUMMARY = new Aggregator.OfDouble<RangeQueryResult>() {
+        public RangeQueryResult identity() {
+            return new RangeQueryResult(0, 0, Double.MAX_VALUE, -Double.MAX_VALUE);
+        }
+
+        public RangeQueryResult lift(double value) {
+            return new RangeQueryResult(1, value, value, value);
+        }
+
+        public RangeQueryResult combine(RangeQueryResult left, RangeQueryResult right) {
+            return new RangeQueryResult(left.count + right.count, left.sum + right.sum,
+                                        Math.min(left.min, right.min), Math.max(left.max, right.max));
+        }
+
+        public boolean isCommutative() {
+            return true;
+        }
+    };
+
+    /**
+     * Returns the aggregator keeping count, sum, min and max of double
+     * values, as a {@link RangeQueryResult}.  A list configured with
+     * it, as lists are by default, keeps them in primitive fields of
+     * its indexes rather than as aggregate objects, and answers
+     * {@link #rangeQuery(Object, Object)}, {@link #prefixAggregate}
+     * and {@link #findByPrefixSum} from its spans.
+     *
+     * @return the aggregator
+     */
+    public static Aggregator<Double, RangeQueryResult> summary() {
+        return SUMMARY;
+    }
+
     public static class RangeQueryResult {
         private int count;
         private double sum;
@@ -715,17 +1996,8 @@ public class RangeQuerySkipList<K> {
         }
     }
 
-    private static List<Integer> randomList = new ArrayList<>(Arrays.asList(66, 66, 88, 0, 43, 15, 72, 65, 65, 84, 96,
-            10, 31, 70, 82, 2, 61, 15, 50, 52, 65, 4, 66, 99, 37, 59, 53, 75, 60, 33, 21, 96, 74, 56, 20, 96, 75, 94,
-            15, 97, 80, 26, 26, 29, 67, 60, 47, 71, 98, 63, 79, 8, 72, 59, 90, 63, 28, 83, 2, 14, 19, 44, 5, 85, 66, 49,
-            44, 38, 15, 69, 42, 82, 20, 50, 85, 27, 20, 2, 11, 16, 67, 64, 46, 71, 90, 84, 41, 70, 26, 47, 39, 67, 96,
-            25, 66, 17, 94, 99, 72, 71));
-    private static int randomIndex = 0;
-    public static int getRandom() {
-        return randomList.get(randomIndex++);
-    }
     public static void main(String[] args) {
-        RangeQuerySkipList<Integer> list = new RangeQuerySkipList<>();
+        RangeQuerySkipList<Integer> list = new RangeQuerySkipList<>(LevelGenerator.seeded(66, 0.5));
         list.insert(60, 12.0);
         list.insert(20, 6.0);
         list.insert(10, 15.0);
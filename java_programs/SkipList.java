@@ -1,24 +1,52 @@
 package com.spicdt.party.admin.biz.publish.service;
 
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class SkipList<V> {
+public class SkipList<V> implements Iterable<V> {
 
     /**
      * The topmost head index of the skiplist.
      */
     private transient volatile HeadIndex<V> head;
 
+    /**
+     * Element count, updated at the linearization point of each
+     * insert and delete.
+     */
+    private final LongAdder adder = new LongAdder();
+
+    /**
+     * Traversal counters and latencies, or null unless
+     * SkipListMetrics.ENABLED.
+     */
+    private final SkipListMetrics metrics = SkipListMetrics.ENABLED ? new SkipListMetrics() : null;
+
     final Comparator<? super V> comparator;
 
+    final LevelGenerator levelGenerator;
+
     private void initialize() {
         head = new HeadIndex<V>(new Node<V>(null, null),
                                   null, null, 1);
     }
 
-    private void updateHead(HeadIndex<V> val) {
-        this.head = val;
+    /**
+     * compareAndSet head node
+     */
+    private boolean casHead(HeadIndex<V> cmp, HeadIndex<V> val) {
+        return HEAD.compareAndSet(this, cmp, val);
     }
 
     /* ---------------- Nodes -------------- */
@@ -26,10 +54,18 @@ public class SkipList<V> {
     /**
      * Nodes hold keys , and are singly linked in sorted
      * order. The list is headed by a dummy node accessible as head.node.
+     *
+     * A node is deleted by appending a marker node to it: a marker is
+     * a node with a null value, and a node whose next field holds a
+     * marker is logically deleted.  Because the marker takes the
+     * place of the successor, a concurrent insertion after a deleted
+     * node cannot succeed (its CAS of next fails), so no insertion is
+     * ever lost.  The base header also has a null value, but it is
+     * never reachable through a next field, so it is never mistaken
+     * for a marker.
      */
     static final class Node<V> {
         final V value;
-        volatile boolean deleted;
         volatile Node<V> next;
 
         /**
@@ -40,15 +76,40 @@ public class SkipList<V> {
             this.next = next;
         }
 
-        void setDeleted() {
-            this.deleted = true;
+        /**
+         * Creates a new marker node.
+         */
+        Node(Node<V> next) {
+            this.value = null;
+            this.next = next;
+        }
+
+        /**
+         * compareAndSet next field
+         */
+        boolean casNext(Node<V> cmp, Node<V> val) {
+            return NEXT.compareAndSet(this, cmp, val);
         }
 
-        void updateNext(Node<V> val) {
-            this.next = val;
+        /**
+         * Returns true if this node is a marker node.
+         */
+        boolean isMarker() {
+            return value == null;
         }
 
+        /**
+         * Returns true if this node has been logically deleted,
+         * that is, if its successor is a marker.
+         */
+        boolean isDeleted() {
+            Node<V> f = next;
+            return f != null && f.value == null;
+        }
 
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
     }
 
     /* ---------------- Indexing -------------- */
@@ -75,31 +136,39 @@ public class SkipList<V> {
         }
 
         /**
-         * Set right field
+         * compareAndSet right field
          */
-        final void updateRight(Index<V> val) {
-            this.right = val;
+        final boolean casRight(Index<V> cmp, Index<V> val) {
+            return RIGHT.compareAndSet(this, cmp, val);
         }
 
         /**
-         * Set newSucc as successor.
+         * Tries to CAS newSucc as successor.  Fails (forcing a retry
+         * by the caller) if this index's node has been deleted.
          * @param succ the expected current successor
          * @param newSucc the new successor
+         * @return true if successful
          */
-        final void link(Index<V> succ, Index<V> newSucc) {
+        final boolean link(Index<V> succ, Index<V> newSucc) {
+            Node<V> n = node;
             newSucc.right = succ;
-            updateRight(newSucc);
+            return !n.isDeleted() && casRight(succ, newSucc);
         }
 
         /**
-         * Tries to set right field to skip over apparent successor
-         * succ.
-         * @param succ the current successor
+         * Tries to CAS right field to skip over apparent successor
+         * succ.  Fails (forcing a retry by the caller) if this index's
+         * node has been deleted.
+         * @param succ the expected current successor
+         * @return true if successful
          */
-        final void unlink(Index<V> succ) {
-            updateRight(succ.right);
+        final boolean unlink(Index<V> succ) {
+            return !node.isDeleted() && casRight(succ, succ.right);
         }
 
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Index, Index> RIGHT =
+                AtomicReferenceFieldUpdater.newUpdater(Index.class, Index.class, "right");
     }
 
     /* ---------------- Head nodes -------------- */
@@ -133,34 +202,142 @@ public class SkipList<V> {
      * or the base-level header if there is no such node.  Also
      * unlinks indexes to deleted nodes found along the way.  Callers
      * rely on this side-effect of clearing indices to deleted nodes.
+     * Restarts from the top if an unlink fails because the
+     * predecessor index's own node was deleted concurrently.
      * @param key the key
      * @return a predecessor of key
      */
     private Node<V> findPredecessor(Object key, Comparator<? super V> cmp) {
         if (key == null)
             throw new NullPointerException(); // don't postpone errors
-        for (Index<V> q = head, r = q.right, d; ; ) {
-            if (r != null) {
-                Node<V> n = r.node;
-                V k = n.value;
-                if (n.deleted) {
-                    q.unlink(r);
-                    r = q.right;         // reread r
-                    continue;
+        for (;;) {
+            HeadIndex<V> h = head;
+            int j = h.level, steps = 0;
+            for (Index<V> q = h, r = q.right, d; ; ) {
+                if (r != null) {
+                    Node<V> n = r.node;
+                    V k = n.value;
+                    if (n.isDeleted()) {
+                        if (!q.unlink(r))
+                            break;           // restart
+                        r = q.right;         // reread r
+                        continue;
+                    }
+                    if (cpr(cmp, key, k) > 0) {
+                        q = r;
+                        r = r.right;
+                        if (SkipListMetrics.ENABLED)
+                            ++steps;
+                        continue;
+                    }
                 }
-                if (cpr(cmp, key, k) > 0) {
-                    q = r;
-                    r = r.right;
-                    continue;
+                if (SkipListMetrics.ENABLED) {
+                    metrics.steps(j--, steps);
+                    steps = 0;
+                }
+                if ((d = q.down) == null)
+                    return q.node;
+                q = d;
+                r = d.right;
+            }
+        }
+    }
+
+    /**
+     * The search path of the last operation of a batch or cursor: the
+     * predecessor index found on each level, and the head they were
+     * found under.  Used only by the thread running the batch or
+     * owning the cursor.
+     */
+    static final class Finger<V> {
+        HeadIndex<V> head;
+        @SuppressWarnings("unchecked")
+        final Index<V>[] preds = (Index<V>[]) new Index<?>[LevelGenerator.MAX_LEVEL + 2];
+    }
+
+    /**
+     * Same as {@link #findPredecessor(Object, Comparator)}, starting
+     * from the path of the previous call instead of from the head.
+     *
+     * The finger is climbed from the bottom until it reaches a level
+     * whose predecessor is still usable for key: its node is neither
+     * deleted nor at or after key, and its successor is neither
+     * deleted nor less than key.  The search then descends from there
+     * as usual, recording the new path, so a key near the previous one,
+     * on either side of it, is found in time logarithmic in the
+     * distance between them rather than in the size of the list.
+     * Levels above the one climbed to keep their predecessors, which
+     * are therefore only a hint for keys other than the last one
+     * searched.  If the head has changed since the previous call, or
+     * an unlink fails, the search starts over from the head.
+     *
+     * @param key the key
+     * @param f the finger
+     * @return a predecessor of key
+     */
+    private Node<V> findPredecessor(Object key, Comparator<? super V> cmp, Finger<V> f) {
+        if (key == null)
+            throw new NullPointerException(); // don't postpone errors
+        for (;;) {
+            HeadIndex<V> h = head;
+            Index<V> q = h;
+            int j = h.level, steps = 0;
+            if (f.head == h) {
+                for (int i = 1; i <= j; ++i) {
+                    Index<V> p = f.preds[i], r;
+                    if (p.node.isDeleted() || !precedes(p, key, cmp))
+                        continue;
+                    if ((r = p.right) == null ||
+                        (!r.node.isDeleted() && cpr(cmp, key, r.node.value) <= 0)) {
+                        q = p;
+                        j = i;
+                        break;
+                    }
+                }
+            }
+            f.head = h;
+            for (Index<V> r = q.right, d; ; ) {
+                if (r != null) {
+                    Node<V> n = r.node;
+                    V k = n.value;
+                    if (n.isDeleted()) {
+                        if (!q.unlink(r))
+                            break;           // restart
+                        r = q.right;         // reread r
+                        continue;
+                    }
+                    if (cpr(cmp, key, k) > 0) {
+                        q = r;
+                        r = r.right;
+                        if (SkipListMetrics.ENABLED)
+                            ++steps;
+                        continue;
+                    }
+                }
+                if (SkipListMetrics.ENABLED) {
+                    metrics.steps(j, steps);
+                    steps = 0;
                 }
+                f.preds[j] = q;
+                if ((d = q.down) == null)
+                    return q.node;
+                q = d;
+                r = d.right;
+                --j;
             }
-            if ((d = q.down) == null)
-                return q.node;
-            q = d;
-            r = d.right;
+            f.head = null;
         }
     }
 
+    /**
+     * Returns true if the node of index q is before key: it is the
+     * base header, or holds a lesser key.
+     */
+    private static <V> boolean precedes(Index<V> q, Object key, Comparator<? super V> cmp) {
+        V k = q.node.value;
+        return k == null || cpr(cmp, key, k) > 0;
+    }
+
     /**
      * Returns node holding key or null if no such, clearing out any
      * deleted nodes seen along the way.  Repeatedly traverses at
@@ -171,14 +348,22 @@ public class SkipList<V> {
      *
      * Restarts occur, at traversal step centered on node n, if:
      *
-     *       n's value field is null, indicating n is deleted, in
+     *   (1) After reading n's next field, n is no longer assumed
+     *       predecessor b's current successor, which means that
+     *       we don't have a consistent 3-node snapshot and so cannot
+     *       unlink any subsequent deleted nodes encountered.
+     *
+     *   (2) n is a marker, indicating b is deleted, in which case we
+     *       cannot use b and must restart from a fresh predecessor.
+     *
+     *   (3) n's successor is a marker, indicating n is deleted, in
      *       which case we help out an ongoing structural deletion
      *       before retrying.  Even though there are cases where such
      *       unlinking doesn't require restart, they aren't sorted out
      *       here because doing so would not usually outweigh cost of
      *       restarting.
      *
-     * The traversal loops in doPut, doRemove all
+     * The traversal loops in insert, delete and findNode all
      * include the same three kinds of checks. They can't easily share code because each uses the
      * reads of fields held in locals occurring in the orders they
      * were performed.
@@ -191,53 +376,144 @@ public class SkipList<V> {
         if (key == null)
             throw new NullPointerException(); // don't postpone errors
         Comparator<? super V> cmp = comparator;
-        for (Node<V> b = findPredecessor(key, cmp), n = b.next; ; ) {
-            int c;
-            if (n == null)
-                break;
-            Node<V> f = n.next;
-            if ((c = cpr(cmp, key, n.value)) == 0)
-                return n;
-            if (c < 0)
-                break;
-            b = n;
-            n = f;
+        int walk = 0;
+        outer: for (;;) {
+            for (Node<V> b = findPredecessor(key, cmp), n = b.next; ; ) {
+                int c;
+                if (n == null)
+                    break outer;
+                Node<V> f = n.next;
+                if (n != b.next)                // inconsistent read
+                    break;
+                if (n.isMarker())               // b is deleted
+                    break;
+                if (f != null && f.isMarker()) { // n is deleted
+                    b.casNext(n, f.next);
+                    break;
+                }
+                if ((c = cpr(cmp, key, n.value)) == 0) {
+                    if (SkipListMetrics.ENABLED)
+                        metrics.baseWalk(walk);
+                    return n;
+                }
+                if (c < 0)
+                    break outer;
+                b = n;
+                n = f;
+                if (SkipListMetrics.ENABLED)
+                    ++walk;
+            }
         }
+        if (SkipListMetrics.ENABLED)
+            metrics.baseWalk(walk);
         return null;
     }
 
+    /**
+     * Returns true if this list contains the given key.
+     * @param key the key
+     * @return true if present
+     */
+    public boolean contains(Object key) {
+        if (!SkipListMetrics.ENABLED)
+            return findNode(key) != null;
+        long start = System.nanoTime();
+        boolean found = findNode(key) != null;
+        metrics.latency(SkipListMetrics.Op.QUERY, System.nanoTime() - start);
+        return found;
+    }
+
+    /**
+     * Returns the number of elements in this list.  The count is kept
+     * in a LongAdder, so this takes constant time, but under
+     * concurrent updates it is only an estimate: it is not an atomic
+     * snapshot of the list.
+     *
+     * @return the number of elements, or Integer.MAX_VALUE if greater
+     */
+    public int size() {
+        long n = adder.sum();
+        return (n >= Integer.MAX_VALUE) ? Integer.MAX_VALUE : (n < 0) ? 0 : (int) n;
+    }
+
 
     /**
      * Main insertion method.  Adds element if not present.
+     *
+     * The base-level node is spliced in with a CAS of its
+     * predecessor's next field, retrying from a fresh predecessor on
+     * failure.  Index nodes are then spliced in level by level, top
+     * down, each with a CAS of the predecessor index's right field.
+     * If the new node is deleted while its indexes are still being
+     * linked, the splicing is abandoned and findNode is called to
+     * clean up any indexes already linked.
      * @param key the key
      */
     public void insert(V key) {
-        Node<V> z;             // added node
         if (key == null)
             throw new NullPointerException();
-        Comparator<? super V> cmp = comparator;
-        for (Node<V> b = findPredecessor(key, cmp), n = b.next; ; ) {
-            if (n != null) {
-                Node<V> f = n.next;
-                if (cpr(cmp, key, n.value) > 0) {
-                    b = n;
-                    n = f;
-                    continue;
+        if (!SkipListMetrics.ENABLED) {
+            doInsert(key, comparator, null);
+            return;
+        }
+        long start = System.nanoTime();
+        doInsert(key, comparator, null);
+        metrics.latency(SkipListMetrics.Op.INSERT, System.nanoTime() - start);
+    }
+
+    /**
+     * Implements insert, searching from the given finger if not null,
+     * from the head otherwise.
+     */
+    private void doInsert(V key, Comparator<? super V> cmp, Finger<V> finger) {
+        Node<V> z;             // added node
+        int walk = 0;
+        outer: for (;;) {
+            for (Node<V> b = (finger == null) ? findPredecessor(key, cmp) : findPredecessor(key, cmp, finger),
+                 n = b.next; ; ) {
+                if (n != null) {
+                    Node<V> f = n.next;
+                    if (n != b.next)                // inconsistent read
+                        break;
+                    if (n.isMarker())               // b is deleted
+                        break;
+                    if (f != null && f.isMarker()) { // n is deleted
+                        b.casNext(n, f.next);
+                        break;
+                    }
+                    if (cpr(cmp, key, n.value) > 0) {
+                        b = n;
+                        n = f;
+                        if (SkipListMetrics.ENABLED)
+                            ++walk;
+                        continue;
+                    }
+                    // else c <= 0; fall through
                 }
-                // else c <= 0; fall through
-            }
 
-            z = new Node<>(key, n);
-            b.updateNext(z);
-            break;
+                z = new Node<>(key, n);
+                if (!b.casNext(n, z))
+                    break;         // restart if lost race to append to b
+                adder.increment();
+                if (SkipListMetrics.ENABLED)
+                    metrics.baseWalk(walk);
+                break outer;
+            }
         }
 
-        int rnd = ThreadLocalRandom.current().nextInt();
-//        if ((rnd & 0x80000001) == 0) { // test highest and lowest bits
-        if ((rnd & 0x00000001) == 0) { // test highest and lowest bits
-            int level = 1, max;
-            while (((rnd >>>= 1) & 1) != 0)
-                ++level;
+        addIndexes(z, cmp, finger);
+    }
+
+    /**
+     * Gives the base node z, just linked, a tower of indexes of a
+     * level drawn from the level generator, searching from the given
+     * finger if not null, from the head otherwise.
+     */
+    private void addIndexes(Node<V> z, Comparator<? super V> cmp, Finger<V> finger) {
+        V key = z.value;
+        int level = levelGenerator.nextLevel();
+        if (level > 0) {
+            int max;
             Index<V> idx = null;
             HeadIndex<V> h = head;
             if (level <= (max = h.level)) {
@@ -249,48 +525,87 @@ public class SkipList<V> {
                         (Index<V>[]) new Index<?>[level + 1];
                 for (int i = 1; i <= level; ++i)
                     idxs[i] = idx = new Index<>(z, idx, null);
-                int oldLevel = h.level;
-                Node<V> oldbase = h.node;
-                HeadIndex<V> newh = new HeadIndex<>(oldbase, h, idxs[level], level); // top level
-                updateHead(newh);
-                h = newh;
-                idx = idxs[level = oldLevel];
-            }
-            // find insertion points and splice in
-            int insertionLevel = level;
-            int j = h.level;
-            for (Index<V> q = h, r = q.right, t = idx; ; ) {
-                if (t == null)
-                    break;
-                if (r != null) {
-                    Node<V> n = r.node;
-                    // compare before deletion check avoids needing recheck
-                    int c = cpr(cmp, key, n.value);
-                    if (c > 0) {
-                        q = r;
-                        r = r.right;
-                        continue;
+                for (;;) {
+                    h = head;
+                    int oldLevel = h.level;
+                    if (level <= oldLevel) // lost race to add level
+                        break;
+                    HeadIndex<V> newh = h;
+                    Node<V> oldbase = h.node;
+                    for (int j = oldLevel + 1; j <= level; ++j)
+                        newh = new HeadIndex<>(oldbase, newh, idxs[j], j);
+                    if (casHead(h, newh)) {
+                        h = newh;
+                        idx = idxs[level = oldLevel];
+                        break;
                     }
                 }
-
-                if (j == insertionLevel) {
-                    q.link(r, t);
-                    if (--insertionLevel == 0)
-                        break;
+            }
+            // find insertion points and splice in, from the finger if
+            // it is still usable, from the head otherwise
+            Index<V> start = null;
+            if (finger != null && finger.head == h && !finger.preds[level].node.isDeleted() &&
+                precedes(finger.preds[level], key, cmp))
+                start = finger.preds[level];
+            splice: for (int insertionLevel = level; ; ) {
+                int j = h.level;
+                Index<V> q = h;
+                if (start != null) {
+                    j = level;
+                    q = start;
+                    start = null;
                 }
+                for (Index<V> r = q.right, t = idx; ; ) {
+                    if (q == null || t == null)
+                        break splice;
+                    if (r != null) {
+                        Node<V> n = r.node;
+                        // compare before deletion check avoids needing recheck
+                        int c = cpr(cmp, key, n.value);
+                        if (n.isDeleted()) {
+                            if (!q.unlink(r))
+                                break;
+                            r = q.right;
+                            continue;
+                        }
+                        if (c > 0) {
+                            q = r;
+                            r = r.right;
+                            continue;
+                        }
+                    }
+
+                    if (j == insertionLevel) {
+                        if (!q.link(r, t))
+                            break; // restart
+                        if (z.isDeleted()) {
+                            findNode(key);
+                            break splice;
+                        }
+                        if (--insertionLevel == 0)
+                            break splice;
+                    }
 
-                if (--j >= insertionLevel && j < level)
-                    t = t.down;
-                q = q.down;
-                r = q.right;
+                    if (--j >= insertionLevel && j < level)
+                        t = t.down;
+                    q = q.down;
+                    r = q.right;
+                }
             }
         }
     }
 
     /**
-     * Main deletion method. Locates node, unlinks predecessor, removes associated index
+     * Main deletion method. Locates node, appends a marker to it,
+     * unlinks it from its predecessor, removes associated index
      * nodes, and possibly reduces head index level.
      *
+     * Appending the marker is the point at which the deletion takes
+     * effect; a thread that loses the race to append it simply
+     * retries and will not find (this copy of) the key again.  If the
+     * subsequent unlink from the predecessor fails, findNode is
+     * called to help finish it.
+     *
      * Index nodes are cleared out simply by calling findPredecessor.
      * which unlinks indexes to deleted nodes found along path to key,
      * which will include the indexes to this node.  This is done
@@ -306,26 +621,64 @@ public class SkipList<V> {
     public final boolean delete(Object key) {
         if (key == null)
             throw new NullPointerException();
-        Comparator<? super V> cmp = comparator;
-        for (Node<V> b = findPredecessor(key, cmp), n = b.next; ; ) {
-            int c;
-            if (n == null)
-                break;
-            Node<V> f = n.next;
-            if ((c = cpr(cmp, key, n.value)) < 0)
-                break;
-            if (c > 0) {
-                b = n;
-                n = f;
-                continue;
+        if (!SkipListMetrics.ENABLED)
+            return doDelete(key, comparator, null);
+        long start = System.nanoTime();
+        boolean deleted = doDelete(key, comparator, null);
+        metrics.latency(SkipListMetrics.Op.DELETE, System.nanoTime() - start);
+        return deleted;
+    }
+
+    /**
+     * Implements delete, searching from the given finger if not null,
+     * from the head otherwise.
+     */
+    private boolean doDelete(Object key, Comparator<? super V> cmp, Finger<V> finger) {
+        int walk = 0;
+        outer: for (;;) {
+            for (Node<V> b = (finger == null) ? findPredecessor(key, cmp) : findPredecessor(key, cmp, finger),
+                 n = b.next; ; ) {
+                int c;
+                if (n == null)
+                    break outer;
+                Node<V> f = n.next;
+                if (n != b.next)                // inconsistent read
+                    break;
+                if (n.isMarker())               // b is deleted
+                    break;
+                if (f != null && f.isMarker()) { // n is deleted
+                    b.casNext(n, f.next);
+                    break;
+                }
+                if ((c = cpr(cmp, key, n.value)) < 0)
+                    break outer;
+                if (c > 0) {
+                    b = n;
+                    n = f;
+                    if (SkipListMetrics.ENABLED)
+                        ++walk;
+                    continue;
+                }
+                if (!n.casNext(f, new Node<V>(f)))
+                    break;             // lost race to mark n, retry
+                adder.decrement();
+                if (SkipListMetrics.ENABLED)
+                    metrics.baseWalk(walk);
+                if (!b.casNext(n, f))
+                    findNode(key);                  // retry via findNode
+                else {
+                    if (finger == null)             // clean index
+                        findPredecessor(key, cmp);
+                    else
+                        findPredecessor(key, cmp, finger);
+                    if (head.right == null)
+                        tryReduceLevel();
+                }
+                return true;
             }
-            n.setDeleted();
-            b.updateNext(f);
-            findPredecessor(key, cmp);      // clean index
-            if (head.right == null)
-                tryReduceLevel();
-            return true;
         }
+        if (SkipListMetrics.ENABLED)
+            metrics.baseWalk(walk);
         return false;
     }
 
@@ -335,7 +688,13 @@ public class SkipList<V> {
      * though they are about to contain index nodes. This impacts
      * performance, not correctness.  To minimize mistakes as well as
      * to reduce hysteresis, the level is reduced by one only if the
-     * topmost three levels look empty.
+     * topmost three levels look empty. Also, if the removed level
+     * looks non-empty after CAS, we try to change it back quick
+     * before anyone notices our mistake! (This trick works pretty
+     * well because this method will practically never make mistakes
+     * unless current thread stalls immediately before first CAS, in
+     * which case it is very unlikely to stall again immediately
+     * afterwards, so will recover.)
      *
      * We put up with all this rather than just let levels grow
      * because otherwise, even a small map that has undergone a large
@@ -352,18 +711,876 @@ public class SkipList<V> {
             (e = (HeadIndex<V>)d.down) != null &&
             e.right == null &&
             d.right == null &&
-            h.right == null)
-            updateHead(d);
+            h.right == null &&
+            casHead(h, d) && // try to set
+            h.right != null) // recheck
+            casHead(d, h);   // try to backout
+    }
+
+    /* ---------------- Batch updates -------------- */
+
+    /**
+     * Inserts all the given keys.  Each search starts from the path of
+     * the previous one (see {@link #findPredecessor(Object, Comparator, Finger)}),
+     * so a sorted or clustered batch costs time logarithmic in the
+     * gaps between consecutive keys rather than in the size of the
+     * list.  Each key is inserted atomically, as by {@link #insert};
+     * the batch as a whole is not.
+     *
+     * @param keys the keys, preferably in ascending order
+     */
+    public void insertAll(Iterable<? extends V> keys) {
+        Comparator<? super V> cmp = comparator;
+        Finger<V> finger = new Finger<>();
+        for (V key : keys) {
+            if (key == null)
+                throw new NullPointerException();
+            doInsert(key, cmp, finger);
+        }
+    }
+
+    /**
+     * Removes one element equal to each of the given keys, searching
+     * as {@link #insertAll} does.
+     *
+     * @param keys the keys, preferably in ascending order
+     * @return the number of elements removed
+     */
+    public int deleteAll(Iterable<?> keys) {
+        Comparator<? super V> cmp = comparator;
+        Finger<V> finger = new Finger<>();
+        int removed = 0;
+        for (Object key : keys) {
+            if (key == null)
+                throw new NullPointerException();
+            if (doDelete(key, cmp, finger))
+                removed++;
+        }
+        return removed;
+    }
+
+    /* ---------------- Cursors -------------- */
+
+    /**
+     * Returns a new cursor over this list, not positioned on any
+     * element.
+     *
+     * @return the cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /* Relations for findNear, as in ConcurrentSkipListMap */
+    private static final int EQ = 1;
+    private static final int LT = 2;
+    private static final int GT = 0; // Actually checked as !LT
+
+    /**
+     * A position in the list that remembers the search path that led
+     * to it, so that each seek starts from the previous one instead
+     * of from the head (see {@link #findPredecessor(Object, Comparator, Finger)}).
+     * A seek to a key at distance d from the current position, in
+     * either direction, takes expected time O(log d) rather than
+     * O(log n), which makes a cursor the cheaper way to run strongly
+     * local lookups such as merges, sorted probes or a sliding window.
+     *
+     * A cursor is not thread-safe, but the list may be updated
+     * concurrently while it is in use.  Like the iterators of
+     * ConcurrentSkipListMap, it is weakly consistent: it never throws
+     * ConcurrentModificationException, never returns an element twice
+     * when moving in one direction, and reflects each concurrent
+     * update at or after the point it was made.  The element it is
+     * positioned on may be deleted in the meantime, in which case
+     * next moves to the next element equal to it that followed it, if
+     * any, or else searches again for the least element greater than
+     * its key, so that elements inserted since are not missed, and
+     * prev moves relative to its key.
+     */
+    public final class Cursor {
+        private final Finger<V> finger = new Finger<>();
+        private Node<V> node;
+
+        Cursor() {
+        }
+
+        /**
+         * Returns the element the cursor is positioned on, or null if
+         * it is not positioned on any.
+         *
+         * @return the current element, or null
+         */
+        public V key() {
+            Node<V> n = node;
+            return (n == null) ? null : n.value;
+        }
+
+        /**
+         * Positions the cursor on the least element greater than or
+         * equal to key.
+         *
+         * @param key the key
+         * @return true if there is such an element, false if the
+         *         cursor is no longer positioned
+         * @throws NullPointerException if key is null
+         */
+        public boolean seek(V key) {
+            return (node = findNear(key, GT | EQ, finger)) != null;
+        }
+
+        /**
+         * Positions the cursor on the least element.
+         *
+         * @return true if the list is not empty
+         */
+        public boolean seekFirst() {
+            return (node = findFirst()) != null;
+        }
+
+        /**
+         * Positions the cursor on the greatest element.
+         *
+         * @return true if the list is not empty
+         */
+        public boolean seekLast() {
+            return (node = findLast()) != null;
+        }
+
+        /**
+         * Moves the cursor to the next element.
+         *
+         * @return true if there is a next element, false if the
+         *         cursor was not positioned or was on the greatest
+         *         element, and is no longer positioned
+         */
+        public boolean next() {
+            Node<V> b = node;
+            if (b == null)
+                return false;
+            Node<V> n = b.next;
+            if (!b.isDeleted())
+                return (node = nextLive(n, null)) != null;
+            // b's links are frozen since its marker was appended, so
+            // they still lead past b to the elements equal to it that
+            // followed it, but not to any element inserted after it
+            // since, which is found by a search for its key.
+            n = nextLive(n, null);
+            if (n != null && cpr(comparator, n.value, b.value) == 0)
+                return (node = n) != null;
+            return (node = findNear(b.value, GT, finger)) != null;
+        }
+
+        /**
+         * Moves the cursor to the previous element.  The list is
+         * singly linked, so this is a finger search for the current
+         * element followed by a walk over the elements equal to it,
+         * which takes constant expected time plus the number of equal
+         * elements before it.  If the current element has been deleted
+         * and unlinked, its place among equal elements is lost, and
+         * the cursor moves to the greatest element less than it.
+         *
+         * @return true if there is a previous element, false if the
+         *         cursor was not positioned or was on the least
+         *         element, and is no longer positioned
+         */
+        public boolean prev() {
+            Node<V> b = node;
+            if (b == null)
+                return false;
+            Comparator<? super V> cmp = comparator;
+            for (;;) {
+                Node<V> p = findPredecessor(b.value, cmp, finger), n;
+                if (p.isDeleted())
+                    continue;
+                Node<V> last = (p.value == null) ? null : p;
+                for (n = p.next; n != null && n != b; n = n.next) {
+                    if (n.isMarker() || n.isDeleted())
+                        continue;
+                    if (cpr(cmp, n.value, b.value) > 0)
+                        break;
+                    last = n;
+                }
+                if (n == b)
+                    return (node = last) != null;
+                if (b.isDeleted())
+                    return (node = findNear(b.value, LT, finger)) != null;
+            }
+        }
+    }
+
+    /**
+     * Utility for cursors and views: returns the node nearest to key
+     * with the given relation to it (LT, GT or GT|EQ), or null if
+     * there is no such node, searching from the given finger if not
+     * null, from the head otherwise.
+     */
+    private Node<V> findNear(V key, int rel, Finger<V> finger) {
+        if (key == null)
+            throw new NullPointerException();
+        Comparator<? super V> cmp = comparator;
+        for (;;) {
+            for (Node<V> b = (finger == null) ? findPredecessor(key, cmp) : findPredecessor(key, cmp, finger),
+                 n = b.next; ; ) {
+                if (n == null)
+                    return ((rel & LT) == 0 || b.value == null) ? null : b;
+                Node<V> f = n.next;
+                if (n != b.next)                // inconsistent read
+                    break;
+                if (n.isMarker())               // b is deleted
+                    break;
+                if (f != null && f.isMarker()) { // n is deleted
+                    b.casNext(n, f.next);
+                    break;
+                }
+                int c = cpr(cmp, key, n.value);
+                if ((c == 0 && (rel & EQ) != 0) ||
+                    (c < 0 && (rel & LT) == 0))
+                    return n;
+                if (c <= 0 && (rel & LT) != 0)
+                    return (b.value == null) ? null : b;
+                b = n;
+                n = f;
+            }
+        }
+    }
+
+    /**
+     * Returns the first live node, or null if the list is empty.
+     */
+    private Node<V> findFirst() {
+        for (Node<V> b = head.node, n; (n = b.next) != null; ) {
+            Node<V> f = n.next;
+            if (n != b.next)                    // inconsistent read
+                continue;
+            if (f != null && f.isMarker()) {    // n is deleted
+                b.casNext(n, f.next);
+                continue;
+            }
+            return n;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the last live node, or null if the list is empty.
+     * Descends along the right edge of the index levels, then walks
+     * the base level, restarting from the head if it runs into a
+     * deleted node.
+     */
+    private Node<V> findLast() {
+        Index<V> q = head;
+        for (;;) {
+            Index<V> d, r;
+            if ((r = q.right) != null) {
+                if (r.node.isDeleted()) {
+                    q.unlink(r);
+                    q = head; // restart
+                }
+                else
+                    q = r;
+            } else if ((d = q.down) != null) {
+                q = d;
+            } else {
+                for (Node<V> b = q.node, n = b.next; ; ) {
+                    if (n == null)
+                        return (b.value == null) ? null : b;
+                    Node<V> f = n.next;
+                    if (n != b.next)               // inconsistent read
+                        break;
+                    if (n.isMarker())              // b is deleted
+                        break;
+                    if (f != null && f.isMarker()) { // n is deleted
+                        b.casNext(n, f.next);
+                        break;
+                    }
+                    b = n;
+                    n = f;
+                }
+                q = head; // restart
+            }
+        }
+    }
+
+    /* ---------------- Iteration -------------- */
+
+    /**
+     * Returns an iterator over the elements in ascending order.  Like
+     * those of ConcurrentSkipListMap, the iterator is weakly
+     * consistent: it never throws ConcurrentModificationException,
+     * and may or may not reflect updates made after it was created.
+     *
+     * @return an iterator over the elements
+     */
+    @Override
+    public Iterator<V> iterator() {
+        return new Iter(findFirst(), null);
+    }
+
+    /**
+     * Returns a spliterator over the elements in ascending order,
+     * weakly consistent like {@link #iterator}.  It splits at index
+     * nodes, near the middle of its key range (see
+     * {@link Splitter#trySplit}), so that a parallel stream over a
+     * large list is shared out evenly among threads.  Its size
+     * estimate is {@link #size}, halved at each split.
+     *
+     * @return a spliterator over the elements
+     */
+    @Override
+    public Spliterator<V> spliterator() {
+        return new Splitter(head, findFirst(), null, adder.sum());
+    }
+
+    /**
+     * Returns a sequential stream over the elements in ascending
+     * order.
+     *
+     * @return the stream
+     */
+    public Stream<V> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel stream over the elements, split as described
+     * in {@link #spliterator}.
+     *
+     * @return the stream
+     */
+    public Stream<V> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Returns the first live node from n on, skipping markers and
+     * deleted nodes, or null if there is none before the exclusive
+     * bound hi (null for no bound).
+     */
+    private Node<V> nextLive(Node<V> n, V hi) {
+        while (n != null && (n.isMarker() || n.isDeleted()))
+            n = n.next;
+        return (n == null || (hi != null && cpr(comparator, n.value, hi) >= 0)) ? null : n;
+    }
+
+    /**
+     * Iterator over the base level, up to an optional exclusive bound.
+     */
+    final class Iter implements Iterator<V> {
+        /** the exclusive upper bound, or null if none */
+        private final V hi;
+        /** the next node to return, or null if none */
+        private Node<V> next;
+        /** the node last returned by next, for remove */
+        private Node<V> lastReturned;
+
+        Iter(Node<V> origin, V hi) {
+            this.hi = hi;
+            this.next = nextLive(origin, hi);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public V next() {
+            Node<V> n = next;
+            if (n == null)
+                throw new NoSuchElementException();
+            lastReturned = n;
+            next = nextLive(n.next, hi);
+            return n.value;
+        }
+
+        /**
+         * Deletes an element equal to the one last returned, as by
+         * {@link SkipList#delete}; with duplicate keys, that need not
+         * be the same element.
+         */
+        @Override
+        public void remove() {
+            Node<V> l = lastReturned;
+            if (l == null)
+                throw new IllegalStateException();
+            delete(l.value);
+            lastReturned = null;
+        }
+    }
+
+    /**
+     * The number of indexes a spliterator wants to choose its split
+     * point from.  Fewer make splits cheaper but the halves less
+     * even, since the gaps between indexes vary widely and only their
+     * sum over many indexes is predictable.
+     */
+    private static final int SPLIT_INDEXES = 64;
+
+    /**
+     * Spliterator over the base level, up to an optional exclusive
+     * bound, that splits at index nodes.
+     */
+    final class Splitter implements Spliterator<V> {
+        /** an index at or before current, from which to look for a split */
+        private Index<V> row;
+        /** the next node to visit, or null if none */
+        private Node<V> current;
+        /** the exclusive upper bound, or null if none */
+        private final V fence;
+        /** the size estimate */
+        private long est;
+
+        Splitter(Index<V> row, Node<V> origin, V fence, long est) {
+            this.row = row;
+            this.fence = fence;
+            this.current = nextLive(origin, fence);
+            this.est = est;
+        }
+
+        /**
+         * Splits off the lower half of the remaining key range.
+         *
+         * Descends from row to the highest level holding at least
+         * SPLIT_INDEXES live indexes strictly between the current key
+         * and the fence (or to the lowest level holding any), and
+         * splits at the middle one.  The gaps between indexes on a
+         * level are random, but their sum over many of them is not
+         * far from proportional to their count, so the two halves
+         * cover about the same number of elements.  Each level is
+         * scanned only over the range, which holds a bounded expected
+         * number of its indexes since the level above held too few,
+         * so a split takes expected time logarithmic in the size of
+         * the list.
+         */
+        @Override
+        public Spliterator<V> trySplit() {
+            Comparator<? super V> cmp = comparator;
+            Node<V> e = current;
+            if (e == null)
+                return null;
+            V k = e.value, ek = fence;
+            for (Index<V> q = row; q != null; q = q.down) {
+                int m = 0;
+                for (Index<V> s = q.right; s != null; s = s.right) {
+                    Node<V> n = s.node;
+                    if (ek != null && cpr(cmp, n.value, ek) >= 0)
+                        break;
+                    if (cpr(cmp, n.value, k) <= 0)
+                        q = s;                 // keep q at or before k
+                    else if (!n.isDeleted())
+                        ++m;
+                }
+                if (m < SPLIT_INDEXES && (m == 0 || q.down != null))
+                    continue;
+                Index<V> split = null;
+                for (Index<V> s = q.right; s != null; s = s.right) {
+                    Node<V> n = s.node;
+                    if (ek != null && cpr(cmp, n.value, ek) >= 0)
+                        break;
+                    if (cpr(cmp, n.value, k) > 0 && !n.isDeleted()) {
+                        split = s;
+                        if ((m -= 2) <= 0)
+                            break;
+                    }
+                }
+                if (split == null)             // emptied concurrently
+                    return null;
+                V sk = split.node.value;
+                Splitter prefix = new Splitter(q, e, sk, est >>> 1);
+                // equal keys may precede the split node, so search for sk
+                row = split;
+                current = nextLive(findNear(sk, GT | EQ, null), ek);
+                est -= est >>> 1;
+                return prefix;
+            }
+            return null;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            Node<V> e = current;
+            if (e == null)
+                return false;
+            current = nextLive(e.next, fence);
+            action.accept(e.value);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            Node<V> e = current;
+            current = null;
+            for (; e != null; e = nextLive(e.next, fence))
+                action.accept(e.value);
+        }
+
+        @Override
+        public long estimateSize() {
+            return est;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SORTED |
+                   Spliterator.NONNULL | Spliterator.CONCURRENT;
+        }
+
+        @Override
+        public Comparator<? super V> getComparator() {
+            return comparator;
+        }
+    }
+
+    /* ---------------- Views -------------- */
+
+    /**
+     * Returns a view of the elements less than toKey.
+     *
+     * @param toKey the exclusive upper bound
+     * @return the view
+     * @throws NullPointerException if toKey is null
+     */
+    public SubSet headSet(V toKey) {
+        if (toKey == null)
+            throw new NullPointerException();
+        return new SubSet(null, toKey);
+    }
+
+    /**
+     * Returns a view of the elements greater than or equal to fromKey.
+     *
+     * @param fromKey the inclusive lower bound
+     * @return the view
+     * @throws NullPointerException if fromKey is null
+     */
+    public SubSet tailSet(V fromKey) {
+        if (fromKey == null)
+            throw new NullPointerException();
+        return new SubSet(fromKey, null);
+    }
+
+    /**
+     * Returns a view of the elements from fromKey, inclusive, to
+     * toKey, exclusive.
+     *
+     * @param fromKey the inclusive lower bound
+     * @param toKey the exclusive upper bound
+     * @return the view
+     * @throws NullPointerException if either key is null
+     * @throws IllegalArgumentException if fromKey is greater than toKey
+     */
+    public SubSet subSet(V fromKey, V toKey) {
+        if (fromKey == null || toKey == null)
+            throw new NullPointerException();
+        if (cpr(comparator, fromKey, toKey) > 0)
+            throw new IllegalArgumentException("fromKey > toKey");
+        return new SubSet(fromKey, toKey);
+    }
+
+    /**
+     * An ascending view of the elements in a key range, backed by the
+     * list: updates to either are visible through the other.  Its
+     * iterator and spliterator are weakly consistent, like those of
+     * the list.  Unlike {@link SkipList#size}, size traverses the
+     * range, and the spliterator's size estimate is that of the whole
+     * list.  Adding a key outside the range throws
+     * IllegalArgumentException.
+     */
+    public final class SubSet extends AbstractCollection<V> {
+        /** the inclusive lower bound, or null if none */
+        private final V lo;
+        /** the exclusive upper bound, or null if none */
+        private final V hi;
+
+        SubSet(V lo, V hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        private boolean inRange(Object key) {
+            return (lo == null || cpr(comparator, key, lo) >= 0) &&
+                   (hi == null || cpr(comparator, key, hi) < 0);
+        }
+
+        /**
+         * Returns the first node in range, which may be out of range
+         * above hi; callers apply the bound through nextLive.
+         */
+        private Node<V> origin() {
+            return (lo == null) ? findFirst() : findNear(lo, GT | EQ, null);
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new Iter(origin(), hi);
+        }
+
+        @Override
+        public Spliterator<V> spliterator() {
+            return new Splitter(head, origin(), hi, adder.sum());
+        }
+
+        @Override
+        public int size() {
+            long count = 0;
+            for (Node<V> n = nextLive(origin(), hi); n != null; n = nextLive(n.next, hi))
+                ++count;
+            return (count >= Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) count;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return nextLive(origin(), hi) == null;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return inRange(o) && SkipList.this.contains(o);
+        }
+
+        @Override
+        public boolean add(V key) {
+            if (key == null)
+                throw new NullPointerException();
+            if (!inRange(key))
+                throw new IllegalArgumentException("key out of range");
+            insert(key);
+            return true;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return inRange(o) && delete(o);
+        }
+    }
+
+    /* ---------------- Statistics -------------- */
+
+    /**
+     * Returns a snapshot of the shape of this list and of the counters
+     * recorded for it (see {@link SkipListMetrics}).  Each index level
+     * is walked to count its live indexes, so this takes time linear
+     * in the number of indexes.  Under concurrent updates, like
+     * {@link #size}, the snapshot is not atomic.
+     *
+     * @return the snapshot
+     */
+    public SkipListStats stats() {
+        HeadIndex<V> h = head;
+        long[] counts = new long[h.level + 1];
+        int j = h.level;
+        for (Index<V> q = h; q != null; q = q.down, --j) {
+            long c = 0;
+            for (Index<V> r = q.right; r != null; r = r.right)
+                if (!r.node.isDeleted())
+                    ++c;
+            counts[j] = c;
+        }
+        return new SkipListStats(size(), counts, metrics);
+    }
+
+    /* ---------------- Compaction -------------- */
+
+    /**
+     * Rebuilds the index levels over the current elements in the
+     * ideal shape for the level generator of this list (see
+     * {@link LevelGenerator#idealLevel}).  After mass deletions the
+     * levels left behind are taller than the remaining elements need
+     * (tryReduceLevel only drops a level once the top three are
+     * empty); this brings the height back to log base 1/p of the size
+     * and lets the old indexes be collected.
+     *
+     * The new levels are built aside, over the live base nodes, and
+     * published with a single write of head, so reads, inserts and
+     * deletes proceed on the old levels meanwhile, and no operation
+     * ever waits for the rebuild.  An element inserted while the
+     * rebuild runs may have its indexes linked into the old levels
+     * only, so once the new ones are published the base level is
+     * walked again, and each element the rebuild did not see is given
+     * indexes there (see indexLateInserts); this needs a list of the
+     * elements seen, kept until compact returns.  An element deleted
+     * meanwhile may keep some indexes until a search unlinks them,
+     * which only costs time.
+     * The new levels replace only the head they were built under: if
+     * an insert grew a level meanwhile, or a delete dropped one, the
+     * CAS fails, and the levels are rebuilt over the elements as they
+     * are then, rather than overwrite the change.
+     */
+    public void compact() {
+        for (;;) {
+            HeadIndex<V> h = head;
+            Node<V> base = h.node;
+            IndexBuilder<V> builder = new IndexBuilder<>(base, levelGenerator);
+            List<Node<V>> seen = new ArrayList<>();
+            for (Node<V> n = base.next; n != null; n = n.next) {
+                if (!n.isMarker() && !n.isDeleted()) {
+                    builder.add(n);
+                    seen.add(n);
+                }
+            }
+            HeadIndex<V> nh = builder.head();
+            if (casHead(h, nh)) {
+                indexLateInserts(base, seen, nh);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gives indexes to the elements inserted while compact rebuilt the
+     * levels, which the rebuild did not see, and whose inserts may
+     * have linked their indexes into the levels it replaced.  The base
+     * level and the elements the rebuild saw are walked together: both
+     * are in list order, so a live element that is not the next live
+     * one seen was inserted since.  It gets a tower of its own unless
+     * its insert already linked one into the new levels.
+     */
+    private void indexLateInserts(Node<V> base, List<Node<V>> seen, HeadIndex<V> nh) {
+        Comparator<? super V> cmp = comparator;
+        Index<V> q = nh;
+        while (q.down != null)
+            q = q.down;
+        int i = 0;
+        for (Node<V> n = base.next; n != null; n = n.next) {
+            if (n.isMarker() || n.isDeleted())
+                continue;
+            while (i < seen.size() && seen.get(i).isDeleted())
+                ++i;
+            if (i < seen.size() && seen.get(i) == n) {
+                ++i;
+                continue;
+            }
+            Index<V> r;
+            while ((r = q.right) != null && cpr(cmp, r.node.value, n.value) < 0)
+                q = r;
+            while (r != null && r.node != n && cpr(cmp, r.node.value, n.value) == 0)
+                r = r.right;
+            if (r == null || r.node != n)
+                addIndexes(n, cmp, null);
+        }
+    }
+
+    /* ---------------- Bulk loading -------------- */
+
+    /**
+     * Creates a list holding the given keys, which must be in
+     * ascending order (equal keys are allowed), in a single O(n)
+     * pass instead of n insertions.
+     *
+     * @param sorted the keys in ascending order
+     * @param <V> the type of keys
+     * @return the new list
+     * @throws IllegalArgumentException if the keys are out of order
+     */
+    public static <V> SkipList<V> bulkLoad(Iterator<? extends V> sorted) {
+        return bulkLoad(sorted, null);
+    }
+
+    /**
+     * Same as {@link #bulkLoad(Iterator)}, ordering the keys with the
+     * given comparator.
+     *
+     * @param sorted the keys in ascending order
+     * @param comparator the comparator, or null for natural ordering
+     * @param <V> the type of keys
+     * @return the new list
+     * @throws IllegalArgumentException if the keys are out of order
+     */
+    public static <V> SkipList<V> bulkLoad(Iterator<? extends V> sorted, Comparator<? super V> comparator) {
+        SkipList<V> list = new SkipList<>(comparator);
+        Node<V> b = list.head.node;
+        IndexBuilder<V> builder = new IndexBuilder<>(b, list.levelGenerator);
+        while (sorted.hasNext()) {
+            V key = sorted.next();
+            if (key == null)
+                throw new NullPointerException();
+            if (b.value != null && cpr(comparator, b.value, key) > 0)
+                throw new IllegalArgumentException("keys not in ascending order");
+            Node<V> z = new Node<>(key, null);
+            b.next = z;
+            b = z;
+            builder.add(z);
+        }
+        list.head = builder.head();
+        list.adder.add(builder.count);
+        return list;
+    }
+
+    /**
+     * Same as {@link #bulkLoad(Iterator, Comparator)}, from an array.
+     *
+     * @param sorted the keys in ascending order
+     * @param comparator the comparator, or null for natural ordering
+     * @param <V> the type of keys
+     * @return the new list
+     * @throws IllegalArgumentException if the keys are out of order
+     */
+    public static <V> SkipList<V> bulkLoad(V[] sorted, Comparator<? super V> comparator) {
+        return bulkLoad(Arrays.asList(sorted).iterator(), comparator);
+    }
+
+    /**
+     * Builds the index levels over base nodes handed to it in order,
+     * bottom up, in a single pass.  The node at position i (counting
+     * from 1) gets {@link LevelGenerator#idealLevel} index levels, so
+     * no search is needed to place an index: it is always appended
+     * after the last index built on its level.
+     */
+    static final class IndexBuilder<V> {
+        private final LevelGenerator levelGenerator;
+        private HeadIndex<V> head;
+        @SuppressWarnings("unchecked")
+        private final Index<V>[] last = (Index<V>[]) new Index<?>[LevelGenerator.MAX_LEVEL + 1];
+        private int count;
+
+        IndexBuilder(Node<V> base, LevelGenerator levelGenerator) {
+            this.levelGenerator = levelGenerator;
+            last[1] = head = new HeadIndex<>(base, null, null, 1);
+        }
+
+        void add(Node<V> n) {
+            int level = levelGenerator.idealLevel(++count);
+            Index<V> idx = null;
+            for (int i = 1; i <= level; ++i) {
+                idx = new Index<>(n, idx, null);
+                if (i > head.level)
+                    last[i] = head = new HeadIndex<>(head.node, head, null, i);
+                last[i].right = idx;
+                last[i] = idx;
+            }
+        }
+
+        HeadIndex<V> head() {
+            return head;
+        }
     }
 
     public SkipList() {
-        this.comparator = null;
-        initialize();
+        this(null, LevelGenerator.DEFAULT);
     }
 
     public SkipList(Comparator<? super V> comparator) {
+        this(comparator, LevelGenerator.DEFAULT);
+    }
+
+    public SkipList(LevelGenerator levelGenerator) {
+        this(null, levelGenerator);
+    }
+
+    public SkipList(Comparator<? super V> comparator, LevelGenerator levelGenerator) {
+        if (levelGenerator == null)
+            throw new NullPointerException();
         this.comparator = comparator;
+        this.levelGenerator = levelGenerator;
         initialize();
     }
 
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SkipList, HeadIndex> HEAD =
+            AtomicReferenceFieldUpdater.newUpdater(SkipList.class, HeadIndex.class, "head");
+
 }
@@ -0,0 +1,232 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Traversal counters and latency histograms of one skip list.
+ *
+ * Recording is switched on for the whole JVM by the system property
+ * {@code skiplist.metrics=true}.  It is read once, when this class is
+ * initialized, into the static final {@link #ENABLED}, and every
+ * recording site in the lists is guarded by it.  The JIT treats a
+ * static final field as a constant, so when it is false the guards
+ * fold away together with the step counters that only they read, and
+ * a list runs the same code as without instrumentation.  When it is
+ * true, each list owns one instance of this class.  Counters are
+ * LongAdders and histogram buckets are atomic, so the concurrent
+ * lists record without contending on a single cache line.
+ *
+ * What is recorded:
+ *
+ *   - the right steps taken on each index level by the searches of
+ *     insert, delete and query, and the base-level walk that ends each
+ *     search, whose lengths are also kept as a distribution;
+ *
+ *   - the nodes or lower-level indexes rescanned by Index.link, or by
+ *     the span recomputations of unlink and delete, when a span
+ *     augmented list repairs its spans;
+ *
+ *   - the latency of each insert, delete and query, in nanoseconds.
+ *
+ * Snapshots are taken by each list's {@code stats()}, and can be
+ * published over JMX with {@link #register}.
+ */
+public final class SkipListMetrics {
+
+    /**
+     * Whether lists record anything.  Fixed for the life of the JVM.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("skiplist.metrics");
+
+    /**
+     * The operations whose latency is recorded.  QUERY covers the
+     * lookups of each list: contains of SkipList, rank and select of
+     * OrderStatisticSkipList, rangeQuery of RangeQuerySkipList, and
+     * the searches of IntervalSkipList.  Batch, cursor and bulk
+     * operations are not timed, though their traversals are counted.
+     */
+    public enum Op { INSERT, DELETE, QUERY }
+
+    /**
+     * Level 0 is the base level; index levels follow.
+     */
+    static final int LEVELS = LevelGenerator.MAX_LEVEL + 2;
+
+    private final LongAdder[] levelSteps = new LongAdder[LEVELS];
+    private final LongAdder links = new LongAdder();
+    private final LongAdder linkSteps = new LongAdder();
+    private final Histogram baseWalks = new Histogram();
+    private final Histogram[] latency = new Histogram[Op.values().length];
+
+    SkipListMetrics() {
+        for (int i = 0; i < LEVELS; ++i)
+            levelSteps[i] = new LongAdder();
+        for (int i = 0; i < latency.length; ++i)
+            latency[i] = new Histogram();
+    }
+
+    /* ---------------- Recording -------------- */
+
+    /**
+     * Records the right steps taken by one search on an index level.
+     */
+    void steps(int level, int steps) {
+        if (steps != 0)
+            levelSteps[Math.min(level, LEVELS - 1)].add(steps);
+    }
+
+    /**
+     * Records the length of the base-level walk ending one search.
+     */
+    void baseWalk(int steps) {
+        if (steps != 0)
+            levelSteps[0].add(steps);
+        baseWalks.record(steps);
+    }
+
+    /**
+     * Records one span repair that rescanned the given number of nodes
+     * or lower-level indexes.
+     */
+    void link(int steps) {
+        links.increment();
+        linkSteps.add(steps);
+    }
+
+    /**
+     * Records the latency of one operation.
+     */
+    void latency(Op op, long nanos) {
+        latency[op.ordinal()].record(nanos);
+    }
+
+    /* ---------------- Snapshots -------------- */
+
+    long[] levelSteps() {
+        long[] a = new long[LEVELS];
+        for (int i = 0; i < LEVELS; ++i)
+            a[i] = levelSteps[i].sum();
+        return a;
+    }
+
+    long links() {
+        return links.sum();
+    }
+
+    long linkSteps() {
+        return linkSteps.sum();
+    }
+
+    SkipListStats.Distribution baseWalks() {
+        return baseWalks.snapshot();
+    }
+
+    SkipListStats.Distribution latency(Op op) {
+        return latency[op.ordinal()].snapshot();
+    }
+
+    /**
+     * A log-linear histogram of non-negative longs, after the layout of
+     * HdrHistogram: values below 2^SUB_BITS have a bucket each, and
+     * every power of two above is split into 2^SUB_BITS buckets of
+     * equal width, so any recorded value is reported within
+     * 1/2^SUB_BITS (about 3%) of itself, over the whole long range, in
+     * a fixed 15 KB of buckets.
+     */
+    static final class Histogram {
+        static final int SUB_BITS = 5;
+        static final int SUB = 1 << SUB_BITS;
+        static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long value) {
+            if (value < 0)
+                value = 0;
+            counts.getAndIncrement(bucket(value));
+            total.add(value);
+            long m;
+            while (value > (m = max.get()) && !max.compareAndSet(m, value))
+                ;
+        }
+
+        static int bucket(long value) {
+            if (value < SUB)
+                return (int) value;
+            int e = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (e - SUB_BITS)) & (SUB - 1);
+            return (e - SUB_BITS + 1) * SUB + sub;
+        }
+
+        /**
+         * Returns the greatest value that falls in the given bucket.
+         */
+        static long highest(int bucket) {
+            if (bucket < 2 * SUB)
+                return bucket;
+            int e = bucket / SUB + SUB_BITS - 1;
+            long low = (long) (SUB + bucket % SUB) << (e - SUB_BITS);
+            return low + (1L << (e - SUB_BITS)) - 1;
+        }
+
+        /**
+         * Copies the buckets.  Under concurrent recording the copy is
+         * not atomic, but each bucket is read once, so the count is
+         * always that of the buckets copied.
+         */
+        SkipListStats.Distribution snapshot() {
+            long[] c = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; ++i)
+                c[i] = counts.get(i);
+            return new SkipListStats.Distribution(c, total.sum(), max.get());
+        }
+    }
+
+    /* ---------------- JMX -------------- */
+
+    /**
+     * Registers an MXBean publishing the snapshots of a list with the
+     * platform MBean server, under
+     * {@code com.spicdt.party.admin.biz.publish.service:type=SkipList,name=<name>}.
+     * Each read of its Stats attribute takes a fresh snapshot, which
+     * walks the index levels of the list; see the list's
+     * {@code stats()} for whether that may run concurrently with
+     * updates.
+     *
+     * @param name the name of the list
+     * @param stats takes a snapshot, typically {@code list::stats}
+     * @return the name the bean was registered under
+     * @throws JMException if the name is malformed or already taken
+     */
+    public static ObjectName register(String name, Supplier<SkipListStats> stats) throws JMException {
+        if (name == null || stats == null)
+            throw new NullPointerException();
+        ObjectName on = new ObjectName(SkipListMetrics.class.getPackage().getName() +
+                                       ":type=SkipList,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new StandardMBean(new Bean(stats), SkipListStatsMXBean.class, true), on);
+        return on;
+    }
+
+    private static final class Bean implements SkipListStatsMXBean {
+        private final Supplier<SkipListStats> stats;
+
+        Bean(Supplier<SkipListStats> stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public SkipListStats getStats() {
+            return stats.get();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.Arrays;
+
+/**
+ * A snapshot of the shape of a skip list and of the traversal counters
+ * and latencies recorded by its {@link SkipListMetrics}.
+ *
+ * The shape (size, index counts and height distribution) is taken by
+ * walking the index levels when the snapshot is made, so it is exact
+ * and available whether or not metrics are enabled.  The counters
+ * cover everything recorded since the list was created, and are all
+ * zero when {@link SkipListMetrics#ENABLED} is false.
+ *
+ * Every property has a getter, so a snapshot maps to composite data
+ * when published over JMX.
+ */
+public final class SkipListStats {
+
+    private final int size;
+    private final long[] indexCounts;
+    private final long[] heights;
+    private final long[] levelSteps;
+    private final long links;
+    private final long linkSteps;
+    private final Distribution baseWalks;
+    private final Distribution insert;
+    private final Distribution delete;
+    private final Distribution query;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param size the number of elements
+     * @param indexCounts the number of indexes on each level, from
+     *        level 1 at [1] to the top level; [0] is unused
+     * @param metrics the counters of the list, or null if disabled
+     */
+    SkipListStats(int size, long[] indexCounts, SkipListMetrics metrics) {
+        this(size, size, indexCounts, metrics);
+    }
+
+    /**
+     * Creates a snapshot of a list whose base nodes may stand for more
+     * than one element each.
+     *
+     * @param size the number of elements
+     * @param nodes the number of base nodes
+     * @param indexCounts as above
+     * @param metrics the counters of the list, or null if disabled
+     */
+    SkipListStats(int size, long nodes, long[] indexCounts, SkipListMetrics metrics) {
+        this.size = size;
+        this.indexCounts = indexCounts;
+        indexCounts[0] = nodes;
+        int top = indexCounts.length - 1;
+        heights = new long[top + 1];
+        // the levels of a concurrent list are walked one after another,
+        // so a level may count more indexes than the one below it
+        for (int i = 0; i < top; ++i)
+            heights[i] = Math.max(0, indexCounts[i] - indexCounts[i + 1]);
+        heights[top] = indexCounts[top];
+        if (metrics != null) {
+            long[] s = metrics.levelSteps();
+            levelSteps = Arrays.copyOf(s, Math.max(top + 1, lastNonZero(s) + 1));
+            links = metrics.links();
+            linkSteps = metrics.linkSteps();
+            baseWalks = metrics.baseWalks();
+            insert = metrics.latency(SkipListMetrics.Op.INSERT);
+            delete = metrics.latency(SkipListMetrics.Op.DELETE);
+            query = metrics.latency(SkipListMetrics.Op.QUERY);
+        } else {
+            levelSteps = new long[top + 1];
+            links = linkSteps = 0;
+            baseWalks = insert = delete = query = Distribution.EMPTY;
+        }
+    }
+
+    private static int lastNonZero(long[] a) {
+        int i = a.length - 1;
+        while (i > 0 && a[i] == 0)
+            --i;
+        return i;
+    }
+
+    /**
+     * Returns the number of elements.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of index levels.
+     */
+    public int getHeight() {
+        return indexCounts.length - 1;
+    }
+
+    /**
+     * Returns the number of nodes on each level: [0] is the number of
+     * base nodes, which is the size unless duplicates share nodes, and
+     * [i] the number of indexes on level i.
+     */
+    public long[] getIndexCounts() {
+        return indexCounts.clone();
+    }
+
+    /**
+     * Returns the height distribution of the towers: [h] is the number
+     * of nodes with exactly h index levels above them.  Under
+     * concurrent updates the levels are counted at different moments;
+     * where a level counted more indexes than the one below it, the
+     * number of towers ending below it is reported as 0, so the
+     * heights then need not add up to the number of base nodes.
+     */
+    public long[] getHeights() {
+        return heights.clone();
+    }
+
+    /**
+     * Returns the total right steps taken on each level by searches:
+     * [0] is the base-level walks, and [i] index level i.
+     */
+    public long[] getLevelSteps() {
+        return levelSteps.clone();
+    }
+
+    /**
+     * Returns the number of operations recorded.
+     */
+    public long getOperations() {
+        return insert.getCount() + delete.getCount() + query.getCount();
+    }
+
+    /**
+     * Returns the mean right steps per operation on each level, as for
+     * {@link #getLevelSteps}.  A tall, sparse top shows as steps near
+     * zero on the upper levels; a level whose mean is well above
+     * 1/p - 1 for promotion probability p walks longer than the level
+     * generator intends.
+     */
+    public double[] getStepsPerOperation() {
+        long ops = getOperations();
+        double[] a = new double[levelSteps.length];
+        if (ops != 0)
+            for (int i = 0; i < a.length; ++i)
+                a[i] = (double) levelSteps[i] / ops;
+        return a;
+    }
+
+    /**
+     * Returns the distribution of the lengths of base-level walks,
+     * in nodes.
+     */
+    public Distribution getBaseWalks() {
+        return baseWalks;
+    }
+
+    /**
+     * Returns the number of span repairs, by Index.link and by the
+     * recomputations of unlink and delete.  Always zero for lists
+     * without span augmentation.
+     */
+    public long getLinks() {
+        return links;
+    }
+
+    /**
+     * Returns the total nodes or lower-level indexes rescanned by span
+     * repairs.
+     */
+    public long getLinkSteps() {
+        return linkSteps;
+    }
+
+    /**
+     * Returns the latency distribution of inserts, in nanoseconds.
+     */
+    public Distribution getInsert() {
+        return insert;
+    }
+
+    /**
+     * Returns the latency distribution of deletes, in nanoseconds.
+     */
+    public Distribution getDelete() {
+        return delete;
+    }
+
+    /**
+     * Returns the latency distribution of queries, in nanoseconds.
+     */
+    public Distribution getQuery() {
+        return query;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder()
+                .append("SkipListStats{size=").append(size)
+                .append(", heights=").append(Arrays.toString(heights))
+                .append(", stepsPerOperation=[");
+        double[] s = getStepsPerOperation();
+        for (int i = 0; i < s.length; ++i)
+            sb.append(i == 0 ? "" : ", ").append(String.format("%.2f", s[i]));
+        return sb.append("], baseWalks=").append(baseWalks)
+                .append(", links=").append(links)
+                .append(", linkSteps=").append(linkSteps)
+                .append(", insert=").append(insert)
+                .append(", delete=").append(delete)
+                .append(", query=").append(query)
+                .append('}').toString();
+    }
+
+    /**
+     * A snapshot of a {@link SkipListMetrics.Histogram}.  Percentiles
+     * are reported as the greatest value of the bucket they fall in,
+     * capped by the greatest value recorded.
+     */
+    public static final class Distribution {
+        static final Distribution EMPTY =
+                new Distribution(new long[SkipListMetrics.Histogram.BUCKETS], 0, 0);
+
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        Distribution(long[] counts, long total, long max) {
+            long n = 0;
+            for (long c : counts)
+                n += c;
+            this.counts = counts;
+            this.count = n;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * Returns the number of values recorded.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the mean of the values recorded, or 0 if none.
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * Returns the greatest value recorded, or 0 if none.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        public long getP50() {
+            return valueAt(50);
+        }
+
+        public long getP90() {
+            return valueAt(90);
+        }
+
+        public long getP99() {
+            return valueAt(99);
+        }
+
+        public long getP999() {
+            return valueAt(99.9);
+        }
+
+        /**
+         * Returns the value at the given percentile: the least value
+         * such that at least that percentage of the recorded values
+         * are no greater.
+         *
+         * @param percentile between 0 and 100
+         * @return the value, or 0 if nothing was recorded
+         */
+        public long valueAt(double percentile) {
+            if (!(percentile >= 0 && percentile <= 100))
+                throw new IllegalArgumentException("percentile " + percentile);
+            if (count == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; ++i)
+                if ((seen += counts[i]) >= rank)
+                    return Math.min(SkipListMetrics.Histogram.highest(i), max);
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{count=%d, mean=%.1f, p50=%d, p99=%d, max=%d}",
+                                 count, getMean(), getP50(), getP99(), max);
+        }
+    }
+}
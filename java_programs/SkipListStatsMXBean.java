@@ -0,0 +1,16 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+/**
+ * Management interface of a skip list registered with
+ * {@link SkipListMetrics#register}.
+ */
+public interface SkipListStatsMXBean {
+
+    /**
+     * Returns a fresh snapshot of the list, published as composite
+     * data.
+     *
+     * @return the snapshot
+     */
+    SkipListStats getStats();
+}
@@ -0,0 +1,838 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link RangeQuerySkipList} whose readers can take point-in-time
+ * snapshots, and query them from other threads while the writer goes
+ * on changing the list, without blocking it and without seeing any of
+ * its changes half made.
+ *
+ * Every update is made at a new version, published when the update
+ * is complete.  Versions are kept by stamps rather than by copying:
+ *
+ *   - a node records the version that inserted it and the version
+ *     that deleted it, and is visible at version v if inserted at or
+ *     before v and not deleted at or before it.  An index is visible
+ *     when its node is.
+ *
+ *   - the aggregates of an index's span are an immutable Span, and
+ *     the span field of an index heads a chain of them, newest first,
+ *     each recording the version it was made at.  At version v an
+ *     index has the newest Span made at or before v, which summarizes
+ *     the nodes visible at v after the previous index visible at v on
+ *     the same level, up to and including its own.
+ *
+ * An update never overwrites what an older version sees.  Insert
+ * splices in a node and indexes stamped with the new version, which
+ * older versions skip, and gives the indexes whose spans change a new
+ * Span each.  Delete only stamps the node, so older versions still
+ * see it, and gives new Spans to the indexes that absorb it.  A
+ * reader at version v thus walks the list as it was at v, skipping
+ * what is not visible at v and reading the Span of each index for v,
+ * and gets the same answers as from a RangeQuerySkipList holding the
+ * entries of version v.
+ *
+ * Snapshots register their version while open.  After each update
+ * the writer reclaims what no open snapshot (and no later version)
+ * can see: deleted nodes are unlinked, with their indexes, once the
+ * oldest open snapshot is at or past the version that deleted them,
+ * and the Spans older than the one the oldest snapshot reads are cut
+ * off whenever an index gets a new Span.  With no snapshot open,
+ * deleted nodes are unlinked at the end of the delete, and each index
+ * keeps at most two Spans.  Versions released by a snapshot are
+ * reclaimed by the writer's next update.
+ *
+ * Updates, and the queries of the list itself, are made by a single
+ * writer thread.  Snapshots may be taken, queried and closed by any
+ * thread.
+ */
+public class VersionedRangeQuerySkipList<K> {
+
+    /**
+     * The topmost head index of the skiplist.
+     */
+    private transient volatile HeadIndex<K> head;
+
+    /**
+     * The last published version, with the size at that version.
+     */
+    private volatile State state = new State(0, 0);
+
+    /**
+     * Published by the writer before it looks for the oldest open
+     * snapshot; a snapshot of an older version may already have lost
+     * what it needs, and must be taken again.
+     */
+    private volatile long horizon;
+
+    /**
+     * The version before which everything may have been reclaimed:
+     * the oldest open snapshot at the last reclamation, or the version
+     * then current if none was open.  Used by the writer only.
+     */
+    private long floor;
+
+    /**
+     * The open snapshots.
+     */
+    private final Set<Snapshot> snapshots = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Deleted nodes still linked, in the order they were deleted.
+     */
+    private final ArrayDeque<Node<K>> retired = new ArrayDeque<>();
+
+    /**
+     * Spans made while a snapshot held the floor back, whose older
+     * Spans are cut off once the floor passes them, in the order they
+     * were made.
+     */
+    private final ArrayDeque<Span> retained = new ArrayDeque<>();
+
+    final Comparator<? super K> comparator;
+
+    final LevelGenerator levelGenerator;
+
+    private void initialize() {
+        head = new HeadIndex<K>(new Node<K>(null, 0, 0, null),
+                null, null, 1);
+    }
+
+    /* ---------------- Versions -------------- */
+
+    /**
+     * A published version and the size of the list at it.
+     */
+    static final class State {
+        final long version;
+        final int size;
+
+        State(long version, int size) {
+            this.version = version;
+            this.size = size;
+        }
+    }
+
+    /* ---------------- Nodes -------------- */
+
+    /**
+     * Nodes hold keys and values, and are singly linked in sorted
+     * order, whatever their versions.  The list is headed by a dummy
+     * node accessible as head.node, visible at every version.
+     */
+    static final class Node<K> {
+        final K key;
+        final double value;
+        final long created;
+        volatile long deleted = Long.MAX_VALUE;
+        volatile Node<K> next;
+
+        /**
+         * Creates a new regular node.
+         */
+        Node(K key, double value, long created, Node<K> next) {
+            this.key = key;
+            this.value = value;
+            this.created = created;
+            this.next = next;
+        }
+
+        boolean isVisible(long v) {
+            return created <= v && v < deleted;
+        }
+    }
+
+    /* ---------------- Spans -------------- */
+
+    /**
+     * The aggregates of the span of an index as of a version.  prior
+     * is the Span it replaced, and is cut off by the writer once no
+     * reader can need it.
+     */
+    static final class Span {
+        final long version;
+        final int count;
+        final double sum;
+        final double min;
+        final double max;
+        Span prior;
+
+        Span(long version, int count, double sum, double min, double max, Span prior) {
+            this.version = version;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+            this.prior = prior;
+        }
+    }
+
+    /* ---------------- Indexing -------------- */
+
+    /**
+     * Index nodes represent the levels of the skip list.  Note that
+     * even though both Nodes and Indexes have forward-pointing
+     * fields, they have different types and are handled in different
+     * ways, that can't nicely be captured by placing field in a
+     * shared abstract class.
+     */
+    static class Index<K> {
+        final Node<K> node;
+        final Index<K> down;
+        volatile Index<K> right;
+        volatile Span span;
+
+        /**
+         * Creates index node with given values.
+         */
+        Index(Node<K> node, Index<K> down, Index<K> right) {
+            this.node = node;
+            this.down = down;
+            this.right = right;
+        }
+
+        /**
+         * Returns the Span of this index at version v.
+         */
+        final Span spanAt(long v) {
+            Span s = span;
+            while (s.version > v)
+                s = s.prior;
+            return s;
+        }
+
+        /**
+         * Gives this index a new Span made at version v, replacing
+         * one already made at v, and cuts the chain after the newest
+         * Span made at or before floor, which is the oldest any
+         * reader can ask for.
+         *
+         * @return the new Span
+         */
+        final Span setSpan(long v, int count, double sum, double min, double max, long floor) {
+            Span prior = span;
+            if (prior != null && prior.version == v)
+                prior = prior.prior;
+            Span s = new Span(v, count, sum, min, max, prior);
+            for (Span t = s; t != null; t = t.prior) {
+                if (t.version <= floor) {
+                    t.prior = null;
+                    break;
+                }
+            }
+            span = s;
+            return s;
+        }
+
+        /**
+         * Recomputes the span of this index at version v, covering the
+         * nodes visible at v after pred.node up to and including
+         * this.node, where pred is the index visible at v to the left
+         * of this one on the same level.  On the lowest index level
+         * the span is summed over base nodes; above it, the Spans at v
+         * of the level below are combined.
+         *
+         * @return the new Span
+         */
+        final Span aggregate(Index<K> pred, long v, long floor) {
+            int count = 0;
+            double sum = 0;
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            if (down == null) {
+                Node<K> n = pred.node;
+                while (n != node) {
+                    n = n.next;
+                    if (n.isVisible(v)) {
+                        count++;
+                        sum = sum + n.value;
+                        min = Math.min(min, n.value);
+                        max = Math.max(max, n.value);
+                    }
+                }
+            } else {
+                Index<K> s = pred.down;
+                while (s != down) {
+                    s = s.right;
+                    if (s.node.isVisible(v)) {
+                        Span t = s.spanAt(v);
+                        count = count + t.count;
+                        sum = sum + t.sum;
+                        min = Math.min(min, t.min);
+                        max = Math.max(max, t.max);
+                    }
+                }
+            }
+            return setSpan(v, count, sum, min, max, floor);
+        }
+    }
+
+    /* ---------------- Head nodes -------------- */
+
+    /**
+     * Nodes heading each level keep track of their level.
+     */
+    static final class HeadIndex<K> extends Index<K> {
+        final int level;
+
+        HeadIndex(Node<K> node, Index<K> down, Index<K> right, int level) {
+            super(node, down, right);
+            this.level = level;
+        }
+    }
+
+    /* ---------------- Comparison utilities -------------- */
+
+    /**
+     * Compares using comparator or natural ordering if null.
+     * Called only by methods that have performed required type checks.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static final int cpr(Comparator c, Object x, Object y) {
+        return (c != null) ? c.compare(x, y) : ((Comparable) x).compareTo(y);
+    }
+
+    /**
+     * Returns r, or the first index after it, visible at version v,
+     * or null if there is none.
+     */
+    static <K> Index<K> visible(Index<K> r, long v) {
+        while (r != null && !r.node.isVisible(v))
+            r = r.right;
+        return r;
+    }
+
+    /* ---------------- Queries -------------- */
+
+    /**
+     * Returns count, sum, min and max of the values of all keys in
+     * [start, end] at version v.
+     *
+     * The search for start records, on each level, the last index
+     * visible at v before start.  The nodes from there to the first
+     * index of level 1 are summed, then the query climbs: on each
+     * level it adds the spans up to the first index of the level
+     * above, as long as that index is not past end.  Where it can
+     * climb no further it descends, adding on each level the spans
+     * that end at or before end, and finishes with the base nodes
+     * before end.  Each level is walked over an expected constant
+     * number of indexes on the way up and on the way down.
+     */
+    RangeQuerySkipList.RangeQueryResult rangeQuery(long v, K start, K end,
+                                                   RangeQuerySkipList.RangeQueryResult into) {
+        if (start == null || end == null)
+            throw new NullPointerException(); // don't postpone errors
+        Comparator<? super K> cmp = comparator;
+        if (cpr(cmp, start, end) > 0)
+            throw new IllegalArgumentException("start > end"); // don't postpone errors
+        into.setCount(0);
+        into.setSum(0);
+        into.setMin(Double.MAX_VALUE);
+        into.setMax(-Double.MAX_VALUE);
+        HeadIndex<K> h = head;
+        int top = h.level;
+        @SuppressWarnings("unchecked")
+        Index<K>[] preds = (Index<K>[]) new Index<?>[top + 1];
+        Index<K> q = h;
+        for (int j = top; ; --j) {
+            for (Index<K> r; (r = visible(q.right, v)) != null && cpr(cmp, start, r.node.key) > 0; )
+                q = r;
+            preds[j] = q;
+            if (j == 1)
+                break;
+            q = q.down;
+        }
+        Node<K> b = q.node;
+        for (Node<K> n = b.next; n != null && cpr(cmp, start, n.key) > 0; n = n.next)
+            if (n.isVisible(v))
+                b = n;
+        Index<K> r1 = visible(q.right, v);
+        if (r1 == null || cpr(cmp, end, r1.node.key) < 0) {
+            addNodes(b, null, end, v, into);
+            return into;
+        }
+        addNodes(b, r1.node, end, v, into);
+        Index<K> p = r1;
+        for (int j = 1; j < top; ++j) {
+            Index<K> up = visible(preds[j + 1].right, v);
+            if (up == null || cpr(cmp, end, up.node.key) < 0)
+                break;
+            for (Index<K> s = p; s != up.down; ) {
+                s = visible(s.right, v);
+                addSpan(s.spanAt(v), into);
+            }
+            p = up;
+        }
+        for (;;) {
+            for (Index<K> s; (s = visible(p.right, v)) != null && cpr(cmp, end, s.node.key) >= 0; p = s)
+                addSpan(s.spanAt(v), into);
+            if (p.down == null)
+                break;
+            p = p.down;
+        }
+        addNodes(p.node, null, end, v, into);
+        return into;
+    }
+
+    /**
+     * Adds the values of the nodes visible at v after b, up to and
+     * including last if not null, else up to the last key not past
+     * end.
+     */
+    private void addNodes(Node<K> b, Node<K> last, K end, long v, RangeQuerySkipList.RangeQueryResult into) {
+        for (Node<K> n = b.next; n != null; n = n.next) {
+            if (last == null && cpr(comparator, end, n.key) < 0)
+                break;
+            if (n.isVisible(v)) {
+                into.setCount(into.getCount() + 1);
+                into.setSum(into.getSum() + n.value);
+                into.setMin(Math.min(into.getMin(), n.value));
+                into.setMax(Math.max(into.getMax(), n.value));
+            }
+            if (n == last)
+                break;
+        }
+    }
+
+    private static void addSpan(Span s, RangeQuerySkipList.RangeQueryResult into) {
+        into.setCount(into.getCount() + s.count);
+        into.setSum(into.getSum() + s.sum);
+        into.setMin(Math.min(into.getMin(), s.min));
+        into.setMax(Math.max(into.getMax(), s.max));
+    }
+
+    /**
+     * Returns the rank of the first entry with the given key at
+     * version v, or -1 if not found.
+     */
+    int rank(long v, Object key) {
+        if (key == null)
+            throw new NullPointerException(); // don't postpone errors
+        Comparator<? super K> cmp = comparator;
+        int rank = 0;
+        Index<K> q = head;
+        for (;;) {
+            for (Index<K> r; (r = visible(q.right, v)) != null && cpr(cmp, key, r.node.key) > 0; q = r)
+                rank = rank + r.spanAt(v).count;
+            if (q.down == null)
+                break;
+            q = q.down;
+        }
+        for (Node<K> n = q.node.next; n != null; n = n.next) {
+            if (!n.isVisible(v))
+                continue;
+            int c = cpr(cmp, key, n.key);
+            if (c == 0)
+                return ++rank;
+            if (c < 0)
+                break;
+            rank++;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns count, sum, min and max of the values of all keys in
+     * [start, end], as of the last update.  Writer thread only.
+     *
+     * @param start the lowest key, inclusive
+     * @param end the highest key, inclusive
+     * @return the aggregates
+     * @throws IllegalArgumentException if start > end
+     */
+    public RangeQuerySkipList.RangeQueryResult rangeQuery(K start, K end) {
+        return rangeQuery(start, end, newResult());
+    }
+
+    /**
+     * Same as {@link #rangeQuery(Object, Object)}, writing the
+     * aggregates into the given result instead of a new one.
+     *
+     * @param start the lowest key, inclusive
+     * @param end the highest key, inclusive
+     * @param into the result to overwrite
+     * @return into
+     * @throws IllegalArgumentException if start > end
+     */
+    public RangeQuerySkipList.RangeQueryResult rangeQuery(K start, K end,
+                                                          RangeQuerySkipList.RangeQueryResult into) {
+        return rangeQuery(state.version, start, end, into);
+    }
+
+    private static RangeQuerySkipList.RangeQueryResult newResult() {
+        return new RangeQuerySkipList.RangeQueryResult(0, 0, Double.MAX_VALUE, -Double.MAX_VALUE);
+    }
+
+    /**
+     * Determining the rank of an element, as of the last update.
+     * Writer thread only.
+     *
+     * @param key the key
+     * @return the rank of the first entry with key, or -1 if not found
+     */
+    public int rank(Object key) {
+        return rank(state.version, key);
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    public int size() {
+        return state.size;
+    }
+
+    /* ---------------- Updates -------------- */
+
+    /**
+     * Main insertion method.  Adds entry even if an equal key is
+     * present, before it.
+     *
+     * The search records, on each level, the last index before key,
+     * where the new index is spliced in, and the last index visible
+     * before key, where its span starts.  The new node and indexes
+     * are stamped with the new version, which older versions skip.
+     * Bottom up, each new index gets its span, and the next visible
+     * index a new one for what remains of its old span; above the
+     * tower, the next visible index gets its span widened by value.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void insert(K key, double value) {
+        if (key == null)
+            throw new NullPointerException();
+        Comparator<? super K> cmp = comparator;
+        long w = state.version + 1;
+        int level = levelGenerator.nextLevel();
+        HeadIndex<K> h = head;
+        if (level > h.level) { // grow by one level
+            level = h.level + 1;
+            h = head = new HeadIndex<>(h.node, h, null, level);
+        }
+        int top = h.level;
+        @SuppressWarnings("unchecked")
+        Index<K>[] preds = (Index<K>[]) new Index<?>[top + 1];
+        @SuppressWarnings("unchecked")
+        Index<K>[] links = (Index<K>[]) new Index<?>[top + 1];
+        findPredecessors(key, w, h, preds, links);
+        Node<K> b = links[1].node;
+        for (Node<K> n; (n = b.next) != null && cpr(cmp, key, n.key) > 0; )
+            b = n;
+        Node<K> z = new Node<>(key, value, w, b.next);
+        b.next = z;
+
+        Index<K> idx = null;
+        for (int j = 1; j <= top; ++j) {
+            if (j <= level) {
+                Index<K> q = links[j];
+                idx = new Index<>(z, idx, q.right);
+                retain(idx.aggregate(preds[j], w, floor));
+                q.right = idx;
+                Index<K> succ = visible(idx.right, w);
+                if (succ != null)
+                    retain(succ.aggregate(idx, w, floor));
+            } else {
+                Index<K> succ = visible(links[j].right, w);
+                if (succ != null) {
+                    Span s = succ.spanAt(w);
+                    retain(succ.setSpan(w, s.count + 1, s.sum + value,
+                                        Math.min(s.min, value), Math.max(s.max, value), floor));
+                }
+            }
+        }
+        publish(w, state.size + 1, null, null);
+    }
+
+    /**
+     * Main deletion method.  Removes the first entry with the given
+     * key visible now.
+     *
+     * The node is stamped as deleted at the new version, and stays
+     * linked for the versions before it.  On each level, bottom up,
+     * the first index visible past key at the new version, which
+     * either covered the node or follows the node's own index, gets
+     * its span recomputed from the last index visible before key.
+     *
+     * @param key the key
+     * @return true, or false if not found
+     */
+    public boolean delete(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        Comparator<? super K> cmp = comparator;
+        long w = state.version + 1;
+        HeadIndex<K> h = head;
+        int top = h.level;
+        @SuppressWarnings("unchecked")
+        Index<K>[] preds = (Index<K>[]) new Index<?>[top + 1];
+        @SuppressWarnings("unchecked")
+        Index<K>[] links = (Index<K>[]) new Index<?>[top + 1];
+        findPredecessors(key, w, h, preds, links);
+        Node<K> n = links[1].node.next;
+        for (int c; n != null; n = n.next) {
+            if ((c = cpr(cmp, key, n.key)) < 0)
+                return false;
+            if (c == 0 && n.isVisible(w))
+                break;
+        }
+        if (n == null)
+            return false;
+        n.deleted = w;
+        for (int j = 1; j <= top; ++j) {
+            Index<K> succ = visible(links[j].right, w);
+            if (succ != null)
+                retain(succ.aggregate(preds[j], w, floor));
+        }
+        retired.add(n);
+        publish(w, state.size - 1, n, links);
+        return true;
+    }
+
+    /**
+     * Records on each level the last index visible at v with key less
+     * than the given key, and the last index of any version with key
+     * less than it.  Each level is searched from below the visible
+     * one, as the indexes of the level below between the two may be
+     * visible.
+     */
+    private void findPredecessors(Object key, long v, HeadIndex<K> h, Index<K>[] preds, Index<K>[] links) {
+        Comparator<? super K> cmp = comparator;
+        Index<K> p = h;
+        for (int j = h.level; ; --j) {
+            Index<K> q = p;
+            for (Index<K> r; (r = q.right) != null && cpr(cmp, key, r.node.key) > 0; ) {
+                q = r;
+                if (r.node.isVisible(v))
+                    p = r;
+            }
+            preds[j] = p;
+            links[j] = q;
+            if (j == 1)
+                return;
+            p = p.down;
+        }
+    }
+
+    /* ---------------- Reclamation -------------- */
+
+    /**
+     * Publishes version w, then unlinks the deleted nodes no open
+     * snapshot can see.  The node deleted at w, if any, is unlinked
+     * from the path its delete found, unless other nodes, which may
+     * be on that path, were unlinked first.
+     *
+     * The horizon is raised to w before the snapshots are scanned.  A
+     * snapshot registered before the scan holds the floor at its
+     * version; one registered after it reads the raised horizon, and
+     * is taken again if its version is below it.
+     */
+    private void publish(long w, int size, Node<K> deleted, Index<K>[] links) {
+        state = new State(w, size);
+        horizon = w;
+        long f = w;
+        for (Snapshot s : snapshots)
+            f = Math.min(f, s.version);
+        floor = f;
+        for (Span s; (s = retained.peek()) != null && s.version <= f; )
+            retained.poll().prior = null;
+        boolean unlinked = false;
+        for (Node<K> n; (n = retired.peek()) != null && n.deleted <= f; ) {
+            retired.poll();
+            unlink(n, (n == deleted && !unlinked) ? links : null);
+            unlinked = true;
+        }
+        if (unlinked) {
+            HeadIndex<K> h = head;
+            while (h.level > 1 && h.right == null)
+                h = (HeadIndex<K>) h.down;
+            head = h;
+        }
+    }
+
+    /**
+     * Notes a new Span that keeps Spans newer than the floor, for them
+     * to be cut off when the floor passes it.  Without it, an index
+     * not changed again after the snapshots holding them are closed
+     * would keep them.
+     */
+    private void retain(Span s) {
+        Span prior = s.prior;
+        if (prior != null && prior.version > floor)
+            retained.add(s);
+    }
+
+    /**
+     * Unlinks a deleted node, and its indexes, that no reader can see.
+     * Equal keys are passed over to find the node itself; a reader
+     * standing on it when it is unlinked still goes on from it.
+     *
+     * @param links the last index before the node's key on each
+     *        level, if known, else null to search for them
+     */
+    private void unlink(Node<K> n, Index<K>[] links) {
+        Comparator<? super K> cmp = comparator;
+        K key = n.key;
+        HeadIndex<K> h = head;
+        Index<K> q = h;
+        for (int j = h.level; ; --j) {
+            if (links != null)
+                q = links[j];
+            Index<K> r;
+            while ((r = q.right) != null && cpr(cmp, key, r.node.key) > 0)
+                q = r;
+            for (Index<K> p = q; r != null && cpr(cmp, key, r.node.key) == 0; p = r, r = r.right) {
+                if (r.node == n) {
+                    p.right = r.right;
+                    q = p;
+                    break;
+                }
+            }
+            if (q.down == null)
+                break;
+            q = q.down;
+        }
+        Node<K> b = q.node;
+        while (b.next != n)
+            b = b.next;
+        b.next = n.next;
+    }
+
+    /* ---------------- Snapshots -------------- */
+
+    /**
+     * Returns a snapshot of the last published version, which stays
+     * readable, unchanged, until it is closed.  May be called from any
+     * thread.  Snapshots hold back reclamation, so each must be
+     * closed, typically with try-with-resources.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        for (;;) {
+            Snapshot s = new Snapshot(state);
+            snapshots.add(s);
+            if (s.version >= horizon)
+                return s;
+            snapshots.remove(s);
+        }
+    }
+
+    /**
+     * A point-in-time view of the list.  Its queries take no lock and
+     * are answered from the version it was taken at, however the list
+     * changes meanwhile; they may be called from any thread, and
+     * concurrently.
+     */
+    public final class Snapshot implements AutoCloseable {
+        private final long version;
+        private final int size;
+        private volatile boolean closed;
+
+        Snapshot(State state) {
+            this.version = state.version;
+            this.size = state.size;
+        }
+
+        /**
+         * Returns the version this snapshot was taken at.
+         */
+        public long version() {
+            return version;
+        }
+
+        /**
+         * Returns the number of elements at this version.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns count, sum, min and max of the values of all keys in
+         * [start, end] at this version.
+         *
+         * @param start the lowest key, inclusive
+         * @param end the highest key, inclusive
+         * @return the aggregates
+         * @throws IllegalStateException if closed
+         * @throws IllegalArgumentException if start > end
+         */
+        public RangeQuerySkipList.RangeQueryResult rangeQuery(K start, K end) {
+            return rangeQuery(start, end, newResult());
+        }
+
+        /**
+         * Same as {@link #rangeQuery(Object, Object)}, writing the
+         * aggregates into the given result instead of a new one.
+         *
+         * @param start the lowest key, inclusive
+         * @param end the highest key, inclusive
+         * @param into the result to overwrite
+         * @return into
+         * @throws IllegalStateException if closed
+         * @throws IllegalArgumentException if start > end
+         */
+        public RangeQuerySkipList.RangeQueryResult rangeQuery(K start, K end,
+                                                              RangeQuerySkipList.RangeQueryResult into) {
+            checkOpen();
+            return VersionedRangeQuerySkipList.this.rangeQuery(version, start, end, into);
+        }
+
+        /**
+         * Returns the rank of the first entry with key at this version.
+         *
+         * @param key the key
+         * @return the rank, or -1 if not found
+         * @throws IllegalStateException if closed
+         */
+        public int rank(Object key) {
+            checkOpen();
+            return VersionedRangeQuerySkipList.this.rank(version, key);
+        }
+
+        private void checkOpen() {
+            if (closed)
+                throw new IllegalStateException("snapshot closed");
+        }
+
+        /**
+         * Releases this snapshot.  What only it could see is reclaimed
+         * by the writer's next update.  Idempotent.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                snapshots.remove(this);
+            }
+        }
+    }
+
+    /* ---------------- Constructors -------------- */
+
+    public VersionedRangeQuerySkipList() {
+        this(null, LevelGenerator.DEFAULT);
+    }
+
+    public VersionedRangeQuerySkipList(Comparator<? super K> comparator) {
+        this(comparator, LevelGenerator.DEFAULT);
+    }
+
+    public VersionedRangeQuerySkipList(LevelGenerator levelGenerator) {
+        this(null, levelGenerator);
+    }
+
+    public VersionedRangeQuerySkipList(Comparator<? super K> comparator, LevelGenerator levelGenerator) {
+        if (levelGenerator == null)
+            throw new NullPointerException();
+        this.comparator = comparator;
+        this.levelGenerator = levelGenerator;
+        initialize();
+    }
+}
@@ -0,0 +1,119 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link Aggregator}s kept in the spans of a
+ * {@link RangeQuerySkipList}, after random inserts and deletes, checked
+ * against a TreeMap holding the same entries.  A range query on the
+ * list's own aggregator is read from the spans; the same query with a
+ * second instance of the aggregator combines the values one by one,
+ * which the span answer must match.
+ */
+class AggregatorTest {
+
+    private final TreeMap<Integer, Double> model = new TreeMap<>();
+
+    private final Random rnd = new Random(42);
+
+    /**
+     * Values of 10^20 absorb the small integers added to a span after
+     * them, so a sum that subtracted them again on delete would lose
+     * those integers for good.  Once every large value is deleted, the
+     * remaining sums are of small integers, which doubles hold
+     * exactly.
+     */
+    @Test
+    void sumDoesNotDriftUnderDeletes() {
+        Aggregator.OfDouble<Double> sum = Aggregator.sum();
+        RangeQuerySkipList<Integer> list = randomList(sum);
+        for (Map.Entry<Integer, Double> e : new TreeMap<>(model).entrySet()) {
+            if (e.getValue() >= 1e20) {
+                assertTrue(list.delete(e.getKey()));
+                model.remove(e.getKey());
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            int start = rnd.nextInt(4000), end = start + rnd.nextInt(1000);
+            double expected = 0;
+            for (double v : model.subMap(start, true, end, true).values())
+                expected += v;
+            assertEquals(expected, list.rangeQuery(start, end, sum));
+        }
+    }
+
+    @Test
+    void momentsMatchScan() {
+        Aggregator.OfDouble<Aggregator.Moments> moments = Aggregator.moments();
+        RangeQuerySkipList<Integer> list = randomList(moments);
+        for (int i = 0; i < 200; i++) {
+            int start = rnd.nextInt(4000), end = start + rnd.nextInt(1000);
+            Aggregator.Moments m = list.rangeQuery(start, end, moments);
+            Aggregator.Moments scan = list.rangeQuery(start, end, Aggregator.moments());
+            assertEquals(model.subMap(start, true, end, true).size(), m.getCount());
+            assertEquals(scan.getSum(), m.getSum(), 1e-6 * Math.max(1, Math.abs(scan.getSum())));
+        }
+    }
+
+    @Test
+    void topKMatchesModel() {
+        Aggregator.OfDouble<double[]> top = Aggregator.topK(5);
+        RangeQuerySkipList<Integer> list = randomList(top);
+        for (int i = 0; i < 200; i++) {
+            int start = rnd.nextInt(4000), end = start + rnd.nextInt(1000);
+            double[] expected = model.subMap(start, true, end, true).values().stream()
+                    .mapToDouble(Double::doubleValue).map(v -> -v).sorted().map(v -> -v).limit(5).toArray();
+            assertArrayEquals(expected, list.rangeQuery(start, end, top));
+        }
+    }
+
+    @Test
+    void distinctCountMatchesScanAndEstimates() {
+        Aggregator.OfDouble<Aggregator.DistinctCount> distinct = Aggregator.distinctCount(12);
+        RangeQuerySkipList<Integer> list = randomList(distinct);
+        for (int i = 0; i < 200; i++) {
+            int start = rnd.nextInt(4000), end = start + rnd.nextInt(1000);
+            Aggregator.DistinctCount d = list.rangeQuery(start, end, distinct);
+            Aggregator.DistinctCount scan = list.rangeQuery(start, end, Aggregator.distinctCount(12));
+            // registers keep maxima, so the order of combination does not matter
+            assertArrayEquals(scan.registers, d.registers);
+            Set<Double> values = new HashSet<>(model.subMap(start, true, end, true).values());
+            assertTrue(Math.abs(d.estimate() - values.size()) <= 5 + values.size() / 10,
+                    d.estimate() + " for " + values.size() + " distinct values");
+        }
+    }
+
+    /**
+     * Returns a list keeping the aggregator in its spans, after
+     * random inserts and deletes of keys below 5000 that are also
+     * applied to the model.
+     */
+    private RangeQuerySkipList<Integer> randomList(Aggregator<Double, ?> aggregator) {
+        RangeQuerySkipList<Integer> list = new RangeQuerySkipList<>(null, aggregator, LevelGenerator.seeded(42, 0.5));
+        for (int i = 0; i < 20000; i++) {
+            int key = rnd.nextInt(5000);
+            if (rnd.nextInt(3) == 0) {
+                assertEquals(model.remove(key) != null, list.delete(key));
+            } else if (!model.containsKey(key)) {
+                // small integers, and values large enough to absorb them
+                double value = rnd.nextBoolean() ? rnd.nextInt(300) : (1 + rnd.nextInt(300)) * 1e20;
+                model.put(key, value);
+                list.insert(key, value);
+            }
+        }
+        assertEquals(model.size(), list.size());
+        for (Map.Entry<Integer, Double> e : model.entrySet())
+            assertEquals(e.getValue(), list.rangeQuery(e.getKey(), e.getKey(), Aggregator.sum()));
+        return list;
+    }
+}
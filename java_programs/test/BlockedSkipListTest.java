@@ -0,0 +1,105 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link BlockedSkipList}, checked against a TreeMap from each key to
+ * its number of copies, across enough inserts and deletes to split
+ * and merge blocks on several levels, both from empty and from lists
+ * bulk-loaded with block sizes other than the default.
+ */
+class BlockedSkipListTest {
+
+    private final TreeMap<Long, Integer> model = new TreeMap<>();
+
+    private final Random rnd = new Random(42);
+
+    @Test
+    void matchesModelUnderRandomOperations() {
+        BlockedSkipList list = new BlockedSkipList(LevelGenerator.seeded(42, 1.0 / BlockedSkipList.BLOCK_SIZE));
+        randomChanges(list, 100000, 20000);
+        assertMatchesModel(list);
+        // delete almost everything, so that blocks merge and levels go
+        for (Long key : model.keySet().toArray(new Long[0])) {
+            if (rnd.nextInt(50) != 0) {
+                for (int c = model.remove(key); c > 0; c--)
+                    assertTrue(list.delete(key));
+            }
+        }
+        assertMatchesModel(list);
+        randomChanges(list, 20000, 20000);
+        assertMatchesModel(list);
+    }
+
+    @Test
+    void bulkLoadMatchesModel() {
+        for (double p : new double[] {1.0 / BlockedSkipList.BLOCK_SIZE, 1.0 / 4, 1.0 / 3}) {
+            model.clear();
+            long[] keys = new long[50000];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = rnd.nextInt(40000) - 20000;
+                model.merge(keys[i], 1, Integer::sum);
+            }
+            Arrays.sort(keys);
+            BlockedSkipList list = BlockedSkipList.bulkLoad(keys, LevelGenerator.seeded(42, p));
+            assertMatchesModel(list);
+            randomChanges(list, 20000, 40000);
+            assertMatchesModel(list);
+        }
+        assertEquals(0, BlockedSkipList.bulkLoad(new long[0]).size());
+        assertThrows(IllegalArgumentException.class, () -> BlockedSkipList.bulkLoad(new long[] {2, 1}));
+    }
+
+    @Test
+    void extremeKeys() {
+        BlockedSkipList list = new BlockedSkipList();
+        for (long key : new long[] {Long.MAX_VALUE, Long.MIN_VALUE, 0, Long.MIN_VALUE}) {
+            list.insert(key);
+            model.merge(key, 1, Integer::sum);
+        }
+        for (long key : new long[] {Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE + 1, -1, 1})
+            assertEquals(model.containsKey(key), list.contains(key));
+        assertTrue(list.delete(Long.MIN_VALUE));
+        assertTrue(list.contains(Long.MIN_VALUE));
+        assertTrue(list.delete(Long.MIN_VALUE));
+        assertFalse(list.contains(Long.MIN_VALUE));
+        assertEquals(2, list.size());
+    }
+
+    /**
+     * Makes the given number of random inserts and deletes, of keys
+     * from -bound / 2 up to bound / 2, to both the list and the model.
+     */
+    private void randomChanges(BlockedSkipList list, int changes, int bound) {
+        for (int i = 0; i < changes; i++) {
+            long key = rnd.nextInt(bound) - bound / 2;
+            if (rnd.nextInt(3) == 0) {
+                assertEquals(model.containsKey(key), list.delete(key));
+                model.computeIfPresent(key, (k, c) -> c == 1 ? null : c - 1);
+            } else {
+                list.insert(key);
+                model.merge(key, 1, Integer::sum);
+            }
+        }
+    }
+
+    private void assertMatchesModel(BlockedSkipList list) {
+        int size = 0;
+        for (int c : model.values())
+            size += c;
+        assertEquals(size, list.size());
+        long lo = model.isEmpty() ? 0 : model.firstKey() - 1;
+        long hi = model.isEmpty() ? 0 : model.lastKey() + 1;
+        for (long key = lo; key <= hi; key++)
+            assertEquals(model.containsKey(key), list.contains(key));
+    }
+}
@@ -0,0 +1,135 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Rank and select of {@link ConcurrentOrderStatisticSkipList}, checked
+ * against a TreeSet, single-threaded and while writer threads insert
+ * and delete.
+ *
+ * Under concurrent writers, the even keys are loaded first and never
+ * deleted, and the writers only add and remove odd keys, at most one
+ * copy each.  The rank of the even key 2j then lies between j + 1 and
+ * 2j + 1 whatever the writers have done, which readers check on every
+ * call; a rank read from a torn span would fall outside.
+ */
+class ConcurrentOrderStatisticSkipListTest {
+
+    private static final int WRITERS = 4;
+
+    private static final int READERS = 4;
+
+    private static final int KEYS = 2000;
+
+    private final TreeSet<Integer> model = new TreeSet<>();
+
+    private final Random rnd = new Random(42);
+
+    @Test
+    void matchesModelUnderRandomOperations() {
+        ConcurrentOrderStatisticSkipList<Integer> list =
+                new ConcurrentOrderStatisticSkipList<>(null, LevelGenerator.seeded(42, 0.5));
+        for (int i = 0; i < 20000; i++) {
+            int key = rnd.nextInt(KEYS);
+            if (rnd.nextBoolean()) {
+                if (model.add(key))
+                    list.insert(key);
+            } else {
+                assertEquals(model.remove(key), list.delete(key));
+            }
+            if (i % 1000 == 0)
+                list.compact();
+        }
+        assertMatchesModel(list);
+    }
+
+    @Test
+    void ranksStayExactUnderConcurrentWriters() throws Exception {
+        ConcurrentOrderStatisticSkipList<Integer> list = new ConcurrentOrderStatisticSkipList<>();
+        for (int k = 0; k < KEYS; k += 2) {
+            list.insert(k);
+            model.add(k);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<TreeSet<Integer>>> writers = new ArrayList<>();
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < WRITERS; t++) {
+                int thread = t;
+                writers.add(pool.submit(() -> {
+                    // odd keys k with k / 2 % WRITERS == thread belong to this thread
+                    TreeSet<Integer> own = new TreeSet<>();
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    start.await();
+                    for (int i = 0; i < 20000; i++) {
+                        int key = (r.nextInt(KEYS / 2 / WRITERS) * WRITERS + thread) * 2 + 1;
+                        if (own.add(key)) {
+                            list.insert(key);
+                        } else {
+                            own.remove(key);
+                            assertTrue(list.delete(key));
+                        }
+                        if (i % 5000 == 0)
+                            list.compact();
+                    }
+                    return own;
+                }));
+            }
+            for (int t = 0; t < READERS; t++) {
+                readers.add(pool.submit(() -> {
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    start.await();
+                    while (!done.get()) {
+                        int j = r.nextInt(KEYS / 2);
+                        int rank = list.rank(2 * j);
+                        assertTrue(rank >= j + 1 && rank <= 2 * j + 1, "rank of " + 2 * j + " was " + rank);
+                        assertEquals(0, list.select(1));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<TreeSet<Integer>> f : writers)
+                model.addAll(f.get(60, TimeUnit.SECONDS));
+            done.set(true);
+            for (Future<?> f : readers)
+                f.get(60, TimeUnit.SECONDS);
+        } finally {
+            done.set(true);
+            pool.shutdownNow();
+        }
+        assertMatchesModel(list);
+    }
+
+    private void assertMatchesModel(ConcurrentOrderStatisticSkipList<Integer> list) {
+        assertEquals(model.size(), list.size());
+        int rank = 0;
+        for (Integer key : model) {
+            ++rank;
+            assertEquals(rank, list.rank(key));
+            assertEquals(key, list.select(rank));
+        }
+        assertEquals(null, list.select(rank + 1));
+        List<Integer> all = new ArrayList<>();
+        if (rank > 0)
+            list.selectRange(1, rank, all::add);
+        assertEquals(new ArrayList<>(model), all);
+    }
+}
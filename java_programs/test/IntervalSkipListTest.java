@@ -0,0 +1,83 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+import com.spicdt.party.admin.biz.publish.service.IntervalSkipList.Interval;
+
+/**
+ * Stabbing and overlap queries of {@link IntervalSkipList}, checked
+ * against a scan of a TreeSet holding the same intervals, after
+ * random inserts and deletes that leave the span maxima to be
+ * maintained.
+ */
+class IntervalSkipListTest {
+
+    private final TreeSet<Interval> model = new TreeSet<>();
+
+    private final Random rnd = new Random(42);
+
+    @Test
+    void overlapsMatchScan() {
+        IntervalSkipList list = new IntervalSkipList(LevelGenerator.seeded(42, 0.5));
+        for (int i = 0; i < 5000; i++) {
+            Interval v = randomInterval();
+            if (rnd.nextInt(3) == 0) {
+                assertEquals(model.remove(v), list.intervalDelete(v));
+            } else if (model.add(v)) {
+                list.intervalInsert(v);
+            }
+        }
+        for (int i = 0; i < 2000; i++) {
+            int point = rnd.nextInt(10100) - 50;
+            assertEquals(scan(point, point), show(list.stab(point)));
+            Interval q = randomInterval();
+            assertEquals(scan(q.low, q.high), show(list.intervalSearchAll(q)));
+        }
+    }
+
+    @Test
+    void overlapsMatchScanAfterBulkLoadAndCompact() {
+        for (int i = 0; i < 3000; i++)
+            model.add(randomInterval());
+        IntervalSkipList list = IntervalSkipList.bulkLoad(model.toArray(new Interval[0]));
+        for (Interval v : new ArrayList<>(model).subList(0, 2000)) {
+            list.intervalDelete(v);
+            model.remove(v);
+        }
+        list.compact();
+        for (int point = -10; point < 10010; point += 7)
+            assertEquals(scan(point, point), show(list.stab(point)));
+    }
+
+    /**
+     * Mostly short intervals, with a few long ones that overlap many
+     * others.
+     */
+    private Interval randomInterval() {
+        int low = rnd.nextInt(10000);
+        int length = (rnd.nextInt(20) == 0) ? rnd.nextInt(3000) : rnd.nextInt(30);
+        return new Interval(low, low + length);
+    }
+
+    private List<String> scan(int low, int high) {
+        List<String> result = new ArrayList<>();
+        for (Interval v : model)
+            if (v.low <= high && low <= v.high)
+                result.add(v.low + ".." + v.high);
+        return result;
+    }
+
+    private static List<String> show(List<Interval> intervals) {
+        List<String> result = new ArrayList<>();
+        for (Interval v : intervals)
+            result.add(v.low + ".." + v.high);
+        return result;
+    }
+}
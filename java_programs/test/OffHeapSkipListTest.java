@@ -0,0 +1,95 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link OffHeapSkipList}, checked against a TreeMap from each key to
+ * its number of copies, across enough inserts to fill several chunks,
+ * deletes that put records on the free lists, and compaction.
+ */
+class OffHeapSkipListTest {
+
+    private final TreeMap<Long, Integer> model = new TreeMap<>();
+
+    private final Random rnd = new Random(42);
+
+    @Test
+    void matchesModelUnderRandomOperations() {
+        OffHeapSkipList list = new OffHeapSkipList(LevelGenerator.seeded(42, 0.5));
+        randomChanges(list, 50000, 20000);
+        assertMatchesModel(list);
+        list.compact();
+        assertMatchesModel(list);
+        randomChanges(list, 20000, 20000);
+        assertMatchesModel(list);
+    }
+
+    @Test
+    void spansSeveralChunks() {
+        OffHeapSkipList list = new OffHeapSkipList();
+        // 16 bytes or more per record, so well over one 4 MB chunk
+        for (long k = 0; k < 600000; k++) {
+            list.insert(k * 3);
+            model.put(k * 3, 1);
+        }
+        assertTrue(list.bytesReserved() > 4 << 20);
+        assertMatchesModel(list);
+    }
+
+    @Test
+    void reusesFreedRecordsAndCompactsArena() {
+        OffHeapSkipList list = new OffHeapSkipList();
+        for (long k = 0; k < 400000; k++)
+            list.insert(k);
+        long reserved = list.bytesReserved();
+        for (long k = 0; k < 400000; k++)
+            assertTrue(list.delete(k));
+        for (long k = 0; k < 400000; k++)
+            list.insert(k);
+        // records are reused only at their own height, so a few more
+        // of one height than before may need one more chunk
+        assertTrue(list.bytesReserved() <= reserved + (4 << 20));
+
+        for (long k = 0; k < 390000; k++)
+            assertTrue(list.delete(k));
+        list.compact();
+        assertTrue(list.bytesReserved() < reserved);
+        for (long k = 390000; k < 400000; k++)
+            model.put(k, 1);
+        assertMatchesModel(list);
+    }
+
+    /**
+     * Makes the given number of random inserts and deletes, of keys
+     * below bound, to both the list and the model.
+     */
+    private void randomChanges(OffHeapSkipList list, int changes, int bound) {
+        for (int i = 0; i < changes; i++) {
+            long key = rnd.nextInt(bound) - bound / 2;
+            if (rnd.nextInt(3) == 0) {
+                assertEquals(model.containsKey(key), list.delete(key));
+                model.computeIfPresent(key, (k, c) -> c == 1 ? null : c - 1);
+            } else {
+                list.insert(key);
+                model.merge(key, 1, Integer::sum);
+            }
+        }
+    }
+
+    private void assertMatchesModel(OffHeapSkipList list) {
+        int size = 0;
+        for (int c : model.values())
+            size += c;
+        assertEquals(size, list.size());
+        long lo = model.isEmpty() ? 0 : model.firstKey() - 1;
+        long hi = model.isEmpty() ? 0 : model.lastKey() + 1;
+        for (long key = lo; key <= hi; key++)
+            assertEquals(model.containsKey(key), list.contains(key));
+    }
+}
@@ -0,0 +1,175 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Crash recovery of {@link PersistentRangeQuerySkipList}.
+ *
+ * A crash is simulated by syncing the log and dropping the list
+ * without closing it, so that nothing is checkpointed, and the
+ * directory is then reopened by a new list.  Every synced change
+ * must come back, checked against a TreeMap holding the same
+ * entries.
+ */
+class PersistentRangeQuerySkipListTest {
+
+    /**
+     * The size of a log record: op, seq, key, value and CRC.
+     */
+    private static final int LOG_RECORD = 29;
+
+    @TempDir
+    Path dir;
+
+    private final TreeMap<Long, Double> model = new TreeMap<>();
+
+    private final Random rnd = new Random(42);
+
+    @Test
+    void replaysLogAfterCrash() throws IOException {
+        PersistentRangeQuerySkipList list = new PersistentRangeQuerySkipList(dir);
+        randomChanges(list, 5000, 2000);
+        list.sync();
+
+        assertMatchesModel(reopen());
+    }
+
+    @Test
+    void replaysLogOnTopOfCheckpoint() throws IOException {
+        PersistentRangeQuerySkipList list = new PersistentRangeQuerySkipList(dir);
+        randomChanges(list, 3000, 1000);
+        list.checkpoint();
+        randomChanges(list, 3000, 1000);
+        list.sync();
+
+        assertMatchesModel(reopen());
+    }
+
+    @Test
+    void dropsTornLogTail() throws IOException {
+        PersistentRangeQuerySkipList list = new PersistentRangeQuerySkipList(dir);
+        randomChanges(list, 2000, 500);
+        list.sync();
+        Path wal = dir.resolve("wal");
+        long synced = Files.size(wal);
+        try (FileChannel ch = FileChannel.open(wal, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // a whole record with a bad checksum, then half a record
+            ByteBuffer last = ByteBuffer.allocate(LOG_RECORD);
+            ch.read(last, synced - LOG_RECORD);
+            last.put(10, (byte) (last.get(10) ^ 1));
+            last.flip();
+            ch.write(last, synced);
+            ch.write(ByteBuffer.wrap(new byte[LOG_RECORD / 2]), synced + LOG_RECORD);
+        }
+
+        PersistentRangeQuerySkipList reopened = reopen();
+        assertMatchesModel(reopened);
+        assertEquals(synced, Files.size(wal));
+
+        // the log goes on from where the torn tail was cut
+        randomChanges(reopened, 500, 500);
+        reopened.sync();
+        assertMatchesModel(reopen());
+    }
+
+    @Test
+    void recoversAfterImageGrows() throws IOException {
+        PersistentRangeQuerySkipList list = new PersistentRangeQuerySkipList(dir);
+        long before = Files.size(dir.resolve("data"));
+        randomChanges(list, 60000, 0);
+        assertTrue(Files.size(dir.resolve("data")) > before, "image should have grown");
+        randomChanges(list, 1000, 1000);
+        list.sync();
+
+        assertMatchesModel(reopen());
+    }
+
+    @Test
+    void recoversAfterCompact() throws IOException {
+        PersistentRangeQuerySkipList list = new PersistentRangeQuerySkipList(dir, LevelGenerator.threadLocal(0.25));
+        randomChanges(list, 20000, 0);
+        randomChanges(list, 0, 12000);
+        list.compact();
+        randomChanges(list, 2000, 2000);
+        list.sync();
+
+        assertMatchesModel(reopen());
+    }
+
+    @Test
+    void reopensAfterClose() throws IOException {
+        PersistentRangeQuerySkipList list = new PersistentRangeQuerySkipList(dir);
+        randomChanges(list, 3000, 1000);
+        list.close();
+
+        PersistentRangeQuerySkipList reopened = reopen();
+        assertMatchesModel(reopened);
+        assertEquals(0, Files.size(dir.resolve("wal")));
+        reopened.close();
+    }
+
+    /**
+     * Makes the given numbers of random inserts and deletes, to both
+     * the list and the model.
+     */
+    private void randomChanges(PersistentRangeQuerySkipList list, int inserts, int deletes) throws IOException {
+        for (int i = 0; i < inserts; ++i) {
+            long key = rnd.nextInt(1 << 20);
+            if (model.containsKey(key))
+                continue;
+            double value = rnd.nextInt(1000);
+            list.insert(key, value);
+            model.put(key, value);
+        }
+        for (int i = 0; i < deletes; ++i) {
+            long key = rnd.nextInt(1 << 20);
+            Map.Entry<Long, Double> e = model.ceilingEntry(key);
+            if (e == null) {
+                assertFalse(list.delete(key));
+                continue;
+            }
+            assertTrue(list.delete(e.getKey()));
+            model.remove(e.getKey());
+        }
+    }
+
+    private PersistentRangeQuerySkipList reopen() throws IOException {
+        return new PersistentRangeQuerySkipList(dir);
+    }
+
+    private void assertMatchesModel(PersistentRangeQuerySkipList list) {
+        assertEquals(model.size(), list.size());
+        for (long key : model.keySet())
+            assertTrue(list.contains(key), "missing " + key);
+        for (int i = 0; i < 200; ++i) {
+            long start = rnd.nextInt(1 << 20);
+            long end = start + rnd.nextInt(1 << 16);
+            RangeQuerySkipList.RangeQueryResult r = list.rangeQuery(start, end);
+            Map<Long, Double> range = model.subMap(start, true, end, true);
+            assertEquals(range.size(), r.getCount(), "count of [" + start + ", " + end + "]");
+            assertEquals(range.values().stream().mapToDouble(Double::doubleValue).sum(), r.getSum(),
+                    "sum of [" + start + ", " + end + "]");
+            if (!range.isEmpty()) {
+                assertEquals(range.values().stream().mapToDouble(Double::doubleValue).min().getAsDouble(),
+                        r.getMin(), "min of [" + start + ", " + end + "]");
+                assertEquals(range.values().stream().mapToDouble(Double::doubleValue).max().getAsDouble(),
+                        r.getMax(), "max of [" + start + ", " + end + "]");
+            }
+        }
+    }
+}
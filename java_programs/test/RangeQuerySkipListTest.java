@@ -0,0 +1,129 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Batch updates of {@link RangeQuerySkipList}, checked against a
+ * TreeMap from each key to its values, in the order the list keeps
+ * them: one by one, an insert puts its value before those of equal
+ * keys and a delete removes the first, and a batch must leave the
+ * list as the same changes made one by one would.
+ */
+class RangeQuerySkipListTest {
+
+    private final TreeMap<Integer, ArrayDeque<Double>> model = new TreeMap<>();
+
+    private final Random rnd = new Random(42);
+
+    /**
+     * Each value given, so that the order of equal keys shows.
+     */
+    private double nextValue;
+
+    @Test
+    void batchesMatchModel() {
+        RangeQuerySkipList<Integer> list = new RangeQuerySkipList<>(LevelGenerator.seeded(42, 0.5));
+        for (int i = 0; i < 300; i++) {
+            Integer[] keys = randomBatch();
+            if (rnd.nextInt(3) == 0) {
+                int removed = 0;
+                for (Integer key : keys) {
+                    ArrayDeque<Double> values = model.get(key);
+                    if (values != null) {
+                        values.removeFirst();
+                        if (values.isEmpty())
+                            model.remove(key);
+                        removed++;
+                    }
+                }
+                assertEquals(removed, list.deleteAll(keys));
+            } else {
+                double[] values = new double[keys.length];
+                for (int k = 0; k < keys.length; k++) {
+                    values[k] = nextValue++;
+                    model.computeIfAbsent(keys[k], key -> new ArrayDeque<>()).addFirst(values[k]);
+                }
+                list.insertAll(keys, values);
+            }
+        }
+        assertMatchesModel(list);
+    }
+
+    @Test
+    void batchKeepsEqualKeysInInsertOrder() {
+        RangeQuerySkipList<Integer> batch = new RangeQuerySkipList<>(LevelGenerator.seeded(42, 0.5));
+        RangeQuerySkipList<Integer> single = new RangeQuerySkipList<>(LevelGenerator.seeded(42, 0.5));
+        for (int key = 0; key < 100; key += 10) {
+            batch.insert(key, -key);
+            single.insert(key, -key);
+        }
+        Integer[] keys = {0, 0, 0, 5, 10, 10, 20, 20, 20, 20, 95, 95};
+        double[] values = new double[keys.length];
+        for (int k = 0; k < keys.length; k++) {
+            values[k] = k;
+            single.insert(keys[k], k);
+        }
+        batch.insertAll(keys, values);
+        assertEquals(single.rangeQuery(0, 100, inOrder()), batch.rangeQuery(0, 100, inOrder()));
+    }
+
+    /**
+     * Returns up to 20 keys below 1000, in ascending order, with runs
+     * of equal keys.
+     */
+    private Integer[] randomBatch() {
+        Integer[] keys = new Integer[1 + rnd.nextInt(20)];
+        for (int k = 0; k < keys.length; k++)
+            keys[k] = (k > 0 && rnd.nextInt(4) == 0) ? keys[k - 1] : rnd.nextInt(1000);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Returns an aggregator listing the values in order, which a range
+     * query on any list that does not keep it in its spans gets by
+     * combining them one by one.
+     */
+    private static Aggregator<Double, List<Double>> inOrder() {
+        return new Aggregator<Double, List<Double>>() {
+            public List<Double> identity() { return new ArrayList<>(); }
+            public List<Double> lift(Double value) { return new ArrayList<>(List.of(value)); }
+            public List<Double> combine(List<Double> left, List<Double> right) {
+                left.addAll(right);
+                return left;
+            }
+        };
+    }
+
+    private void assertMatchesModel(RangeQuerySkipList<Integer> list) {
+        List<Double> expected = new ArrayList<>();
+        for (ArrayDeque<Double> values : model.values())
+            expected.addAll(values);
+        assertEquals(expected.size(), list.size());
+        assertEquals(expected, list.rangeQuery(-1, 1000, inOrder()));
+        // the spans the batches left stale must have been repaired
+        for (int i = 0; i < 500; i++) {
+            int start = rnd.nextInt(1000), end = start + rnd.nextInt(200);
+            int count = 0;
+            double sum = 0;
+            for (Map.Entry<Integer, ArrayDeque<Double>> e : model.subMap(start, true, end, true).entrySet()) {
+                count += e.getValue().size();
+                for (double v : e.getValue())
+                    sum += v;
+            }
+            RangeQuerySkipList.RangeQueryResult r = list.rangeQuery(start, end);
+            assertEquals(count, r.getCount());
+            assertEquals(sum, r.getSum());
+        }
+    }
+}
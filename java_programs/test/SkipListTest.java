@@ -0,0 +1,550 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Lock-free {@link SkipList}, checked against a TreeMap from each key
+ * to its number of copies, both single-threaded, one random operation
+ * at a time, and after threads have inserted and deleted
+ * concurrently.
+ */
+class SkipListTest {
+
+    private static final int THREADS = 8;
+
+    private final TreeMap<Integer, Integer> model = new TreeMap<>();
+
+    private final Random rnd = new Random(42);
+
+    @Test
+    void matchesModelUnderRandomOperations() {
+        SkipList<Integer> list = new SkipList<>(LevelGenerator.seeded(42, 0.5));
+        for (int i = 0; i < 20000; i++) {
+            int key = rnd.nextInt(500);
+            switch (rnd.nextInt(3)) {
+                case 0:
+                    list.insert(key);
+                    model.merge(key, 1, Integer::sum);
+                    break;
+                case 1:
+                    assertEquals(model.containsKey(key), list.delete(key));
+                    model.computeIfPresent(key, (k, c) -> c == 1 ? null : c - 1);
+                    break;
+                default:
+                    assertEquals(model.containsKey(key), list.contains(key));
+                    break;
+            }
+        }
+        assertMatchesModel(list);
+    }
+
+    @Test
+    void batchesMatchModel() {
+        SkipList<Integer> list = new SkipList<>(LevelGenerator.seeded(42, 0.5));
+        for (int i = 0; i < 500; i++) {
+            List<Integer> keys = new ArrayList<>();
+            for (int k = rnd.nextInt(40); k > 0; k--)
+                keys.add(rnd.nextInt(1000));
+            // sorted, clustered or in no order at all
+            if (rnd.nextBoolean())
+                keys.sort(null);
+            if (rnd.nextInt(3) == 0) {
+                int removed = 0;
+                for (Integer key : keys) {
+                    if (model.containsKey(key))
+                        removed++;
+                    model.computeIfPresent(key, (k, c) -> c == 1 ? null : c - 1);
+                }
+                assertEquals(removed, list.deleteAll(keys));
+            } else {
+                list.insertAll(keys);
+                for (Integer key : keys)
+                    model.merge(key, 1, Integer::sum);
+            }
+        }
+        assertMatchesModel(list);
+    }
+
+    @Test
+    void cursorMatchesModel() {
+        SkipList<Integer> list = new SkipList<>(LevelGenerator.seeded(42, 0.5));
+        TreeSet<Integer> keys = new TreeSet<>();
+        for (int i = 0; i < 2000; i++) {
+            int key = rnd.nextInt(5000);
+            if (keys.add(key))
+                list.insert(key);
+        }
+        SkipList<Integer>.Cursor cursor = list.cursor();
+        assertFalse(cursor.next());
+        Integer expected = null;
+        for (int i = 0; i < 20000; i++) {
+            switch (rnd.nextInt(5)) {
+                case 0:
+                    int key = rnd.nextInt(5100) - 50;
+                    expected = keys.ceiling(key);
+                    assertEquals(expected != null, cursor.seek(key));
+                    break;
+                case 1:
+                    if (rnd.nextBoolean()) {
+                        assertTrue(cursor.seekFirst());
+                        expected = keys.first();
+                    } else {
+                        assertTrue(cursor.seekLast());
+                        expected = keys.last();
+                    }
+                    break;
+                case 2:
+                case 3:
+                    expected = (expected == null) ? null : keys.higher(expected);
+                    assertEquals(expected != null, cursor.next());
+                    break;
+                default:
+                    expected = (expected == null) ? null : keys.lower(expected);
+                    assertEquals(expected != null, cursor.prev());
+                    break;
+            }
+            assertEquals(expected, cursor.key());
+        }
+    }
+
+    @Test
+    void cursorMovesOnFromDeletedElement() {
+        SkipList<Integer> list = new SkipList<>();
+        for (int key : new int[] {0, 10, 10, 20})
+            list.insert(key);
+        SkipList<Integer>.Cursor cursor = list.cursor();
+        assertTrue(cursor.seek(10));
+        // the first 10 goes, and the cursor goes on to the second
+        assertTrue(list.delete(10));
+        assertTrue(cursor.next());
+        assertEquals(10, cursor.key());
+        // the second goes, and 15 comes after it was unlinked
+        assertTrue(list.delete(10));
+        list.insert(15);
+        assertTrue(cursor.next());
+        assertEquals(15, cursor.key());
+        assertTrue(list.delete(15));
+        assertTrue(cursor.prev());
+        assertEquals(0, cursor.key());
+    }
+
+    @Test
+    void cursorIsWeaklyConsistentUnderConcurrentUpdates() throws Exception {
+        SkipList<Integer> list = new SkipList<>();
+        // even keys stay, odd keys come and go
+        for (int key = 0; key < 4000; key += 2)
+            list.insert(key);
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                writers.add(pool.submit(() -> {
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    while (!done.get()) {
+                        int key = r.nextInt(2000) * 2 + 1;
+                        if (r.nextBoolean())
+                            list.insert(key);
+                        else
+                            list.delete(key);
+                    }
+                    return null;
+                }));
+            }
+            for (int pass = 0; pass < 20; pass++) {
+                SkipList<Integer>.Cursor cursor = list.cursor();
+                int even = 0;
+                Integer last = null;
+                for (boolean more = cursor.seekFirst(); more; more = cursor.next()) {
+                    int key = cursor.key();
+                    assertTrue(last == null || key >= last, key + " after " + last);
+                    if (key % 2 == 0) {
+                        assertEquals(2 * even++, key);
+                        if (rnd.nextInt(4) == 0) {
+                            // step back and return, across odd keys the writers delete
+                            if (cursor.prev())
+                                assertTrue(cursor.key() < key);
+                            assertTrue(cursor.seek(key));
+                            assertEquals(key, cursor.key());
+                        }
+                    }
+                    last = key;
+                }
+                assertEquals(2000, even);
+            }
+            done.set(true);
+            for (Future<?> f : writers)
+                f.get(60, TimeUnit.SECONDS);
+        } finally {
+            done.set(true);
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void splitsCoverModelInOrder() {
+        SkipList<Integer> list = new SkipList<>(LevelGenerator.seeded(42, 0.5));
+        for (int i = 0; i < 20000; i++) {
+            int key = rnd.nextInt(5000);
+            list.insert(key);
+            model.merge(key, 1, Integer::sum);
+        }
+        for (int i = 0; i < 50; i++) {
+            List<Integer> all = new ArrayList<>();
+            int parts = split(list.spliterator(), 1 + rnd.nextInt(7), all);
+            assertTrue(parts > 1);
+            assertEquals(expected(model), all);
+        }
+        assertEquals(expected(model), list.parallelStream().collect(Collectors.toList()));
+        assertEquals(list.size(), list.parallelStream().count());
+    }
+
+    @Test
+    void subSetsMatchModel() {
+        SkipList<Integer> list = new SkipList<>(LevelGenerator.seeded(42, 0.5));
+        for (int i = 0; i < 5000; i++) {
+            int key = rnd.nextInt(1000);
+            list.insert(key);
+            model.merge(key, 1, Integer::sum);
+        }
+        for (int i = 0; i < 300; i++) {
+            int lo = rnd.nextInt(1100) - 50, hi = lo + rnd.nextInt(300);
+            SkipList<Integer>.SubSet view;
+            NavigableMap<Integer, Integer> range;
+            switch (rnd.nextInt(3)) {
+                case 0:
+                    view = list.subSet(lo, hi);
+                    range = model.subMap(lo, true, hi, false);
+                    break;
+                case 1:
+                    view = list.headSet(hi);
+                    range = model.headMap(hi, false);
+                    break;
+                default:
+                    view = list.tailSet(lo);
+                    range = model.tailMap(lo, true);
+                    break;
+            }
+            List<Integer> expected = expected(range);
+            List<Integer> actual = new ArrayList<>(view);
+            assertEquals(expected, actual);
+            assertEquals(expected.size(), view.size());
+            assertEquals(expected.isEmpty(), view.isEmpty());
+            List<Integer> split = new ArrayList<>();
+            split(view.spliterator(), 3, split);
+            assertEquals(expected, split);
+            int key = rnd.nextInt(1100) - 50;
+            assertEquals(range.containsKey(key), view.contains(key));
+            if (range.containsKey(key) && rnd.nextBoolean()) {
+                assertTrue(view.remove(key));
+                range.computeIfPresent(key, (k, c) -> c == 1 ? null : c - 1);
+            } else if (view.contains(key)) {
+                assertTrue(view.add(key));
+                range.merge(key, 1, Integer::sum);
+            } else if (!model.containsKey(key) && key > hi) {
+                int outside = key;
+                assertThrows(IllegalArgumentException.class, () -> list.subSet(lo, hi).add(outside));
+            }
+        }
+        assertMatchesModel(list);
+    }
+
+    @Test
+    void parallelStreamIsWeaklyConsistentUnderConcurrentUpdates() throws Exception {
+        SkipList<Integer> list = new SkipList<>();
+        // even keys stay, odd keys come and go
+        for (int key = 0; key < 20000; key += 2)
+            list.insert(key);
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS / 2);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < THREADS / 2; t++) {
+                writers.add(pool.submit(() -> {
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    while (!done.get()) {
+                        int key = r.nextInt(10000) * 2 + 1;
+                        if (r.nextBoolean())
+                            list.insert(key);
+                        else
+                            list.delete(key);
+                    }
+                    return null;
+                }));
+            }
+            for (int pass = 0; pass < 20; pass++) {
+                List<Integer> all = list.parallelStream().collect(Collectors.toList());
+                for (int i = 1; i < all.size(); i++)
+                    assertTrue(all.get(i - 1) <= all.get(i));
+                assertEquals(10000, all.stream().filter(k -> k % 2 == 0).count());
+                assertEquals(5000, list.subSet(5000, 15000).stream().filter(k -> k % 2 == 0).count());
+            }
+            done.set(true);
+            for (Future<?> f : writers)
+                f.get(60, TimeUnit.SECONDS);
+        } finally {
+            done.set(true);
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void compactMatchesModel() {
+        SkipList<Integer> list = new SkipList<>(LevelGenerator.seeded(42, 0.5));
+        for (int i = 0; i < 20000; i++) {
+            int key = rnd.nextInt(5000);
+            list.insert(key);
+            model.merge(key, 1, Integer::sum);
+        }
+        int height = list.stats().getHeight();
+        // delete all but every hundredth key
+        for (int key = 0; key < 5000; key++) {
+            if (key % 100 != 0) {
+                while (list.delete(key))
+                    ;
+                model.remove(key);
+            }
+        }
+        list.compact();
+        assertTrue(list.stats().getHeight() < height);
+        assertMatchesModel(list);
+        for (int i = 0; i < 5000; i++) {
+            int key = rnd.nextInt(5000);
+            assertEquals(model.containsKey(key), list.delete(key));
+            model.computeIfPresent(key, (k, c) -> c == 1 ? null : c - 1);
+            if (i % 500 == 0)
+                list.compact();
+        }
+        assertMatchesModel(list);
+    }
+
+    @Test
+    void compactIndexesInsertsMadeDuringRebuild() {
+        LateInserts generator = new LateInserts();
+        SkipList<Integer> list = new SkipList<>(generator);
+        for (int key = 0; key < 4000; key += 2)
+            list.insert(key);
+        // halfway through the rebuild, below the key it has reached
+        generator.list = list;
+        for (int key = 1; key < 200; key += 2)
+            generator.keys.add(key);
+        list.compact();
+        assertTrue(generator.keys.isEmpty());
+        // 1000 of the 2000 elements seen, and every late one
+        assertEquals(1100, list.stats().getIndexCounts()[1]);
+        for (int key = 0; key < 4000; key++)
+            assertEquals(key % 2 == 0 || key < 200, list.contains(key));
+    }
+
+    @Test
+    void compactWhileThreadsUpdate() throws Exception {
+        SkipList<Integer> list = new SkipList<>();
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<TreeMap<Integer, Integer>>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                results.add(pool.submit(() -> {
+                    TreeMap<Integer, Integer> own = new TreeMap<>();
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    start.await();
+                    for (int i = 0; i < 5000; i++) {
+                        int key = r.nextInt(1000) * THREADS + thread;
+                        if (r.nextInt(3) == 0) {
+                            assertEquals(own.containsKey(key), list.delete(key));
+                            own.computeIfPresent(key, (k, c) -> c == 1 ? null : c - 1);
+                        } else {
+                            list.insert(key);
+                            own.merge(key, 1, Integer::sum);
+                        }
+                    }
+                    return own;
+                }));
+            }
+            Future<?> compactor = pool.submit(() -> {
+                start.await();
+                while (!done.get())
+                    list.compact();
+                return null;
+            });
+            start.countDown();
+            for (Future<TreeMap<Integer, Integer>> f : results)
+                model.putAll(f.get(60, TimeUnit.SECONDS));
+            done.set(true);
+            compactor.get(60, TimeUnit.SECONDS);
+        } finally {
+            done.set(true);
+            pool.shutdownNow();
+        }
+        assertMatchesModel(list);
+        list.compact();
+        assertMatchesModel(list);
+    }
+
+    @Test
+    void concurrentUpdatesOnDisjointKeys() throws Exception {
+        SkipList<Integer> list = new SkipList<>();
+        int perThread = 5000;
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<TreeMap<Integer, Integer>>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                results.add(pool.submit(() -> {
+                    // keys k with k % THREADS == thread belong to this thread
+                    TreeMap<Integer, Integer> own = new TreeMap<>();
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        int key = r.nextInt(1000) * THREADS + thread;
+                        if (r.nextInt(3) == 0) {
+                            assertEquals(own.containsKey(key), list.delete(key));
+                            own.computeIfPresent(key, (k, c) -> c == 1 ? null : c - 1);
+                        } else {
+                            list.insert(key);
+                            own.merge(key, 1, Integer::sum);
+                            assertTrue(list.contains(key));
+                        }
+                    }
+                    return own;
+                }));
+            }
+            start.countDown();
+            for (Future<TreeMap<Integer, Integer>> f : results)
+                model.putAll(f.get(60, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+        assertMatchesModel(list);
+    }
+
+    @Test
+    void concurrentUpdatesOnSharedKeys() throws Exception {
+        SkipList<Integer> list = new SkipList<>();
+        int perThread = 5000;
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(pool.submit(() -> {
+                    // net number of copies this thread added, per key
+                    int[] net = new int[64];
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        int key = r.nextInt(net.length);
+                        if (r.nextBoolean()) {
+                            list.insert(key);
+                            net[key]++;
+                        } else if (list.delete(key)) {
+                            net[key]--;
+                        }
+                    }
+                    return net;
+                }));
+            }
+            start.countDown();
+            int[] total = new int[64];
+            for (Future<int[]> f : results) {
+                int[] net = f.get(60, TimeUnit.SECONDS);
+                for (int k = 0; k < total.length; k++)
+                    total[k] += net[k];
+            }
+            for (int k = 0; k < total.length; k++)
+                if (total[k] > 0)
+                    model.put(k, total[k]);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertMatchesModel(list);
+    }
+
+    /**
+     * Gives every insert one index level, and once compact has placed
+     * the 1000th element, inserts the given keys into the list, so
+     * that keys below that element are inserted where the rebuild has
+     * already been.
+     */
+    private static final class LateInserts implements LevelGenerator {
+        SkipList<Integer> list;
+        final List<Integer> keys = new ArrayList<>();
+
+        @Override
+        public int nextLevel() {
+            return 1;
+        }
+
+        @Override
+        public int idealLevel(long position) {
+            if (position == 1000 && list != null) {
+                for (Integer key : keys)
+                    list.insert(key);
+                keys.clear();
+            }
+            return LevelGenerator.super.idealLevel(position);
+        }
+    }
+
+    /**
+     * Splits the spliterator to the given depth, or until it will not
+     * split, and adds the elements of the parts to into, in order.
+     * Returns the number of parts.
+     */
+    private static int split(Spliterator<Integer> s, int depth, List<Integer> into) {
+        Spliterator<Integer> prefix = (depth > 0) ? s.trySplit() : null;
+        if (prefix == null) {
+            s.forEachRemaining(into::add);
+            return 1;
+        }
+        return split(prefix, depth - 1, into) + split(s, depth - 1, into);
+    }
+
+    /**
+     * Returns the elements of the model, or of a range of it, in
+     * order, each as many times as it is counted.
+     */
+    private static List<Integer> expected(Map<Integer, Integer> counts) {
+        List<Integer> expected = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> e : counts.entrySet())
+            for (int c = 0; c < e.getValue(); c++)
+                expected.add(e.getKey());
+        return expected;
+    }
+
+    private void assertMatchesModel(SkipList<Integer> list) {
+        List<Integer> expected = expected(model);
+        List<Integer> actual = new ArrayList<>();
+        list.forEach(actual::add);
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), list.size());
+        for (int key = -1; key <= (model.isEmpty() ? 0 : model.lastKey() + 1); key++)
+            assertEquals(model.containsKey(key), list.contains(key));
+        assertFalse(list.contains(Integer.MAX_VALUE));
+    }
+}
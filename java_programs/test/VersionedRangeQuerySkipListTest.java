@@ -0,0 +1,200 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import com.spicdt.party.admin.biz.publish.service.RangeQuerySkipList.RangeQueryResult;
+
+/**
+ * {@link VersionedRangeQuerySkipList} and its snapshots, checked
+ * against TreeMaps from each key to its values: the list against the
+ * current entries, and each open snapshot against a copy of them made
+ * when it was taken, however many updates, and reclamations, have run
+ * since.  Values are small integers, so sums are exact.
+ */
+class VersionedRangeQuerySkipListTest {
+
+    private static final int READERS = 4;
+
+    private final TreeMap<Integer, List<Double>> model = new TreeMap<>();
+
+    private final Random rnd = new Random(42);
+
+    @Test
+    void snapshotsMatchModelsOfTheirVersion() {
+        VersionedRangeQuerySkipList<Integer> list = new VersionedRangeQuerySkipList<>(LevelGenerator.seeded(42, 0.5));
+        List<VersionedRangeQuerySkipList<Integer>.Snapshot> open = new ArrayList<>();
+        List<TreeMap<Integer, List<Double>>> frozen = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            int key = rnd.nextInt(1000);
+            if (rnd.nextInt(3) == 0) {
+                List<Double> values = model.get(key);
+                assertEquals(values != null, list.delete(key));
+                if (values != null) {
+                    values.remove(0);
+                    if (values.isEmpty())
+                        model.remove(key);
+                }
+            } else {
+                double value = rnd.nextInt(100);
+                list.insert(key, value);
+                model.computeIfAbsent(key, k -> new ArrayList<>()).add(0, value);
+            }
+            if (rnd.nextInt(200) == 0) {
+                open.add(list.snapshot());
+                frozen.add(copy(model));
+            }
+            if (!open.isEmpty() && rnd.nextInt(300) == 0) {
+                int s = rnd.nextInt(open.size());
+                VersionedRangeQuerySkipList<Integer>.Snapshot snapshot = open.remove(s);
+                frozen.remove(s);
+                snapshot.close();
+                assertThrows(IllegalStateException.class, () -> snapshot.rank(0));
+            }
+            if (i % 1000 == 0) {
+                assertMatches(model, list.size(), list::rangeQuery, list::rank);
+                for (int s = 0; s < open.size(); s++)
+                    assertMatches(frozen.get(s), open.get(s).size(), open.get(s)::rangeQuery, open.get(s)::rank);
+            }
+        }
+        for (int s = 0; s < open.size(); s++) {
+            assertMatches(frozen.get(s), open.get(s).size(), open.get(s)::rangeQuery, open.get(s)::rank);
+            open.get(s).close();
+        }
+        list.insert(0, 0);
+        model.computeIfAbsent(0, k -> new ArrayList<>()).add(0, 0.0);
+        assertMatches(model, list.size(), list::rangeQuery, list::rank);
+    }
+
+    /**
+     * The writer keeps the even keys and inserts and deletes odd ones,
+     * while readers take snapshots and check that each answers from
+     * one version: the whole range holds as many entries as the
+     * snapshot's size, all even keys are there, and a query repeated
+     * later in the snapshot's life gives the same answer.
+     */
+    @Test
+    void snapshotsAreConsistentUnderConcurrentWriter() throws Exception {
+        VersionedRangeQuerySkipList<Integer> list = new VersionedRangeQuerySkipList<>();
+        for (int key = 0; key < 2000; key += 2)
+            list.insert(key, 1);
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(READERS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < READERS; t++) {
+                readers.add(pool.submit(() -> {
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    start.await();
+                    while (!done.get()) {
+                        try (VersionedRangeQuerySkipList<Integer>.Snapshot s = list.snapshot()) {
+                            RangeQueryResult all = s.rangeQuery(0, 2000);
+                            assertEquals(s.size(), all.getCount());
+                            assertEquals(1000, all.getCount() - odd(s));
+                            int lo = r.nextInt(2000), hi = lo + r.nextInt(200);
+                            RangeQueryResult first = s.rangeQuery(lo, hi);
+                            Thread.yield();
+                            RangeQueryResult again = s.rangeQuery(lo, hi);
+                            assertEquals(first.toString(), again.toString());
+                            int key = 2 * r.nextInt(1000);
+                            assertEquals(s.rank(key), s.rank(key));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            Random w = new Random(42);
+            Set<Integer> odd = new HashSet<>();
+            for (int i = 0; i < 100000; i++) {
+                int key = 2 * w.nextInt(1000) + 1;
+                if (odd.remove(key)) {
+                    assertTrue(list.delete(key));
+                } else {
+                    list.insert(key, 2);
+                    odd.add(key);
+                }
+            }
+            done.set(true);
+            for (Future<?> f : readers)
+                f.get(60, TimeUnit.SECONDS);
+            assertEquals(1000 + odd.size(), list.size());
+        } finally {
+            done.set(true);
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the number of odd keys in the snapshot, whose entries
+     * have value 2 where the even keys have 1.
+     */
+    private static int odd(VersionedRangeQuerySkipList<Integer>.Snapshot s) {
+        RangeQueryResult all = s.rangeQuery(0, 2000);
+        return (int) all.getSum() - all.getCount();
+    }
+
+    private interface RangeQuery {
+        RangeQueryResult rangeQuery(Integer start, Integer end);
+    }
+
+    private interface Rank {
+        int rank(Object key);
+    }
+
+    private void assertMatches(TreeMap<Integer, List<Double>> expected, int size, RangeQuery query, Rank rank) {
+        int count = 0;
+        for (List<Double> values : expected.values())
+            count += values.size();
+        assertEquals(count, size);
+        for (int i = 0; i < 100; i++) {
+            int start = rnd.nextInt(1100) - 50, end = start + rnd.nextInt(300);
+            int n = 0;
+            double sum = 0, min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for (List<Double> values : expected.subMap(start, true, end, true).values()) {
+                for (double v : values) {
+                    n++;
+                    sum += v;
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                }
+            }
+            RangeQueryResult r = query.rangeQuery(start, end);
+            assertEquals(n, r.getCount());
+            assertEquals(sum, r.getSum());
+            assertEquals(min, r.getMin());
+            assertEquals(max, r.getMax());
+            int key = rnd.nextInt(1000);
+            int before = 0;
+            for (List<Double> values : expected.headMap(key, false).values())
+                before += values.size();
+            assertEquals(expected.containsKey(key) ? before + 1 : -1, rank.rank(key));
+        }
+    }
+
+    private static TreeMap<Integer, List<Double>> copy(TreeMap<Integer, List<Double>> model) {
+        TreeMap<Integer, List<Double>> copy = new TreeMap<>();
+        for (Map.Entry<Integer, List<Double>> e : model.entrySet())
+            copy.put(e.getKey(), new ArrayList<>(e.getValue()));
+        return copy;
+    }
+}
@@ -0,0 +1,103 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * The {@link ConcurrentSkipListMap} baseline: put, remove and
+ * containsKey, by size, key distribution and number of threads; see
+ * {@link SkipListBench}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ConcurrentSkipListMapBench {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"uniform", "zipf", "sequential"})
+    public String dist;
+
+    @Param({"1", "2", "4", "8", "16", "32", "64"})
+    public int threads;
+
+    ConcurrentSkipListMap<Integer, Double> map;
+    Integer[] fresh;
+    Integer[] queries;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) {
+        Workloads.checkThreads(params, threads);
+        map = new ConcurrentSkipListMap<>();
+        for (Integer k : Workloads.keys(dist, size))
+            map.put(k, 1.0);
+        fresh = Workloads.fresh(dist, size);
+        queries = Workloads.queries(dist, size);
+    }
+
+    @Benchmark
+    public Double put(Inserted k) {
+        return map.put(k.key, 1.0);
+    }
+
+    @Benchmark
+    public Double remove(Deleted k) {
+        return map.remove(k.key);
+    }
+
+    @Benchmark
+    public boolean containsKey(Workloads.Cursor c) {
+        return map.containsKey(queries[c.next(size)]);
+    }
+
+    /**
+     * A fresh key, taken out again after the call.
+     */
+    @State(Scope.Thread)
+    public static class Inserted {
+        Integer key;
+
+        @Setup(Level.Invocation)
+        public void next(ConcurrentSkipListMapBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(ConcurrentSkipListMapBench b) {
+            b.map.remove(key);
+        }
+    }
+
+    /**
+     * A fresh key, added before the call.
+     */
+    @State(Scope.Thread)
+    public static class Deleted {
+        Integer key;
+
+        @Setup(Level.Invocation)
+        public void next(ConcurrentSkipListMapBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+            b.map.put(key, 1.0);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * The same n uniform keys held on the heap, by {@link SkipList}, and
+ * off it, by {@link OffHeapSkipList}: the bytes per entry each takes,
+ * and the time a full collection takes while each is live.
+ *
+ * Each iteration builds the list, untimed, and times one System.gc()
+ * while it is live.  The growth of the used heap across the build,
+ * read after a System.gc() on either side, and the off-heap bytes the
+ * list reports, are given per entry as the secondary results
+ * heapBytesPerEntry and offHeapBytesPerEntry.  The figures assume a
+ * collector for which System.gc() is a full, stop-the-world
+ * collection: run without -XX:+ExplicitGCInvokesConcurrent, and with
+ * a fixed heap (-Xms = -Xmx).
+ *
+ * The time the collector spends during the other benchmarks is not
+ * measured here; run them with -prof gc, which adds the allocation
+ * rate and the collection count and time to each result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(2)
+public class FootprintBench {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"SkipList", "OffHeapSkipList"})
+    public String list;
+
+    Integer[] keys;
+    int samples;
+    Object live;
+    double heapBytesPerEntry;
+    double offHeapBytesPerEntry;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) {
+        samples = params.getMeasurement().getCount() * Math.max(1, params.getForks());
+        keys = Workloads.keys("uniform", size);
+    }
+
+    @Setup(Level.Iteration)
+    public void build() {
+        long used0 = usedHeap();
+        if (list.equals("SkipList")) {
+            SkipList<Long> l = new SkipList<>();
+            for (Integer k : keys)
+                l.insert((long) k);
+            live = l;
+            offHeapBytesPerEntry = 0;
+        } else {
+            OffHeapSkipList l = new OffHeapSkipList();
+            for (Integer k : keys)
+                l.insert(k);
+            live = l;
+            offHeapBytesPerEntry = l.bytesPerEntry();
+        }
+        long used1 = usedHeap();
+        heapBytesPerEntry = (double) (used1 - used0) / size;
+    }
+
+    @TearDown(Level.Iteration)
+    public void drop() {
+        live = null;
+    }
+
+    @Benchmark
+    public Object fullGc(Footprint f) {
+        System.gc();
+        f.heapBytesPerEntry = heapBytesPerEntry / samples;
+        f.offHeapBytesPerEntry = offHeapBytesPerEntry / samples;
+        return live;
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * The bytes per entry of the list built for the iteration.  JMH
+     * sums event counters over the measured iterations of all forks,
+     * so each iteration records its share of the mean.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public double heapBytesPerEntry;
+        public double offHeapBytesPerEntry;
+    }
+}
@@ -0,0 +1,116 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insert, delete and intervalSearch on {@link IntervalSkipList}, by
+ * size and key distribution; see {@link SkipListBench}.  Intervals
+ * start at a key and are up to 100 long; searches probe intervals of
+ * length 10 starting at a lookup key.  The list is not thread-safe, so
+ * every benchmark runs on one thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class IntervalBench {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"uniform", "zipf", "sequential"})
+    public String dist;
+
+    IntervalSkipList list;
+    IntervalSkipList.Interval[] fresh;
+    IntervalSkipList.Interval[] probes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(5);
+        IntervalSkipList.Interval[] intervals = intervals(Workloads.keys(dist, size), 100, rnd);
+        Arrays.sort(intervals);
+        list = IntervalSkipList.bulkLoad(intervals);
+        fresh = intervals(Workloads.fresh(dist, size), 100, rnd);
+        probes = intervals(Workloads.queries(dist, size), 0, rnd);
+    }
+
+    /**
+     * Returns an interval from each key, of length up to maxLength, or
+     * 10 if maxLength is 0.
+     */
+    private static IntervalSkipList.Interval[] intervals(Integer[] lows, int maxLength, Random rnd) {
+        IntervalSkipList.Interval[] a = new IntervalSkipList.Interval[lows.length];
+        for (int i = 0; i < a.length; ++i) {
+            int low = lows[i];
+            int length = (maxLength == 0) ? 10 : rnd.nextInt(maxLength);
+            a[i] = new IntervalSkipList.Interval(low, (int) Math.min(Integer.MAX_VALUE, (long) low + length));
+        }
+        return a;
+    }
+
+    @Benchmark
+    public void insert(Inserted k) {
+        list.intervalInsert(k.value);
+    }
+
+    @Benchmark
+    public boolean delete(Deleted k) {
+        return list.intervalDelete(k.value);
+    }
+
+    @Benchmark
+    public IntervalSkipList.Interval intervalSearch(Workloads.Cursor c) {
+        return list.intervalSearch(probes[c.next(size)]);
+    }
+
+    /**
+     * A fresh interval, taken out again after the call.
+     */
+    @State(Scope.Thread)
+    public static class Inserted {
+        IntervalSkipList.Interval value;
+
+        @Setup(Level.Invocation)
+        public void next(IntervalBench b, Workloads.Cursor c) {
+            value = b.fresh[c.next(b.size)];
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(IntervalBench b) {
+            b.list.intervalDelete(value);
+        }
+    }
+
+    /**
+     * A fresh interval, added before the call.
+     */
+    @State(Scope.Thread)
+    public static class Deleted {
+        IntervalSkipList.Interval value;
+
+        @Setup(Level.Invocation)
+        public void next(IntervalBench b, Workloads.Cursor c) {
+            value = b.fresh[c.next(b.size)];
+            b.list.intervalInsert(value);
+        }
+    }
+}
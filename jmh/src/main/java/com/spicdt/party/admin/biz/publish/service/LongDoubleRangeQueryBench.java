@@ -0,0 +1,120 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insert, delete, rank, select and rangeQuery on
+ * {@link LongDoubleRangeSkipList}, with the parameters, keys and
+ * values of {@link RangeQueryBench}, so that each result compares
+ * directly with the same benchmark of the generic list (select with
+ * its selectRecursive).  The keys are the Integer keys of
+ * RangeQueryBench widened to long.  The list is not thread-safe, so
+ * every benchmark runs on one thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LongDoubleRangeQueryBench {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"uniform", "zipf", "sequential"})
+    public String dist;
+
+    @Param({"1000"})
+    public int width;
+
+    LongDoubleRangeSkipList list;
+    long[] fresh;
+    long[] queries;
+    long[] ends;
+    int[] ranks;
+    final RangeQuerySkipList.RangeQueryResult result = new RangeQuerySkipList.RangeQueryResult(0, 0, 0, 0);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long[] keys = Workloads.longs(Workloads.sorted(Workloads.keys(dist, size)));
+        list = LongDoubleRangeSkipList.bulkLoad(keys, Workloads.values(size));
+        fresh = Workloads.longs(Workloads.fresh(dist, size));
+        Integer[] q = Workloads.queries(dist, size);
+        queries = Workloads.longs(q);
+        ends = Workloads.longs(Workloads.plus(q, width));
+        ranks = Workloads.ranks(list.size());
+    }
+
+    @Benchmark
+    public void insert(Inserted k) {
+        list.insert(k.key, 1);
+    }
+
+    @Benchmark
+    public boolean delete(Deleted k) {
+        return list.delete(k.key);
+    }
+
+    @Benchmark
+    public int rank(Workloads.Cursor c) {
+        return list.rank(queries[c.next(size)]);
+    }
+
+    @Benchmark
+    public long select(Workloads.Cursor c) {
+        return list.select(ranks[c.next(ranks.length)]);
+    }
+
+    @Benchmark
+    public RangeQuerySkipList.RangeQueryResult rangeQuery(Workloads.Cursor c) {
+        int i = c.next(size);
+        return list.rangeQuery(queries[i], ends[i], result);
+    }
+
+    /**
+     * A fresh key, taken out again after the call.
+     */
+    @State(Scope.Thread)
+    public static class Inserted {
+        long key;
+
+        @Setup(Level.Invocation)
+        public void next(LongDoubleRangeQueryBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(LongDoubleRangeQueryBench b) {
+            b.list.delete(key);
+        }
+    }
+
+    /**
+     * A fresh key, added before the call.
+     */
+    @State(Scope.Thread)
+    public static class Deleted {
+        long key;
+
+        @Setup(Level.Invocation)
+        public void next(LongDoubleRangeQueryBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+            b.list.insert(key, 1);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insert, delete and contains on {@link OffHeapSkipList}, with the
+ * keys of {@link SkipListBench} widened to long; see
+ * {@link FootprintBench} for its footprint.  The list is not
+ * thread-safe, so every benchmark runs on one thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OffHeapSkipListBench {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"uniform", "zipf", "sequential"})
+    public String dist;
+
+    OffHeapSkipList list;
+    long[] fresh;
+    long[] queries;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        list = new OffHeapSkipList();
+        for (Integer k : Workloads.keys(dist, size))
+            list.insert(k);
+        fresh = Workloads.longs(Workloads.fresh(dist, size));
+        queries = Workloads.longs(Workloads.queries(dist, size));
+    }
+
+    @Benchmark
+    public void insert(Inserted k) {
+        list.insert(k.key);
+    }
+
+    @Benchmark
+    public boolean delete(Deleted k) {
+        return list.delete(k.key);
+    }
+
+    @Benchmark
+    public boolean contains(Workloads.Cursor c) {
+        return list.contains(queries[c.next(size)]);
+    }
+
+    /**
+     * A fresh key, taken out again after the call.
+     */
+    @State(Scope.Thread)
+    public static class Inserted {
+        long key;
+
+        @Setup(Level.Invocation)
+        public void next(OffHeapSkipListBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(OffHeapSkipListBench b) {
+            b.list.delete(key);
+        }
+    }
+
+    /**
+     * A fresh key, added before the call.
+     */
+    @State(Scope.Thread)
+    public static class Deleted {
+        long key;
+
+        @Setup(Level.Invocation)
+        public void next(OffHeapSkipListBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+            b.list.insert(key);
+        }
+    }
+}
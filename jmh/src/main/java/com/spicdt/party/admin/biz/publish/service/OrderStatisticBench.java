@@ -0,0 +1,108 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insert, delete, rank, select and selectRecursive on
+ * {@link OrderStatisticSkipList}, by size and key distribution; see
+ * {@link SkipListBench}.  The list is not thread-safe, so every
+ * benchmark runs on one thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OrderStatisticBench {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"uniform", "zipf", "sequential"})
+    public String dist;
+
+    OrderStatisticSkipList<Integer> list;
+    Integer[] fresh;
+    Integer[] queries;
+    int[] ranks;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        list = OrderStatisticSkipList.bulkLoad(Workloads.sorted(Workloads.keys(dist, size)), null);
+        fresh = Workloads.fresh(dist, size);
+        queries = Workloads.queries(dist, size);
+        ranks = Workloads.ranks(size);
+    }
+
+    @Benchmark
+    public void insert(Inserted k) {
+        list.insert(k.key);
+    }
+
+    @Benchmark
+    public boolean delete(Deleted k) {
+        return list.delete(k.key);
+    }
+
+    @Benchmark
+    public int rank(Workloads.Cursor c) {
+        return list.rank(queries[c.next(size)]);
+    }
+
+    @Benchmark
+    public Integer select(Workloads.Cursor c) {
+        return list.select(ranks[c.next(size)]);
+    }
+
+    @Benchmark
+    public Integer selectRecursive(Workloads.Cursor c) {
+        return list.selectRecursive(ranks[c.next(size)]);
+    }
+
+    /**
+     * A fresh key, taken out again after the call.
+     */
+    @State(Scope.Thread)
+    public static class Inserted {
+        Integer key;
+
+        @Setup(Level.Invocation)
+        public void next(OrderStatisticBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(OrderStatisticBench b) {
+            b.list.delete(key);
+        }
+    }
+
+    /**
+     * A fresh key, added before the call.
+     */
+    @State(Scope.Thread)
+    public static class Deleted {
+        Integer key;
+
+        @Setup(Level.Invocation)
+        public void next(OrderStatisticBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+            b.list.insert(key);
+        }
+    }
+}
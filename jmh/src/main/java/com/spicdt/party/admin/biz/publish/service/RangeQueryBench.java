@@ -0,0 +1,216 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insert, delete, rank, selectRecursive, rangeQuery,
+ * rangeQueryRecursive, prefixAggregate and findByPrefixSum on
+ * {@link RangeQuerySkipList}, by size and key distribution; see
+ * {@link SkipListBench}.  Range queries cover width keys from a
+ * lookup key; rangeQueryMoments runs them over a second list that
+ * keeps {@link Aggregator#moments} in its spans.  Batches of sorted
+ * keys are given to insert one by one, to insertAll and to deleteAll,
+ * as in SkipListBench.  The list is not thread-safe, so every
+ * benchmark runs on one thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RangeQueryBench {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"uniform", "zipf", "sequential"})
+    public String dist;
+
+    @Param({"1000"})
+    public int width;
+
+    RangeQuerySkipList<Integer> list;
+    Integer[] fresh;
+    Integer[] queries;
+    Integer[] ends;
+    int[] ranks;
+    double total;
+    List<Integer[]> batches;
+    double[] batchValues;
+    final RangeQuerySkipList.RangeQueryResult result = new RangeQuerySkipList.RangeQueryResult(0, 0, 0, 0);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Integer[] keys = Workloads.sorted(Workloads.keys(dist, size));
+        double[] values = Workloads.values(size);
+        list = RangeQuerySkipList.bulkLoad(keys, values, null);
+        fresh = Workloads.fresh(dist, size);
+        queries = Workloads.queries(dist, size);
+        ends = Workloads.plus(queries, width);
+        ranks = Workloads.ranks(list.size());
+        total = Arrays.stream(values).sum();
+        batches = Workloads.batches(fresh, SkipListBench.BATCH);
+        batchValues = Arrays.copyOf(values, SkipListBench.BATCH);
+    }
+
+    @Benchmark
+    public void insert(Inserted k) {
+        list.insert(k.key, 1);
+    }
+
+    @Benchmark
+    public boolean delete(Deleted k) {
+        return list.delete(k.key);
+    }
+
+    @Benchmark
+    public int rank(Workloads.Cursor c) {
+        return list.rank(queries[c.next(size)]);
+    }
+
+    @Benchmark
+    public Integer selectRecursive(Workloads.Cursor c) {
+        return list.selectRecursive(ranks[c.next(ranks.length)]);
+    }
+
+    @Benchmark
+    public RangeQuerySkipList.RangeQueryResult rangeQuery(Workloads.Cursor c) {
+        int i = c.next(size);
+        return list.rangeQuery(queries[i], ends[i], result);
+    }
+
+    @Benchmark
+    public RangeQuerySkipList.RangeQueryResult rangeQueryRecursive(Workloads.Cursor c) {
+        int i = c.next(size);
+        return list.rangeQueryRecursive(queries[i], ends[i]);
+    }
+
+    @Benchmark
+    public RangeQuerySkipList.RangeQueryResult prefixAggregate(Workloads.Cursor c) {
+        return list.prefixAggregate(queries[c.next(size)], result);
+    }
+
+    @Benchmark
+    public Integer findByPrefixSum(Workloads.Cursor c) {
+        return list.findByPrefixSum(total * ranks[c.next(ranks.length)] / ranks.length);
+    }
+
+    @Benchmark
+    public Aggregator.Moments rangeQueryMoments(MomentsList m, Workloads.Cursor c) {
+        int i = c.next(size);
+        return m.list.rangeQuery(queries[i], ends[i], m.moments);
+    }
+
+    @Benchmark
+    public void insertBatch(InsertedBatch b) {
+        for (Integer k : b.keys)
+            list.insert(k, 1);
+    }
+
+    @Benchmark
+    public void insertAll(InsertedBatch b) {
+        list.insertAll(b.keys, batchValues);
+    }
+
+    @Benchmark
+    public int deleteAll(DeletedBatch b) {
+        return list.deleteAll(b.keys);
+    }
+
+    /**
+     * A fresh key, taken out again after the call.
+     */
+    @State(Scope.Thread)
+    public static class Inserted {
+        Integer key;
+
+        @Setup(Level.Invocation)
+        public void next(RangeQueryBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(RangeQueryBench b) {
+            b.list.delete(key);
+        }
+    }
+
+    /**
+     * A fresh key, added before the call.
+     */
+    @State(Scope.Thread)
+    public static class Deleted {
+        Integer key;
+
+        @Setup(Level.Invocation)
+        public void next(RangeQueryBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+            b.list.insert(key, 1);
+        }
+    }
+
+    /**
+     * A batch of fresh keys, taken out again after the call.
+     */
+    @State(Scope.Thread)
+    public static class InsertedBatch {
+        Integer[] keys;
+
+        @Setup(Level.Invocation)
+        public void next(RangeQueryBench b, Workloads.Cursor c) {
+            keys = b.batches.get(c.next(b.batches.size()));
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(RangeQueryBench b) {
+            b.list.deleteAll(keys);
+        }
+    }
+
+    /**
+     * A batch of fresh keys, added before the call.
+     */
+    @State(Scope.Thread)
+    public static class DeletedBatch {
+        Integer[] keys;
+
+        @Setup(Level.Invocation)
+        public void next(RangeQueryBench b, Workloads.Cursor c) {
+            keys = b.batches.get(c.next(b.batches.size()));
+            b.list.insertAll(keys, b.batchValues);
+        }
+    }
+
+    /**
+     * The keys and values of the list, in a list that keeps moments in
+     * its spans; built only for the benchmark that uses it.
+     */
+    @State(Scope.Benchmark)
+    public static class MomentsList {
+        final Aggregator<Double, Aggregator.Moments> moments = Aggregator.moments();
+        RangeQuerySkipList<Integer> list;
+
+        @Setup(Level.Trial)
+        public void setUp(RangeQueryBench b) {
+            Integer[] keys = Workloads.sorted(Workloads.keys(b.dist, b.size));
+            list = RangeQuerySkipList.bulkLoad(keys, Workloads.values(b.size), null, moments);
+        }
+    }
+}
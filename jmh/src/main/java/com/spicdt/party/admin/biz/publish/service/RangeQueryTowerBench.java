@@ -0,0 +1,97 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insert into {@link RangeQuerySkipList} where every new node gets an
+ * index tower as tall as the list, by size.
+ *
+ * These are the inserts whose spans are costliest to repair: the
+ * index on the top level covers about half the list.  Repairing a
+ * span by walking the base nodes it covers makes them O(n); composing
+ * it from the spans of the level below keeps them O(log n), so their
+ * latency percentiles should grow with the height of the list, not
+ * its size.  Random towers are measured by
+ * {@link RangeQueryBench#insert}.  The list is built by inserting
+ * keys with random towers, then each measured insert adds a fresh key
+ * at full height and takes it out again after the call, untimed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RangeQueryTowerBench {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"uniform"})
+    public String dist;
+
+    final Towers towers = new Towers();
+    RangeQuerySkipList<Integer> list;
+    Integer[] fresh;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        list = new RangeQuerySkipList<>(null, towers);
+        Integer[] keys = Workloads.keys(dist, size);
+        double[] values = Workloads.values(size);
+        for (int i = 0; i < size; ++i)
+            list.insert(keys[i], values[i]);
+        towers.height = list.stats().getHeight();
+        fresh = Workloads.fresh(dist, size);
+    }
+
+    @Benchmark
+    public void insert(Inserted k) {
+        list.insert(k.key, 1);
+    }
+
+    /**
+     * Random heights, p = 1/2, until a fixed height is set.
+     */
+    static final class Towers implements LevelGenerator {
+        private final LevelGenerator random = LevelGenerator.seeded(1, 0.5);
+        int height;
+
+        @Override
+        public int nextLevel() {
+            return (height > 0) ? height : random.nextLevel();
+        }
+    }
+
+    /**
+     * A fresh key, taken out again after the call.
+     */
+    @State(Scope.Thread)
+    public static class Inserted {
+        Integer key;
+
+        @Setup(Level.Invocation)
+        public void next(RangeQueryTowerBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(RangeQueryTowerBench b) {
+            b.list.delete(key);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with -rf csv, a baseline and
+ * a candidate, and exits with status 1 if any result of the candidate
+ * is worse than the same result of the baseline by more than a
+ * tolerance, so that a build can refuse a version that regressed.
+ *
+ * <pre>
+ *   java -cp benchmarks.jar com.spicdt.party.admin.biz.publish.service.RegressionGate \
+ *        baseline.csv candidate.csv 10
+ * </pre>
+ *
+ * Results are matched by benchmark, mode, threads and parameters,
+ * percentiles included, so a p99 that grew fails the gate as well as
+ * a mean.  The minimum and maximum of sample-time results (p0.00 and
+ * p1.00) are single samples, too noisy to gate on, and are skipped.
+ * Time results regress when they grow, throughput results when they
+ * shrink.  The tolerance is a percentage, 10 by default; it should
+ * exceed the run-to-run noise of the machine, which repeated baseline
+ * runs show.  Results found in only one file are listed but do not
+ * fail the gate.
+ */
+public final class RegressionGate {
+
+    private RegressionGate() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: RegressionGate baseline.csv candidate.csv [tolerance %]");
+            System.exit(2);
+        }
+        Map<String, Double> baseline = read(args[0]);
+        Map<String, Double> candidate = read(args[1]);
+        double tolerance = (args.length == 3) ? Double.parseDouble(args[2]) / 100 : 0.10;
+        int regressions = 0;
+        for (Map.Entry<String, Double> e : candidate.entrySet()) {
+            String key = e.getKey();
+            Double base = baseline.get(key);
+            if (base == null) {
+                System.out.println("new        " + key);
+                continue;
+            }
+            double cur = e.getValue();
+            boolean higherIsBetter = key.contains("\tthrpt\t");
+            double change = (base == 0) ? 0 : (cur - base) / base;
+            boolean worse = higherIsBetter ? change < -tolerance : change > tolerance;
+            if (worse)
+                ++regressions;
+            System.out.printf("%-10s %s  %.3f -> %.3f (%+.1f%%)%n",
+                    worse ? "REGRESSED" : "ok", key, base, cur, 100 * change);
+        }
+        for (String key : baseline.keySet())
+            if (!candidate.containsKey(key))
+                System.out.println("missing    " + key);
+        System.out.println(regressions + " regression(s) beyond " + Math.round(tolerance * 100) + "%");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    /**
+     * Reads a result file into a map from benchmark, mode, threads and
+     * parameters, tab separated, to score.
+     */
+    private static Map<String, Double> read(String file) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(file));
+        List<String> header = fields(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int threads = header.indexOf("Threads");
+        int score = header.indexOf("Score");
+        if (benchmark < 0 || mode < 0 || threads < 0 || score < 0)
+            throw new IOException(file + ": not a JMH csv result file");
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isEmpty())
+                continue;
+            List<String> f = fields(line);
+            String name = f.get(benchmark);
+            if (name.endsWith(":p0.00") || name.endsWith(":p1.00"))
+                continue;
+            StringBuilder key = new StringBuilder();
+            key.append(name).append('\t').append(f.get(mode)).append('\t').append(f.get(threads));
+            for (int i = 0; i < header.size(); ++i)
+                if (header.get(i).startsWith("Param: "))
+                    key.append('\t').append(header.get(i).substring(7)).append('=').append(f.get(i));
+            scores.put(key.toString(), Double.parseDouble(f.get(score)));
+        }
+        return scores;
+    }
+
+    /**
+     * Splits a line of comma-separated, optionally quoted fields.
+     */
+    private static List<String> fields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder f = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); ++i) {
+            char c = line.charAt(i);
+            if (c == '"')
+                quoted = !quoted;
+            else if (c == ',' && !quoted) {
+                fields.add(f.toString());
+                f.setLength(0);
+            } else
+                f.append(c);
+        }
+        fields.add(f.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,199 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Insert, delete and lookup on {@link SkipList}, by size, key
+ * distribution and number of threads, together with batches of
+ * sorted keys given to insert one by one, to insertAll and to
+ * deleteAll, and seeks and steps of a {@link SkipList.Cursor}, one
+ * per thread.
+ *
+ * Every benchmark of this module runs in sample-time mode, which
+ * times a sample of single calls, so each result carries the mean and
+ * the percentiles of the latency of one call, up to p99.99 and max.
+ * insert adds a fresh key and takes it out again after the call,
+ * untimed; delete takes out a fresh key added before the call,
+ * untimed; so the list stays at the size it was built with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SkipListBench {
+
+    /**
+     * The number of keys in a batch.
+     */
+    static final int BATCH = 1000;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"uniform", "zipf", "sequential"})
+    public String dist;
+
+    @Param({"1", "2", "4", "8", "16", "32", "64"})
+    public int threads;
+
+    SkipList<Integer> list;
+    Integer[] fresh;
+    Integer[] queries;
+    List<List<Integer>> batches;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) {
+        Workloads.checkThreads(params, threads);
+        list = SkipList.bulkLoad(Workloads.sorted(Workloads.keys(dist, size)), null);
+        fresh = Workloads.fresh(dist, size);
+        queries = Workloads.queries(dist, size);
+        batches = new ArrayList<>();
+        for (Integer[] b : Workloads.batches(fresh, BATCH))
+            batches.add(Arrays.asList(b));
+    }
+
+    @Benchmark
+    public void insert(Inserted k) {
+        list.insert(k.key);
+    }
+
+    @Benchmark
+    public boolean delete(Deleted k) {
+        return list.delete(k.key);
+    }
+
+    @Benchmark
+    public boolean contains(Workloads.Cursor c) {
+        return list.contains(queries[c.next(size)]);
+    }
+
+    @Benchmark
+    public void insertBatch(InsertedBatch b) {
+        for (Integer k : b.keys)
+            list.insert(k);
+    }
+
+    @Benchmark
+    public void insertAll(InsertedBatch b) {
+        list.insertAll(b.keys);
+    }
+
+    @Benchmark
+    public int deleteAll(DeletedBatch b) {
+        return list.deleteAll(b.keys);
+    }
+
+    @Benchmark
+    public boolean seek(Positioned p, Workloads.Cursor c) {
+        return p.cursor.seek(queries[c.next(size)]);
+    }
+
+    @Benchmark
+    public boolean next(Positioned p) {
+        return p.cursor.next() || p.cursor.seekFirst();
+    }
+
+    @Benchmark
+    public boolean prev(Positioned p) {
+        return p.cursor.prev() || p.cursor.seekLast();
+    }
+
+    /**
+     * A fresh key, taken out again after the call.
+     */
+    @State(Scope.Thread)
+    public static class Inserted {
+        Integer key;
+
+        @Setup(Level.Invocation)
+        public void next(SkipListBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(SkipListBench b) {
+            b.list.delete(key);
+        }
+    }
+
+    /**
+     * A fresh key, added before the call.
+     */
+    @State(Scope.Thread)
+    public static class Deleted {
+        Integer key;
+
+        @Setup(Level.Invocation)
+        public void next(SkipListBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+            b.list.insert(key);
+        }
+    }
+
+    /**
+     * A batch of fresh keys, taken out again after the call.
+     */
+    @State(Scope.Thread)
+    public static class InsertedBatch {
+        List<Integer> keys;
+
+        @Setup(Level.Invocation)
+        public void next(SkipListBench b, Workloads.Cursor c) {
+            keys = b.batches.get(c.next(b.batches.size()));
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(SkipListBench b) {
+            b.list.deleteAll(keys);
+        }
+    }
+
+    /**
+     * A batch of fresh keys, added before the call.
+     */
+    @State(Scope.Thread)
+    public static class DeletedBatch {
+        List<Integer> keys;
+
+        @Setup(Level.Invocation)
+        public void next(SkipListBench b, Workloads.Cursor c) {
+            keys = b.batches.get(c.next(b.batches.size()));
+            b.list.insertAll(keys);
+        }
+    }
+
+    /**
+     * A cursor of this thread, positioned on the least key; next and
+     * prev wrap around at either end.
+     */
+    @State(Scope.Thread)
+    public static class Positioned {
+        SkipList<Integer>.Cursor cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(SkipListBench b) {
+            cursor = b.list.cursor();
+            cursor.seekFirst();
+        }
+    }
+}
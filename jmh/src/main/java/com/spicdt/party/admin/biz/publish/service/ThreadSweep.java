@@ -0,0 +1,60 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks that take a threads parameter once per thread
+ * count, with JMH running as many threads (-t) as the parameter says,
+ * and writes all the results to one file.
+ *
+ * <pre>
+ *   java -cp benchmarks.jar com.spicdt.party.admin.biz.publish.service.ThreadSweep \
+ *        ConcurrentOrderStatisticBench -p size=1000000 -p dist=uniform \
+ *        -p threads=1,2,4,8,16,32,64 -rf csv -rff threads.csv
+ * </pre>
+ *
+ * Takes the usual JMH options.  Without an include pattern it runs
+ * SkipListBench, ConcurrentOrderStatisticBench and
+ * ConcurrentSkipListMapBench; without -p threads, 1 to 64 threads in
+ * powers of two; without -rff, it writes jmh-threads.csv.
+ */
+public final class ThreadSweep {
+
+    private static final String CONCURRENT =
+            "SkipListBench|ConcurrentOrderStatisticBench|ConcurrentSkipListMapBench";
+
+    private ThreadSweep() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        Collection<String> threads = cli.getParameter("threads")
+                .orElse(List.of("1", "2", "4", "8", "16", "32", "64"));
+        List<RunResult> results = new ArrayList<>();
+        for (String t : threads) {
+            OptionsBuilder b = new OptionsBuilder();
+            b.parent(cli);
+            if (cli.getIncludes().isEmpty())
+                b.include(CONCURRENT);
+            Options o = b.threads(Integer.parseInt(t))
+                    .param("threads", t)
+                    .build();
+            results.addAll(new Runner(o).run());
+        }
+        ResultFormatType type = cli.getResultFormat().orElse(ResultFormatType.CSV);
+        String file = cli.getResult().orElse("jmh-threads." + type.toString().toLowerCase());
+        ResultFormatFactory.getInstance(type, file).writeOut(results);
+    }
+}
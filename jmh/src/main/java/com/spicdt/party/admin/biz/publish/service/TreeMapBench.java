@@ -0,0 +1,113 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link TreeMap} baseline: put, remove and containsKey, by size
+ * and key distribution; see {@link SkipListBench}.  subMapSum sums
+ * the values of width keys from a lookup key, as the range queries of
+ * {@link RangeQueryBench} do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TreeMapBench {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"uniform", "zipf", "sequential"})
+    public String dist;
+
+    @Param({"1000"})
+    public int width;
+
+    TreeMap<Integer, Double> map;
+    Integer[] fresh;
+    Integer[] queries;
+    Integer[] ends;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = new TreeMap<>();
+        for (Integer k : Workloads.keys(dist, size))
+            map.put(k, 1.0);
+        fresh = Workloads.fresh(dist, size);
+        queries = Workloads.queries(dist, size);
+        ends = Workloads.plus(queries, width);
+    }
+
+    @Benchmark
+    public Double put(Inserted k) {
+        return map.put(k.key, 1.0);
+    }
+
+    @Benchmark
+    public Double remove(Deleted k) {
+        return map.remove(k.key);
+    }
+
+    @Benchmark
+    public boolean containsKey(Workloads.Cursor c) {
+        return map.containsKey(queries[c.next(size)]);
+    }
+
+    @Benchmark
+    public double subMapSum(Workloads.Cursor c) {
+        int i = c.next(size);
+        double sum = 0;
+        for (double v : map.subMap(queries[i], true, ends[i], true).values())
+            sum += v;
+        return sum;
+    }
+
+    /**
+     * A fresh key, taken out again after the call.
+     */
+    @State(Scope.Thread)
+    public static class Inserted {
+        Integer key;
+
+        @Setup(Level.Invocation)
+        public void next(TreeMapBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(TreeMapBench b) {
+            b.map.remove(key);
+        }
+    }
+
+    /**
+     * A fresh key, added before the call.
+     */
+    @State(Scope.Thread)
+    public static class Deleted {
+        Integer key;
+
+        @Setup(Level.Invocation)
+        public void next(TreeMapBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+            b.map.put(key, 1.0);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insert, delete and rangeQuery on {@link VersionedRangeQuerySkipList},
+ * with the parameters, keys and values of {@link RangeQueryBench}, and
+ * rangeQuery on a snapshot taken once per trial, which reads the
+ * version it was taken at.  Writers are serialized, so every benchmark
+ * runs on one thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class VersionedRangeQueryBench {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"uniform", "zipf", "sequential"})
+    public String dist;
+
+    @Param({"1000"})
+    public int width;
+
+    VersionedRangeQuerySkipList<Integer> list;
+    VersionedRangeQuerySkipList<Integer>.Snapshot snapshot;
+    Integer[] fresh;
+    Integer[] queries;
+    Integer[] ends;
+    final RangeQuerySkipList.RangeQueryResult result = new RangeQuerySkipList.RangeQueryResult(0, 0, 0, 0);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Integer[] keys = Workloads.keys(dist, size);
+        double[] values = Workloads.values(size);
+        list = new VersionedRangeQuerySkipList<>();
+        for (int i = 0; i < size; ++i)
+            list.insert(keys[i], values[i]);
+        snapshot = list.snapshot();
+        fresh = Workloads.fresh(dist, size);
+        queries = Workloads.queries(dist, size);
+        ends = Workloads.plus(queries, width);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        snapshot.close();
+    }
+
+    @Benchmark
+    public void insert(Inserted k) {
+        list.insert(k.key, 1);
+    }
+
+    @Benchmark
+    public boolean delete(Deleted k) {
+        return list.delete(k.key);
+    }
+
+    @Benchmark
+    public RangeQuerySkipList.RangeQueryResult rangeQuery(Workloads.Cursor c) {
+        int i = c.next(size);
+        return list.rangeQuery(queries[i], ends[i], result);
+    }
+
+    @Benchmark
+    public RangeQuerySkipList.RangeQueryResult snapshotRangeQuery(Workloads.Cursor c) {
+        int i = c.next(size);
+        return snapshot.rangeQuery(queries[i], ends[i], result);
+    }
+
+    /**
+     * A fresh key, taken out again after the call.
+     */
+    @State(Scope.Thread)
+    public static class Inserted {
+        Integer key;
+
+        @Setup(Level.Invocation)
+        public void next(VersionedRangeQueryBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo(VersionedRangeQueryBench b) {
+            b.list.delete(key);
+        }
+    }
+
+    /**
+     * A fresh key, added before the call.
+     */
+    @State(Scope.Thread)
+    public static class Deleted {
+        Integer key;
+
+        @Setup(Level.Invocation)
+        public void next(VersionedRangeQueryBench b, Workloads.Cursor c) {
+            key = b.fresh[c.next(b.size)];
+            b.list.insert(key, 1);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sliding windows of size events, stamped one microsecond apart, so
+ * that size = 10,000,000 is ten seconds at a million events per
+ * second; see {@link SkipListBench}.  Each call adds the next event;
+ * the window then drops the events that have left it, one by one
+ * with delete, or every TICK events at once with evictBefore, on
+ * {@link OrderStatisticSkipList} and on {@link RangeQuerySkipList}.
+ * The lists are not thread-safe, so every benchmark runs on one
+ * thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WindowBench {
+
+    /**
+     * Events between expiries: a millisecond's worth at a million
+     * events per second.
+     */
+    static final int TICK = 1000;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    OrderStatisticSkipList<Integer> stats;
+    RangeQuerySkipList<Integer> sums;
+    double[] values;
+    /** the stamp of the next event */
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Integer[] window = new Integer[size];
+        for (int i = 0; i < size; ++i)
+            window[i] = i;
+        values = Workloads.values(size);
+        stats = OrderStatisticSkipList.bulkLoad(window, null);
+        sums = RangeQuerySkipList.bulkLoad(window, values, null);
+        next = size;
+    }
+
+    @Benchmark
+    public boolean orderStatisticDelete() {
+        int t = next++;
+        stats.insert(t);
+        return stats.delete(t - size);
+    }
+
+    @Benchmark
+    public int orderStatisticEvictBefore() {
+        int t = next++;
+        stats.insert(t);
+        return (t % TICK == TICK - 1) ? stats.evictBefore(t - size + 1) : 0;
+    }
+
+    @Benchmark
+    public boolean rangeQueryDelete() {
+        int t = next++;
+        sums.insert(t, values[t % size]);
+        return sums.delete(t - size);
+    }
+
+    @Benchmark
+    public int rangeQueryEvictBefore() {
+        int t = next++;
+        sums.insert(t, values[t % size]);
+        return (t % TICK == TICK - 1) ? sums.evictBefore(t - size + 1) : 0;
+    }
+}
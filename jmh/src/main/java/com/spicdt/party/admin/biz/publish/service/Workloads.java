@@ -0,0 +1,208 @@
+package com.spicdt.party.admin.biz.publish.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Keys, values and per-thread positions shared by the JMH benchmarks.
+ *
+ * A list is built from keys
+ * that are all even, and the keys its insert and delete benchmarks add
+ * are all odd, from a second sequence of the same distribution, so
+ * they are never already present: each benchmark adds a key and
+ * removes it again, and the list stays at its size whether or not it
+ * keeps duplicates.
+ *
+ * The size parameters run from 10^3 to 10^8.  A list of 10^8 keys
+ * needs a heap of about 16 GB; narrow the sizes with -p size=... on
+ * smaller machines.
+ */
+public final class Workloads {
+
+    private Workloads() {
+    }
+
+    /**
+     * Returns n keys of the distribution, all even, in arrival order.
+     */
+    static Integer[] keys(String dist, int n) {
+        return withParity(dist, generate(dist, n, 1), 0);
+    }
+
+    /**
+     * Returns n keys of the distribution, all odd, so none is one of
+     * {@link #keys}.
+     */
+    static Integer[] fresh(String dist, int n) {
+        return withParity(dist, generate(dist, n, 2), 1);
+    }
+
+    /**
+     * Returns n lookup keys of the distribution, all even, so that
+     * they hit the list as often as the distribution repeats itself.
+     */
+    static Integer[] queries(String dist, int n) {
+        return withParity(dist, generate(dist, n, 3), 0);
+    }
+
+    /**
+     * Generates n keys with the named distribution:
+     * uniform over [0, 4n); zipf, with exponent 0.99 over n ranks,
+     * each rank scattered over the int range so that popular keys are
+     * not also adjacent; clustered, in runs of 64 keys within 256 of a
+     * uniformly drawn centre, as a trace of local lookups; or
+     * sequential, 0 to n - 1 in order.
+     */
+    private static Integer[] generate(String dist, int n, long seed) {
+        Random rnd = new Random(seed);
+        Integer[] keys = new Integer[n];
+        switch (dist) {
+            case "uniform":
+                for (int i = 0; i < n; ++i)
+                    keys[i] = rnd.nextInt(Math.max(1, n << 2));
+                break;
+            case "zipf": {
+                double s = 0.99, a = 1 - s, top = Math.pow(n + 1, a) - 1;
+                for (int i = 0; i < n; ++i) {
+                    long rank = (long) Math.pow(rnd.nextDouble() * top + 1, 1 / a);   // in [1, n]
+                    keys[i] = (int) ((rank * 0x9E3779B1L) & 0x7fffffff);
+                }
+                break;
+            }
+            case "clustered":
+                for (int i = 0, centre = 0; i < n; ++i) {
+                    if ((i & 63) == 0)
+                        centre = rnd.nextInt(Math.max(1, n << 2));
+                    keys[i] = centre + rnd.nextInt(513) - 256;
+                }
+                break;
+            case "sequential":
+                for (int i = 0; i < n; ++i)
+                    keys[i] = i;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown distribution: " + dist);
+        }
+        return keys;
+    }
+
+    /**
+     * Doubles each key, plus parity; zipf keys are spread over the
+     * whole int range already, so only their low bit is set.
+     */
+    private static Integer[] withParity(String dist, Integer[] keys, int parity) {
+        boolean spread = dist.equals("zipf");
+        for (int i = 0; i < keys.length; ++i) {
+            int k = keys[i];
+            keys[i] = spread ? (k & ~1) | parity : (k << 1) | parity;
+        }
+        return keys;
+    }
+
+    static Integer[] sorted(Integer[] keys) {
+        Integer[] s = keys.clone();
+        Arrays.sort(s);
+        return s;
+    }
+
+    /**
+     * Cuts the keys into consecutive batches of the given size, each
+     * sorted, as a sorted batch API receives them.  Keys left over
+     * after the last full batch are dropped.
+     */
+    static List<Integer[]> batches(Integer[] keys, int size) {
+        List<Integer[]> batches = new ArrayList<>();
+        for (int from = 0; from + size <= keys.length; from += size) {
+            Integer[] b = Arrays.copyOfRange(keys, from, from + size);
+            Arrays.sort(b);
+            batches.add(b);
+        }
+        return batches;
+    }
+
+    /**
+     * Returns n values in [0, 1000).
+     */
+    static double[] values(int n) {
+        Random rnd = new Random(3);
+        double[] values = new double[n];
+        for (int i = 0; i < n; ++i)
+            values[i] = rnd.nextInt(1000);
+        return values;
+    }
+
+    /**
+     * Returns n ranks drawn uniformly from [1, n].
+     */
+    static int[] ranks(int n) {
+        Random rnd = new Random(4);
+        int[] ranks = new int[n];
+        for (int i = 0; i < n; ++i)
+            ranks[i] = 1 + rnd.nextInt(n);
+        return ranks;
+    }
+
+    /**
+     * Returns the keys as longs.
+     */
+    static long[] longs(Integer[] keys) {
+        long[] longs = new long[keys.length];
+        for (int i = 0; i < keys.length; ++i)
+            longs[i] = keys[i];
+        return longs;
+    }
+
+    /**
+     * Returns the keys shifted by width, without overflowing.
+     */
+    static Integer[] plus(Integer[] keys, int width) {
+        Integer[] ends = new Integer[keys.length];
+        for (int i = 0; i < keys.length; ++i)
+            ends[i] = (int) Math.min(Integer.MAX_VALUE, (long) keys[i] + width);
+        return ends;
+    }
+
+    /**
+     * Fails the trial unless the threads parameter is the number of
+     * threads JMH runs it with (-t), so that results are never
+     * labelled with a thread count they were not measured at.
+     */
+    static void checkThreads(BenchmarkParams params, int threads) {
+        if (params.getThreads() != threads)
+            throw new IllegalStateException("-p threads=" + threads + " but -t " + params.getThreads()
+                    + "; run ThreadSweep, or pass the same count to both");
+    }
+
+    /**
+     * A position in the key arrays, one per thread, starting each
+     * thread at a different place so that threads do not all work on
+     * the same keys at once.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int i;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams t) {
+            i = (int) ((t.getThreadIndex() * 0x9E3779B9L) & 0x7fffffff);
+        }
+
+        /**
+         * Returns the next index below n.
+         */
+        int next(int n) {
+            if (i >= n)
+                i %= n;
+            return i++;
+        }
+    }
+}